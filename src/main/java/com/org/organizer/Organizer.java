@@ -3,6 +3,7 @@ package com.org.organizer;
 import com.org.observer.Subject;
 import com.org.organizer.copy.ICopy;
 import com.org.parser.Configuration;
+import com.org.util.SourceManifest;
 import com.org.util.graph.FileGraphFactory;
 import com.org.observer.Observer;
 import com.org.util.graph.FileGraph;
@@ -51,6 +52,13 @@ public abstract class Organizer implements Subject<Integer> {
      */
     public abstract void copyAndOrganize(String source);
 
+    /**
+     * Copy and organize all files listed in the manifest of a source directory that has
+     * already been scanned, so the source doesn't need to be walked through again.
+     * @param manifest manifest of the source files
+     */
+    public abstract void copyAndOrganize(SourceManifest manifest);
+
     /**
      * Increment the counter. This function should be called after successfully organizing
      * a file.
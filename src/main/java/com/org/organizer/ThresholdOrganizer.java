@@ -2,16 +2,29 @@ package com.org.organizer;
 
 import com.org.organizer.copy.ICopy;
 import com.org.util.time.DateExtractor;
+import com.org.util.time.DatedFile;
+import com.org.util.time.ExtractionBudget;
 import com.org.organizer.copy.Move;
 import com.org.parser.Configuration;
 import com.org.util.FileTools;
+import com.org.util.FileWalker;
+import com.org.util.SourceManifest;
 import com.org.util.graph.FileGraph;
+import com.org.util.graph.FileGraphSnapshot;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 
 /**
@@ -22,8 +35,22 @@ import java.util.Locale;
  * in any inner folders.
  */
 public class ThresholdOrganizer extends Organizer {
+    // number of pending extractions per worker before the walk waits for the graph stage
+    private static final int PENDING_PER_WORKER = 4;
     // file count threshold for folders
     private int threshold;
+    // number of threads extracting the datetime, 1 means everything runs sequentially
+    private int extractorThreads = 1;
+    // if true, all dates are read first and the files are placed directly into their final folder
+    private boolean bulkLoad = false;
+    // folders above the threshold are only split right away if they exceed this ceiling, 0 if splits aren't deferred
+    private int splitCeiling = 0;
+    // folders above the threshold whose split is deferred until all files are organized
+    private final Set<FileGraph.Node> overfullFolders = new LinkedHashSet<>();
+    // files of the source directory that is organized right now, they are moved together
+    private final List<DatedFile> directoryFiles = new ArrayList<>();
+    // the source given by the user, it's never renamed into the repository
+    private File sourceRoot = null;
 
     /**
      * ThresholdOrganizer constructor
@@ -36,6 +63,41 @@ public class ThresholdOrganizer extends Organizer {
         this.threshold = threshold;
     }
 
+    /**
+     * Set the number of worker threads that extract the files' datetime attributes. With
+     * more than one thread, the datetimes are resolved concurrently while the files are
+     * still copied/moved one by one in the same order as the sequential run. So the
+     * resulting repository is identical.
+     * @param threads number of extractor threads, at least 1
+     */
+    public void setExtractorThreads(int threads) {
+        if(threads < 1) throw new IllegalArgumentException("number of extractor threads must be positive");
+        this.extractorThreads = threads;
+    }
+
+    /**
+     * Enable or disable the bulk load. In bulk mode, the dates of all source files are
+     * read first. Then the final folder structure is computed, so that every file can be
+     * copied/moved directly into its final folder and no file is moved again by a later
+     * reorganization. Recommended for large imports.
+     * @param bulkLoad true to enable the bulk load
+     */
+    public void setBulkLoad(boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    /**
+     * Defer splitting the folders that exceed the threshold. While the files are organized,
+     * such folders are only remembered and each of them is split once after the last file,
+     * instead of every time a file is added. This avoids listing and moving the files of a
+     * folder that receives many files in a row again and again. A folder is still split
+     * right away if it exceeds the ceiling.
+     * @param ceiling maximum number of files in a folder while organizing, at least the threshold
+     */
+    public void setDeferredSplit(int ceiling) {
+        this.splitCeiling = Math.max(ceiling, threshold);
+    }
+
     /**
      * Iterate through all files in the source directory recursively. Check the file's
      * extension. If it's allowed then look at the file's datetime attribute and search
@@ -45,24 +107,223 @@ public class ThresholdOrganizer extends Organizer {
      */
     @Override
     public void copyAndOrganize(String source) {
-        dfs(new File(source));
+        organize(new File(source), action -> dfs(new File(source), action));
     }
 
     /**
-     * This function iterates through file objects recursively and is the implementation
-     * of the ThresholdOrganizer's copyAndOrganize function.
-     * @param file
+     * Copy and organize all files listed in the manifest. The source isn't walked through
+     * again, only the files with allowed extensions in the manifest are organized in the
+     * order they are listed.
+     * @param manifest manifest of the source files
      */
-    private void dfs(File file) {
-        if(file.isFile()) {
-            if(!fileExtensionAllowed(FileTools.getFileExtension(file))) return;
-            copyFile(file);
-            incrementCounter();
-            notifyObservers();
+    @Override
+    public void copyAndOrganize(SourceManifest manifest) {
+        organize(manifest.getSource(), action -> {
+            for(SourceManifest.Entry entry : manifest) {
+                File file = entry.path.toFile();
+                if(fileExtensionAllowed(FileTools.getFileExtension(file))) action.accept(file);
+            }
+        });
+    }
+
+    /**
+     * Organize all files that are passed on by the source, either one by one or with
+     * the bulk load.
+     * @param sourceRoot the source given by the user
+     * @param source passes every file that needs to be organized to the given action
+     */
+    private void organize(File sourceRoot, Consumer<Consumer<File>> source) {
+        this.sourceRoot = sourceRoot;
+        // the snapshot is outdated as soon as the first file is added
+        String rootPath = fileGraphOperation.getFileGraph().getRoot().getPath();
+        FileGraphSnapshot.invalidate(rootPath);
+        if(bulkLoad) {
+            copyAndOrganizeBulk(source);
+        } else if(operation.isMove()) {
+            // the files of a directory are found one after another, so they can be moved together
+            extractDates(source, this::collectDirectoryFile);
+            moveDirectoryFiles();
         } else {
-            for(File child : file.listFiles()) {
-                dfs(child);
+            extractDates(source, this::organizeFile);
+        }
+        // the folders whose split was deferred are split once
+        for(FileGraph.Node node : overfullFolders) reorganize(node);
+        overfullFolders.clear();
+        fileGraphOperation.saveManifests();
+        FileGraphSnapshot.save(fileGraphOperation.getFileGraph());
+    }
+
+    /**
+     * This function walks through the source directory and passes every file with
+     * an allowed extension to the action.
+     * @param file source file or directory
+     * @param action function to execute on every allowed file
+     */
+    private void dfs(File file, Consumer<File> action) {
+        new FileWalker()
+                .setFileFilter((path, attrs) -> fileExtensionAllowed(FileTools.getFileExtension(path.toFile())))
+                .walk(file.toPath(), (path, attrs) -> action.accept(path.toFile()));
+    }
+
+    /**
+     * Read the datetime of every allowed file in the source and pass the results in the
+     * order the files were found to the stage. With a single extractor thread everything
+     * runs on the calling thread. Otherwise a pool of worker threads extracts the datetimes
+     * while the calling thread walks the source and runs the stage, so it's the only one
+     * mutating the file graph. If too many extractions are pending, the walk stops and
+     * applies the oldest result first, so the number of files in flight stays bounded.
+     * @param source passes every file that needs to be organized to the given action
+     * @param stage function that is executed on every dated file
+     */
+    private void extractDates(Consumer<Consumer<File>> source, Consumer<DatedFile> stage) {
+        if(extractorThreads <= 1) {
+            source.accept(file -> stage.accept(new DatedFile(file, DateExtractor.getDate(file))));
+            return;
+        }
+
+        // daemon threads, so a worker stuck in a file doesn't keep the program alive
+        ExecutorService extractors = Executors.newFixedThreadPool(extractorThreads, r -> {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<PendingDate> pending = new ArrayDeque<>();
+        int capacity = extractorThreads * PENDING_PER_WORKER;
+
+        try {
+            source.accept(file -> {
+                PendingDate pendingDate = new PendingDate(file);
+                pendingDate.future = extractors.submit(pendingDate);
+                pending.add(pendingDate);
+                if(pending.size() >= capacity) stage.accept(awaitDate(pending.poll()));
+            });
+            // drain the remaining results
+            while(!pending.isEmpty()) stage.accept(awaitDate(pending.poll()));
+        } finally {
+            extractors.shutdownNow();
+        }
+    }
+
+    /**
+     * Extraction of a file's datetime by a worker thread. It remembers when the worker
+     * started, so the time limit only counts while the file is read.
+     */
+    private static class PendingDate implements Callable<LocalDateTime> {
+        // the file whose datetime is extracted
+        final File file;
+        // result of the extraction
+        Future<LocalDateTime> future;
+        // System.nanoTime() when the worker started, 0 while it's waiting in the queue
+        volatile long startNanos = 0;
+
+        PendingDate(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public LocalDateTime call() {
+            startNanos = System.nanoTime();
+            return DateExtractor.getDate(file);
+        }
+    }
+
+    /**
+     * Wait for the datetime of the file to be extracted. Failed extractions are treated
+     * like a missing datetime. With an extraction budget, a file that is read longer than
+     * its time limit is cancelled and also has no datetime, even if the library is stuck
+     * in a loop that never checks the budget.
+     * @param extracted file and its pending datetime
+     * @return the file with its datetime
+     */
+    private DatedFile awaitDate(PendingDate extracted) {
+        LocalDateTime dateTime = null;
+        ExtractionBudget budget = DateExtractor.getExtractionBudget();
+        try {
+            if(budget == null) {
+                dateTime = extracted.future.get();
+            } else {
+                long maxNanos = TimeUnit.MILLISECONDS.toNanos(budget.getMaxMillis());
+                while(true) {
+                    long started = extracted.startNanos;
+                    // wait while the file is still queued, afterwards until its time is up
+                    long wait = started == 0 ? maxNanos : started + maxNanos - System.nanoTime();
+                    try {
+                        dateTime = extracted.future.get(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+                        break;
+                    } catch(TimeoutException te) {
+                        if(started != 0) {
+                            extracted.future.cancel(true);
+                            System.err.println("skipped reading " + extracted.file.getPath() + ", took longer than " + budget.getMaxMillis() + " ms");
+                            break;
+                        }
+                    }
+                }
             }
+        } catch(ExecutionException ee) {
+            // same as DateExtractor.getDate() returning null, the file goes into the error folder
+            System.err.println("failed reading " + extracted.file.getPath() + ": " + ee.getCause());
+        } catch(CancellationException ce) {
+            // cancelled above after the time limit, the file goes into the error folder
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while organizing files", ie);
+        }
+        return new DatedFile(extracted.file, dateTime);
+    }
+
+    /**
+     * Organize a single dated file and notify the observers.
+     * @param datedFile file and its datetime
+     */
+    private void organizeFile(DatedFile datedFile) {
+        copyFile(datedFile.file, datedFile.dateTime);
+        incrementCounter();
+        notifyObservers();
+    }
+
+    /**
+     * Collect the files of a source directory. As soon as a file of another directory
+     * arrives, the collected files are moved.
+     * @param datedFile file and its datetime
+     */
+    private void collectDirectoryFile(DatedFile datedFile) {
+        if(!directoryFiles.isEmpty() && !directoryFiles.get(0).file.getAbsoluteFile().getParentFile()
+                .equals(datedFile.file.getAbsoluteFile().getParentFile())) {
+            moveDirectoryFiles();
+        }
+        directoryFiles.add(datedFile);
+    }
+
+    /**
+     * Move the collected files of a source directory. Files that go into the same leaf are
+     * moved together if the leaf can take them, the others are organized one by one.
+     */
+    private void moveDirectoryFiles() {
+        if(directoryFiles.isEmpty()) return;
+        File directory = directoryFiles.get(0).file.getAbsoluteFile().getParentFile();
+        List<DatedFile> outliers = fileGraphOperation.moveDirectory(operation, sourceRoot, directory, directoryFiles, threshold);
+        for(int i = outliers.size(); i < directoryFiles.size(); i++) incrementCounter();
+        if(outliers.size() < directoryFiles.size()) notifyObservers();
+        directoryFiles.clear();
+        for(DatedFile datedFile : outliers) organizeFile(datedFile);
+    }
+
+    /**
+     * Bulk load implementation of copyAndOrganize(). First, all datetimes are extracted and
+     * sorted. Then the final structure is prepared in the file graph, which only moves the
+     * files already in the repository whose folders have to be split. At last, each source
+     * file is copied/moved straight into its final folder without any reorganization.
+     * @param source passes every file that needs to be organized to the given action
+     */
+    private void copyAndOrganizeBulk(Consumer<Consumer<File>> source) {
+        List<DatedFile> files = new ArrayList<>();
+        extractDates(source, files::add);
+        fileGraphOperation.prepareLeaves(files, threshold);
+
+        for(DatedFile datedFile : files) {
+            fileGraphOperation.copyFile(operation, datedFile.file, datedFile.dateTime);
+            incrementCounter();
+            notifyObservers();
         }
     }
 
@@ -75,10 +336,39 @@ public class ThresholdOrganizer extends Organizer {
     protected boolean copyFile(File f) {
         FileGraph.Node node = fileGraphOperation.copyFile(operation, f);
         if(node == null) return false;
-        reorganize(node);
+        split(node);
         return true;
     }
 
+    /**
+     * Copy or move a file whose datetime has already been extracted to it's correct
+     * location. If a folder exceeds its size threshold then reorganize all files in
+     * that folder.
+     * @param f file to copy/move
+     * @param dateTime the file's extracted datetime, can be null
+     * @return true if the file was added to the repository
+     */
+    protected boolean copyFile(File f, LocalDateTime dateTime) {
+        FileGraph.Node node = fileGraphOperation.copyFile(operation, f, dateTime);
+        if(node == null) return false;
+        split(node);
+        return true;
+    }
+
+    /**
+     * Split the folder a file was added to if it exceeds the threshold, or remember it
+     * for later if splits are deferred and the folder doesn't exceed the ceiling.
+     * @param node the folder's node
+     */
+    private void split(FileGraph.Node node) {
+        if(splitCeiling == 0 || node.fileCount > splitCeiling) {
+            overfullFolders.remove(node);
+            reorganize(node);
+        } else if(node.fileCount > threshold) {
+            overfullFolders.add(node);
+        }
+    }
+
     /**
      * assumes that all files in the folder are in the correct folder.
      * iterates through all files and moves them to a newly created
@@ -0,0 +1,208 @@
+package com.org.organizer.copy;
+
+import com.org.observer.Observer;
+import com.org.observer.Subject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Copy operation that transfers the data directly between file channels. On Linux the
+ * transfer is done by the kernel (sendfile/copy_file_range) without copying the data into
+ * the JVM. Large files are copied in chunks and the number of copied bytes is reported to
+ * the observers after every chunk. The bytes of files that are skipped or fail are reported
+ * as well, so the state reaches the total size of all files. The file's attributes, including
+ * the user defined ones like the datetime mark, are copied like the standard copy operation does.
+ */
+public class ChannelCopy implements ICopy, Subject<Long> {
+    // default number of bytes transferred with a single call
+    public static final long DEFAULT_CHUNK_SIZE = 64L*1024*1024;
+    // replace existing files if true
+    private final boolean replace;
+    // number of bytes transferred with a single call
+    private final long chunkSize;
+    // list of observers that are to be updated
+    private List<Observer> obs = new ArrayList<>();
+    // total number of bytes copied or skipped by this object
+    private long bytesCopied = 0;
+
+    /**
+     * ChannelCopy constructor. Existing files are not replaced.
+     */
+    public ChannelCopy() {
+        this(false);
+    }
+
+    /**
+     * ChannelCopy constructor
+     * @param replace true if existing files should be replaced
+     */
+    public ChannelCopy(boolean replace) {
+        this(replace, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * ChannelCopy constructor
+     * @param replace true if existing files should be replaced
+     * @param chunkSize maximum number of bytes transferred at once
+     */
+    public ChannelCopy(boolean replace, long chunkSize) {
+        if(chunkSize < 1) throw new IllegalArgumentException("chunk size must be positive");
+        this.replace = replace;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Copy the 'from' file to the 'to' file path chunk by chunk. If the file already
+     * exists and replacing is disabled, an exception is thrown, the same way the
+     * standard copy does. If the destination is the source itself, e.g. a hard link
+     * created by a previous run, nothing is done. If from equals to then an exception
+     * will be thrown. A replaced file is never truncated in place, the data is copied
+     * into a temporary file next to it, which is moved over the existing file. If the
+     * copy fails, the incomplete file is deleted.
+     *
+     * @param from source file path
+     * @param to destination file path
+     * @throws IOException if an error occured during the copy operation
+     */
+    @Override
+    public void execute(Path from, Path to) throws IOException {
+        boolean exists = Files.exists(to);
+        if(from.equals(to) || (exists && (!replace || Files.isSameFile(from, to)))) {
+            // the skipped file still counts towards the progress
+            report(Files.size(from));
+            if(from.equals(to)) throw new IOException("file already exists");
+            // already in the repository, replacing would truncate the source
+            if(replace) return;
+            throw new FileAlreadyExistsException(to.toString());
+        }
+
+        BasicFileAttributes attrs = Files.readAttributes(from, BasicFileAttributes.class);
+        long size = attrs.size(), position = 0;
+        Path target = exists ? Files.createTempFile(to.toAbsolutePath().getParent(), "." + to.getFileName(), ".copy") : to;
+        // the temporary file was just created, a new file must not overwrite anything
+        OpenOption create = exists ? StandardOpenOption.WRITE : StandardOpenOption.CREATE_NEW;
+        try {
+            try(FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, create)) {
+                size = in.size();
+                while(position < size) {
+                    long transferred = in.transferTo(position, Math.min(chunkSize, size-position), out);
+                    // the source got shorter while copying
+                    if(transferred <= 0) break;
+                    position += transferred;
+                    report(transferred);
+                }
+            }
+            copyAttributes(from, target, attrs);
+            if(exists) Files.move(target, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException ioe) {
+            Files.deleteIfExists(target);
+            report(size - position);
+            throw ioe;
+        }
+    }
+
+    /**
+     * Add bytes to the number of bytes processed and notify the observers.
+     * @param bytes number of bytes copied or skipped
+     */
+    private void report(long bytes) {
+        if(bytes <= 0) return;
+        bytesCopied += bytes;
+        notifyObservers();
+    }
+
+    /**
+     * Copy the time stamps and, if supported, the owner, the posix permissions and the
+     * user defined attributes of the source file to the destination, like the standard
+     * copy operation does.
+     * @param from source file path
+     * @param to destination file path
+     * @param attrs the source file's attributes
+     * @throws IOException if the time stamps can't be written
+     */
+    private void copyAttributes(Path from, Path to, BasicFileAttributes attrs) throws IOException {
+        PosixFileAttributeView posixView = Files.getFileAttributeView(to, PosixFileAttributeView.class);
+        if(posixView != null) {
+            try {
+                PosixFileAttributes posixAttrs = Files.readAttributes(from, PosixFileAttributes.class);
+                try {
+                    posixView.setOwner(posixAttrs.owner());
+                    posixView.setGroup(posixAttrs.group());
+                } catch(IOException ioe) {
+                    // only privileged users can change the owner
+                }
+                posixView.setPermissions(posixAttrs.permissions());
+            } catch(UnsupportedOperationException | IOException e) {
+                // permissions are optional, the copy still succeeded
+            }
+        }
+        UserDefinedFileAttributeView fromView = Files.getFileAttributeView(from, UserDefinedFileAttributeView.class);
+        UserDefinedFileAttributeView toView = Files.getFileAttributeView(to, UserDefinedFileAttributeView.class);
+        if(fromView != null && toView != null) {
+            try {
+                for(String name : fromView.list()) {
+                    ByteBuffer value = ByteBuffer.allocate(fromView.size(name));
+                    fromView.read(name, value);
+                    value.flip();
+                    toView.write(name, value);
+                }
+            } catch(UnsupportedOperationException | IOException e) {
+                // the destination's file system doesn't support user defined attributes
+            }
+        }
+        Files.getFileAttributeView(to, BasicFileAttributeView.class)
+                .setTimes(attrs.lastModifiedTime(), attrs.lastAccessTime(), attrs.creationTime());
+    }
+
+    /**
+     * register an observer
+     * @param o observer object
+     */
+    @Override
+    public void register(Observer o) {
+        obs.add(o);
+    }
+
+    /**
+     * unregister an observer
+     * @param o observer object
+     */
+    @Override
+    public void unregister(Observer o) {
+        obs.remove(o);
+    }
+
+    /**
+     * Notify all observers by calling .update() on all registered observers.
+     */
+    @Override
+    public void notifyObservers() {
+        for(Observer o : obs) o.update();
+    }
+
+    /**
+     * Get the total number of bytes that have been copied or skipped by this object.
+     * @return number of bytes
+     */
+    @Override
+    public Long getState() {
+        return bytesCopied;
+    }
+}
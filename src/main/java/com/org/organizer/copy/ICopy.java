@@ -15,4 +15,13 @@ public interface ICopy {
      * @throws IOException if errors occured during the execution of the operation
      */
     void execute(Path from, Path to) throws IOException;
+
+    /**
+     * Check whether the operation removes the source file, so the files of a directory
+     * can be moved together instead of one by one.
+     * @return true if the files are moved
+     */
+    default boolean isMove() {
+        return false;
+    }
 }
@@ -0,0 +1,71 @@
+package com.org.organizer.copy;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * Link operation that adds a hard link of the source file to the repository instead of
+ * copying its data. The source stays where it is and no bytes are written. Hard links
+ * only work inside a single filesystem, if the source and the destination are on
+ * different filesystems or the filesystem doesn't support links, the file is copied
+ * instead. Both links share the same attributes, so the lastModified field of a linked
+ * file must not be changed, see LastModifiedMark. Extended attribute marks are fine.
+ */
+public class Link implements ICopy {
+    // replace existing files if true
+    private final boolean replace;
+    // operation used if the file can't be linked
+    private final ICopy fallback = new Copy();
+
+    /**
+     * Link constructor. Existing files are not replaced.
+     */
+    public Link() {
+        this(false);
+    }
+
+    /**
+     * Link constructor
+     * @param replace true if existing files should be replaced
+     */
+    public Link(boolean replace) {
+        this.replace = replace;
+    }
+
+    /**
+     * Create a hard link at the 'to' path pointing to the 'from' file. If the destination
+     * already is a link to the same file, nothing is done. Other existing files are only
+     * replaced if replacing is enabled, otherwise an exception is thrown the same way the
+     * standard copy does. If from equals to then an exception will be thrown.
+     *
+     * @param from source file path
+     * @param to destination file path
+     * @throws IOException if an error occured during the link or copy operation
+     */
+    @Override
+    public void execute(Path from, Path to) throws IOException {
+        if(from.equals(to)) throw new IOException("file already exists");
+        if(Files.exists(to)) {
+            // linked in a previous run, the file is already in the repository
+            if(Files.isSameFile(from, to)) return;
+            if(!replace) throw new FileAlreadyExistsException(to.toString());
+            Files.delete(to);
+        }
+
+        try {
+            Files.createLink(to, from);
+        } catch(UnsupportedOperationException uoe) {
+            fallback.execute(from, to);
+        } catch(FileAlreadyExistsException faee) {
+            throw faee;
+        } catch(FileSystemException fse) {
+            // links can't cross filesystems, any other error is a real one
+            if(Files.getFileStore(from).equals(Files.getFileStore(to.toAbsolutePath().getParent()))) throw fse;
+            fallback.execute(from, to);
+        }
+    }
+}
@@ -24,4 +24,13 @@ public class Move implements ICopy {
         if(from.equals(to)) throw new IOException("file already exists");
         Files.move(from, to);
     }
+
+    /**
+     * Moving removes the source file.
+     * @return true
+     */
+    @Override
+    public boolean isMove() {
+        return true;
+    }
 }
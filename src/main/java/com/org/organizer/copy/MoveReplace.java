@@ -24,4 +24,13 @@ public class MoveReplace implements ICopy {
         if(from.equals(to)) throw new IOException("file already exists");
         Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
     }
+
+    /**
+     * Moving removes the source file.
+     * @return true
+     */
+    @Override
+    public boolean isMove() {
+        return true;
+    }
 }
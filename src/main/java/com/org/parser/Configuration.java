@@ -18,15 +18,23 @@ public class Configuration {
     /* file where properties are stored */
     // name of the property file
     public static String PROPERTY_FILE_NAME_STRING = ".organizer_config.txt";
+    // name of the file graph snapshot
+    public static String GRAPH_FILE_NAME_STRING = ".organizer_graph.bin";
+    // name of the date cache
+    public static String DATE_CACHE_FILE_NAME_STRING = ".organizer_dates.log";
+    // name of the manifest in each leaf folder
+    public static String LEAF_MANIFEST_FILE_NAME_STRING = ".organizer_leaf.txt";
+    // name of the journal of a migration to another folder size
+    public static String MIGRATION_FILE_NAME_STRING = ".organizer_migration.txt";
     public static String ERROR_FOLDER_NAME = "error";
 
     // path to the repository and to the error folder
     public String PROPERTY_FILE_PATH_STRING = "";
 
     // set of all available properties
-    Set<String> propertyNames = new HashSet<>(Arrays.asList("folderSize"));
+    Set<String> propertyNames = new HashSet<>(Arrays.asList("folderSize", "mergeSize"));
     // set of all properties that can be modified
-    Set<String> modifiableProperties = new HashSet<>(Arrays.asList("folderSize"));
+    Set<String> modifiableProperties = new HashSet<>(Arrays.asList("folderSize", "mergeSize"));
 
     /* available commands with name, description, etc. */
     Command organizeCommand = new OrganizeFiles()
@@ -51,7 +59,7 @@ public class Configuration {
 
     Command setPropertyCommand = new SetProperty()
             .setName("setProperty")
-            .setDescription("set and store property, currently available properties: folderSize=N: set folder size threshold")
+            .setDescription("set and store property, currently available properties: folderSize=N: set folder size threshold, mergeSize=N: merge subfolders only if they hold at most N files, at most folderSize. Prints the planned restructuring, which is carried out with --migrate")
             .setCommandFormat("setProperty [property=value]");
 
     Command deleteRepository = new DeleteRepository()
@@ -68,9 +76,14 @@ public class Configuration {
 
     Command markCommand = new MarkCommand()
             .setName("mark")
-            .setDescription("read the date from all files in the current or the given directory and mark them to improve performance")
+            .setDescription("read the date from all files in the current or the given directory that aren't marked yet and mark them to improve performance")
             .setCommandFormat("mark [/optional/directory]");
 
+    Command cacheCommand = new CacheCommand()
+            .setName("cache")
+            .setDescription("print or maintain the cache of the dates read while organizing, 'compact' removes superseded entries, 'evict' removes entries older than the given days, 'clear' removes all")
+            .setCommandFormat("cache [compact|evict days|clear]");
+
     /* available options with name, description, etc. */
     Option replaceOption = new FlagOption()
             .setName("replace")
@@ -80,6 +93,10 @@ public class Configuration {
             .setName("move")
             .setDescription("move files instead of copying them");
 
+    Option linkOption = new FlagOption()
+            .setName("link")
+            .setDescription("add hard links to the files instead of copying them, files on another filesystem are copied");
+
     Option fileExtensionsOption = new ValueOption()
             .allowAllValues(true)
             .acceptMultipleValues(true)
@@ -91,11 +108,66 @@ public class Configuration {
             .setName("ignoreMark")
             .setDescription("ignores the mark set on the file and read the date from metadata instead");
 
+    Option bulkOption = new FlagOption()
+            .setName("bulk")
+            .setDescription("read the dates of all files first and copy each file directly into its final folder, faster for large imports");
+
+    Option nameFirstOption = new FlagOption()
+            .setName("nameFirst")
+            .setDescription("learn for each directory whether the file names have the dates and then read the names before the metadata, a date in the name wins over the metadata, can't be used with more than one thread");
+
+    Option deferSplitOption = new ValueOption()
+            .allowAllValues(true)
+            .setName("deferSplit")
+            .setDescription("let folders exceed the folder size while organizing and split each of them once at the end, folders above N files are split right away")
+            .setOptionFormat("--deferSplit=N");
+
+    Option migrateOption = new FlagOption()
+            .setName("migrate")
+            .setDescription("restructure the repository for the new folder size right after setProperty, an interrupted migration is resumed by running it again");
+
+    Option migrateMarksOption = new FlagOption()
+            .setName("migrateMarks")
+            .setDescription("with mark, reuse the dates marked in the files' lastModified field when marking with extended attributes instead of reading the files again, a file whose lastModified matches its mark by chance keeps the wrong date");
+
+    Option threadsOption = new ValueOption()
+            .allowAllValues(true)
+            .setName("threads")
+            .setDescription("number of threads reading the files' dates in parallel, default is 1")
+            .setOptionFormat("--threads=N");
+
+    Option extractionBudgetOption = new ValueOption()
+            .allowAllValues(true)
+            .acceptMultipleValues(true)
+            .setName("extractionBudget")
+            .setDescription("maximum seconds and megabytes spent on reading the date of a single file, files exceeding it are put into the error folder, e.g. 10,64, unlimited if not given")
+            .setOptionFormat("--extractionBudget=SECONDS,MEGABYTES");
+
+    Option copyModeOption = new ValueOption()
+            .addAcceptedValue("standard")
+            .addAcceptedValue("channel")
+            .defaultValue("standard")
+            .setName("copyMode")
+            .setDescription("how files are copied, 'channel' transfers the data between file channels in chunks and shows the progress in bytes")
+            .setOptionFormat("--copyMode=[standard,channel]");
+
     /**
      * Default empty constructor.
      */
     public Configuration() {}
 
+    /**
+     * Check whether the file is one of the files the organizer stores in the repository's
+     * root, like the property file. These files are never organized or counted.
+     * @param fileName the file's name
+     * @return true if it's a repository file
+     */
+    public static boolean isRepositoryFile(String fileName) {
+        return fileName.equals(PROPERTY_FILE_NAME_STRING) || fileName.startsWith(GRAPH_FILE_NAME_STRING)
+                || fileName.startsWith(DATE_CACHE_FILE_NAME_STRING) || fileName.startsWith(LEAF_MANIFEST_FILE_NAME_STRING)
+                || fileName.startsWith(MIGRATION_FILE_NAME_STRING);
+    }
+
     /**
      * Return a map with all available commands. The keys are the command's names.
      * @return
@@ -112,6 +184,7 @@ public class Configuration {
         allCommands.put(checkCommand.getName(), checkCommand);
         allCommands.put(repairCommand.getName(), repairCommand);
         allCommands.put(markCommand.getName(), markCommand);
+        allCommands.put(cacheCommand.getName(), cacheCommand);
         return allCommands;
     }
 
@@ -123,8 +196,17 @@ public class Configuration {
         Map<String, Option> allOptions = new HashMap<>();
         allOptions.put(replaceOption.getName(), replaceOption);
         allOptions.put(moveOption.getName(), moveOption);
+        allOptions.put(linkOption.getName(), linkOption);
         allOptions.put(fileExtensionsOption.getName(), fileExtensionsOption);
         allOptions.put(ignoreMarkOption.getName(), ignoreMarkOption);
+        allOptions.put(threadsOption.getName(), threadsOption);
+        allOptions.put(bulkOption.getName(), bulkOption);
+        allOptions.put(deferSplitOption.getName(), deferSplitOption);
+        allOptions.put(nameFirstOption.getName(), nameFirstOption);
+        allOptions.put(migrateOption.getName(), migrateOption);
+        allOptions.put(migrateMarksOption.getName(), migrateMarksOption);
+        allOptions.put(copyModeOption.getName(), copyModeOption);
+        allOptions.put(extractionBudgetOption.getName(), extractionBudgetOption);
         return allOptions;
     }
 
@@ -136,6 +218,21 @@ public class Configuration {
         return FileTools.readProperties(PROPERTY_FILE_PATH_STRING+ File.separator+PROPERTY_FILE_NAME_STRING);
     }
 
+    /**
+     * Get the merge threshold from the repository's properties. Subfolders are only merged
+     * into their parent if all of them together hold at most this many files. Keeping it
+     * below the folder size stops folders around the threshold from being split and merged
+     * over and over. Repositories without the property merge as soon as the files fit.
+     * @param properties repository properties
+     * @return merge threshold, never above the folder size
+     */
+    public static int mergeSize(Properties properties) {
+        int folderSize = Integer.parseInt(properties.getProperty("folderSize"));
+        String mergeSize = properties.getProperty("mergeSize");
+        if(mergeSize == null) return folderSize;
+        return Math.min(Integer.parseInt(mergeSize), folderSize);
+    }
+
     /**
      * Get a set with all names of the properties.
      * @return
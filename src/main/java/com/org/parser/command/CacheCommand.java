@@ -0,0 +1,72 @@
+package com.org.parser.command;
+
+import com.org.parser.Configuration;
+import com.org.util.consistency.Checker;
+import com.org.util.time.DateCache;
+
+import java.io.IOException;
+
+/**
+ * This command prints information about the repository's date cache or maintains it.
+ * The cache stores the dates read from the files while organizing. Without arguments
+ * the number of entries and the size of the cache are printed. 'compact' rewrites the
+ * cache without superseded entries, 'evict days' removes all entries that are older
+ * than the given number of days and 'clear' removes all entries.
+ */
+public class CacheCommand extends Command {
+    // the action to execute, null if the status is printed
+    private String action;
+    // maximum age of the entries in days for the evict action
+    private int days;
+
+    /**
+     * Check that the repository exists and that the arguments are a valid action.
+     * @param args arguments
+     * @param config configuration object
+     * @throws CommandException if the repo doesn't exist or the arguments are invalid
+     */
+    @Override
+    public void validateConfiguration(String[] args, Configuration config) throws CommandException {
+        Checker.checkRepository(config.PROPERTY_FILE_PATH_STRING);
+        action = args.length == 0 ? null : args[0];
+
+        if(action == null) {
+            return;
+        } else if(action.equals("compact") || action.equals("clear")) {
+            if(args.length != 1) throw new CommandException(action + " doesn't take in arguments");
+        } else if(action.equals("evict")) {
+            if(args.length != 2) throw new CommandException("evict needs the number of days");
+            try {
+                days = Integer.parseInt(args[1]);
+                if(days < 1) throw new NumberFormatException();
+            } catch(NumberFormatException nfe) {
+                throw new CommandException("number of days needs to be a positive integer");
+            }
+        } else {
+            throw new CommandException("unknown cache action: " + action);
+        }
+    }
+
+    /**
+     * Open the cache and execute the action.
+     * @param args arguments
+     * @param config configuration object
+     */
+    @Override
+    public void executeCommand(String[] args, Configuration config) {
+        try(DateCache cache = DateCache.open(config.PROPERTY_FILE_PATH_STRING)) {
+            if(action == null) {
+                System.out.printf("entries: %d, records: %d, size: %d bytes\n", cache.size(), cache.recordCount(), cache.fileSize());
+            } else if(action.equals("compact")) {
+                System.out.printf("removed %d superseded records\n", cache.compact());
+            } else if(action.equals("evict")) {
+                System.out.printf("removed %d records\n", cache.evict(days * 24L * 3600 * 1000));
+            } else {
+                cache.clear();
+                System.out.println("date cache cleared");
+            }
+        } catch(IOException ioe) {
+            System.err.println("date cache error: " + ioe.getMessage());
+        }
+    }
+}
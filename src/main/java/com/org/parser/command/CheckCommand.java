@@ -6,6 +6,7 @@ import com.org.util.consistency.Checker;
 import com.org.util.consistency.ModelChecker;
 import com.org.util.consistency.ModelError;
 import com.org.util.graph.FileGraph;
+import com.org.util.time.DateExtractor;
 import com.org.view.ProgressBar;
 
 import java.io.File;
@@ -38,6 +39,8 @@ public class CheckCommand extends Command {
      */
     @Override
     public void executeCommand(String[] args, Configuration config) {
+        // read the marks the repository's filesystem supports
+        DateExtractor.useMarkFor(config.PROPERTY_FILE_PATH_STRING);
         // create the checker object which has all validation functionality
         ModelChecker checker = new ModelChecker(config);
         // set up the progress bar
@@ -66,7 +69,7 @@ public class CheckCommand extends Command {
             if(!errorList.isEmpty()) {
                 System.out.println(me.name()+":");
                 for(FileGraph.Node folder : errorList) {
-                    if(folder != null) System.out.println(folder.path);
+                    if(folder != null) System.out.println(folder.getPath());
                 }
             }
         }
@@ -45,8 +45,9 @@ public abstract class Command {
      * execute the command. This function contains the actual implementation.
      * @param args arguments
      * @param config configuration object
+     * @throws CommandException if the command can't be carried out
      */
-    public abstract void executeCommand(String[] args, Configuration config);
+    public abstract void executeCommand(String[] args, Configuration config) throws CommandException;
 
     /**
      * setter for the command format
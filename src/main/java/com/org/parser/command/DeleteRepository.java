@@ -1,9 +1,16 @@
 package com.org.parser.command;
 
 import com.org.parser.Configuration;
+import com.org.util.FileWalker;
 import com.org.util.consistency.Checker;
+import com.org.util.consistency.ThresholdMigration;
+import com.org.util.graph.FileGraphSnapshot;
+import com.org.util.graph.LeafManifest;
+import com.org.util.time.DateCache;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * Command to delete an existing repository in the current working directory.
@@ -25,7 +32,8 @@ public class DeleteRepository extends Command {
     /**
      * Delete the hidden property file and the error folder associated to the repository.
      * When they're deleted the repository doesn't exist anymore. All other files will
-     * remain. This function only works if the error folder is empty.
+     * remain, but the manifests in the folders are deleted. This function only works if the
+     * error folder is empty.
      * @param args arguments
      * @param config configuration object
      */
@@ -33,7 +41,27 @@ public class DeleteRepository extends Command {
     public void executeCommand(String[] args, Configuration config) {
         File propertyFile = new File(config.PROPERTY_FILE_PATH_STRING, Configuration.PROPERTY_FILE_NAME_STRING);
         File errorFolder = new File(config.PROPERTY_FILE_PATH_STRING, Configuration.ERROR_FOLDER_NAME);
+        String[] errorFiles = errorFolder.list();
+        if(errorFiles != null && errorFiles.length > 0) {
+            System.out.println("repository could not be deleted");
+            return;
+        }
+        // the manifests would be trusted again if a repository is created here later
+        new FileWalker().walk(Path.of(config.PROPERTY_FILE_PATH_STRING), new FileWalker.Visitor() {
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {}
+
+            @Override
+            public void preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                LeafManifest.delete(dir.toFile());
+            }
+        });
+        // a migration that was interrupted can't be resumed without the repository
+        ThresholdMigration.getFile(config.PROPERTY_FILE_PATH_STRING).delete();
         if(propertyFile.delete() && errorFolder.delete()) {
+            // the date cache and the graph snapshot are stored in the repository, so delete them as well
+            DateCache.getFile(config.PROPERTY_FILE_PATH_STRING).delete();
+            FileGraphSnapshot.invalidate(config.PROPERTY_FILE_PATH_STRING);
             System.out.println("repository successfully deleted");
         } else {
             System.out.println("repository could not be deleted");
@@ -1,8 +1,11 @@
 package com.org.parser.command;
 
 import com.org.parser.Configuration;
+import com.org.parser.option.ValueOption;
 import com.org.util.FileTools;
+import com.org.util.time.AttributeMark;
 import com.org.util.time.DateExtractor;
+import com.org.util.time.LastModifiedMark;
 import com.org.util.time.MarkAllFiles;
 import com.org.view.ProgressBar;
 
@@ -10,11 +13,15 @@ import java.io.File;
 
 /**
  * This command iterates through all files reads the datetime attribute from them
- * and marks them by changing the ms (the last 3 digits) of the file.lastModified()
- * file attribute. The mark is a hash from the file's name. The next time the file's
- * datetime is read, the mark is checked. If the file is marked, then accessing the
- * lastModified field saves a lot of IO operations and increases the other file operations
- * significantly.
+ * and marks them. If the filesystem supports extended attributes, the datetime is stored
+ * in an attribute, otherwise in the ms (the last 3 digits) of the file.lastModified()
+ * file attribute as a hash from the file's name. The next time the file's datetime is
+ * read, the mark is checked. If the file is marked, then reading the mark saves a lot of
+ * IO operations and increases the other file operations significantly. With the option
+ * migrateMarks, files that are already marked in their lastModified field get the same
+ * datetime as attribute without being read again, which migrates existing repositories.
+ * The lastModified mark is only a hash, so roughly one in a thousand unmarked files looks
+ * marked and its lastModified is taken as datetime, that's why it's only done on request.
  */
 public class MarkCommand extends Command {
     // the directory's path to be marked
@@ -42,11 +49,27 @@ public class MarkCommand extends Command {
         // check if the folder exists
         File folder = new File(path);
         if(!folder.exists()) throw new CommandException("directory " + path + " doesn't exist");
+
+        // check that the number of threads is a positive number if it's given
+        ValueOption threadsOption = (ValueOption) config.allOptions().get("threads");
+        if(threadsOption.isEnabled()) {
+            try {
+                if(Integer.parseInt(threadsOption.getValues().get(0)) < 1) throw new NumberFormatException();
+            } catch(NumberFormatException nfe) {
+                throw new CommandException("number of threads needs to be a positive integer");
+            }
+        }
+
+        // migrating the marks reuses the marks, which are ignored otherwise
+        if(config.allOptions().get("migrateMarks").isEnabled() && config.allOptions().get("ignoreMark").isEnabled()) {
+            throw new CommandException("the options migrateMarks and ignoreMark can't be used together");
+        }
     }
 
     /**
      * Execute the command and mark all files in the given directory. This method
-     * also searches through all the subdirectories.
+     * also searches through all the subdirectories. Files that are already marked and
+     * haven't changed since are skipped, unless the marks are ignored.
      * @param args arguments
      * @param config configuration object
      */
@@ -54,13 +77,21 @@ public class MarkCommand extends Command {
     public void executeCommand(String[] args, Configuration config) {
         // deactivate the mark function when reading a file's datetime
         DateExtractor.setIgnoreMark(true);
+        DateExtractor.useMarkFor(path);
+        // only mark new and changed files, unless the marks are ignored, and reuse the datetimes
+        // of files marked in their lastModified field if requested
+        boolean incremental = !config.allOptions().get("ignoreMark").isEnabled();
+        boolean migrate = config.allOptions().get("migrateMarks").isEnabled() && DateExtractor.getMark() instanceof AttributeMark;
 
         // setup the progress bar by counting the number of files
         int fileCount = FileTools.countFiles(new File(path));
         System.out.println("number of files: " + fileCount);
         ProgressBar bar = new ProgressBar(20, fileCount);
         // create the marker object
-        MarkAllFiles marker = new MarkAllFiles(path);
+        MarkAllFiles marker = new MarkAllFiles(path).setIncremental(incremental);
+        if(migrate) marker.migrateFrom(new LastModifiedMark());
+        ValueOption threadsOption = (ValueOption) config.allOptions().get("threads");
+        if(threadsOption.isEnabled()) marker.setThreads(Integer.parseInt(threadsOption.getValues().get(0)));
 
         // register the progress bar and setup the marker as subject
         bar.setSubject(marker);
@@ -68,5 +99,6 @@ public class MarkCommand extends Command {
 
         System.out.printf("marking all files in the directory '%s'...\n", path);
         marker.execute();
+        System.out.printf("marked %d files, %d were already marked\n", marker.getMarkedCount(), marker.getState() - marker.getMarkedCount());
     }
 }
@@ -1,6 +1,5 @@
 package com.org.parser.command;
 
-import com.org.organizer.Organizer;
 import com.org.organizer.ThresholdOrganizer;
 import com.org.organizer.copy.*;
 import com.org.parser.Configuration;
@@ -8,12 +7,18 @@ import com.org.parser.option.Option;
 import com.org.parser.option.ValueOption;
 import com.org.util.consistency.Checker;
 import com.org.util.FileTools;
+import com.org.util.SourceManifest;
+import com.org.util.time.DateCache;
 import com.org.util.time.DateExtractor;
+import com.org.util.time.ExtractionBudget;
+import com.org.util.time.StrategyMemo;
 import com.org.view.ProgressBar;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -42,6 +47,45 @@ public class OrganizeFiles extends Command {
             throw new CommandException("source file: " + args[0] + " don't exist");
         }
 
+        // check that the number of threads is a positive number if it's given
+        ValueOption threadsOption = (ValueOption) config.allOptions().get("threads");
+        if(threadsOption.isEnabled()) {
+            try {
+                if(Integer.parseInt(threadsOption.getValues().get(0)) < 1) throw new NumberFormatException();
+            } catch(NumberFormatException nfe) {
+                throw new CommandException("number of threads needs to be a positive integer");
+            }
+            // what the memo learns depends on the order the dates are read in
+            if(config.allOptions().get("nameFirst").isEnabled() && Integer.parseInt(threadsOption.getValues().get(0)) > 1) {
+                throw new CommandException("the option nameFirst can't be used with more than one thread");
+            }
+        }
+
+        // check that the ceiling of the deferred split is a positive number if it's given
+        ValueOption deferSplitOption = (ValueOption) config.allOptions().get("deferSplit");
+        if(deferSplitOption.isEnabled()) {
+            try {
+                if(Integer.parseInt(deferSplitOption.getValues().get(0)) < 1) throw new NumberFormatException();
+            } catch(NumberFormatException nfe) {
+                throw new CommandException("the ceiling of the deferred split needs to be a positive integer");
+            }
+        }
+
+        // check that the extraction budget consists of two positive numbers if it's given
+        ValueOption budgetOption = (ValueOption) config.allOptions().get("extractionBudget");
+        if(budgetOption.isEnabled()) {
+            try {
+                extractionBudget(budgetOption);
+            } catch(IllegalArgumentException iae) {
+                throw new CommandException("extraction budget needs to be two positive integers, seconds and megabytes");
+            }
+        }
+
+        // files can either be moved or linked
+        if(config.allOptions().get("move").isEnabled() && config.allOptions().get("link").isEnabled()) {
+            throw new CommandException("the options move and link can't be used together");
+        }
+
         // check if current directory is a valid repo
         Checker.checkRepository(config.PROPERTY_FILE_PATH_STRING);
     }
@@ -52,9 +96,10 @@ public class OrganizeFiles extends Command {
      * by datetime. A progressbar will be set up and prints the current progress.
      * @param args arguments
      * @param config configuration object
+     * @throws CommandException if the source can't be scanned
      */
     @Override
-    public void executeCommand(String[] args, Configuration config) {
+    public void executeCommand(String[] args, Configuration config) throws CommandException {
         // get the source from the argument array and the destination from the configuration object
         String source = args[0], destination = config.PROPERTY_FILE_PATH_STRING;
 
@@ -72,9 +117,18 @@ public class OrganizeFiles extends Command {
             filter = (dir, name) -> extensions.contains(FileTools.getFileExtension(name).toLowerCase());
         }
 
-        // sum up the total space of files to be moved
+        // scan the source once, the manifest gives the number of files, their total size
+        // and the files themselves to the organizer without walking through the source again
         File sourceDir = new File(source);
-        long size = FileTools.size(sourceDir, filter);
+        SourceManifest manifest = new SourceManifest();
+        try {
+            manifest.scan(sourceDir, filter);
+        } catch(IOException ioe) {
+            manifest.close();
+            throw new CommandException("error while scanning the source: " + ioe.getMessage());
+        }
+        // sum up the total space of files to be moved
+        long size = manifest.getSize();
         // the size is given in bytes, so format as much as possible
         double formattedSize = size;
         String[] sizeUnit = new String[] {"B", "KB", "MB", "GB", "TB", "PB"};
@@ -85,9 +139,8 @@ public class OrganizeFiles extends Command {
         }
 
         // get the total number of files and set up the progress bar
-        int fileCount = FileTools.countFiles(sourceDir, filter);
+        int fileCount = manifest.getFileCount();
         System.out.printf("file count: %d, size: %.2f%s\n", fileCount, formattedSize, sizeUnit[unit]);
-        ProgressBar bar = new ProgressBar(20, fileCount);
 
         // get the IO operation, to find out whether to move/copy
         ICopy copyOperation;
@@ -95,11 +148,21 @@ public class OrganizeFiles extends Command {
         boolean replace = optionMap.get("replace").isEnabled();
         String strOp;
 
+        // the channel copy reports the copied bytes instead of the number of files
+        ChannelCopy channelCopy = null;
+
         // get the correct copy operation object
         if(move) {
             strOp = replace ? "moving and replacing" : "moving";
             if(replace) copyOperation = new MoveReplace();
             else copyOperation = new Move();
+        } else if(optionMap.get("link").isEnabled()) {
+            strOp = replace ? "linking and replacing" : "linking";
+            copyOperation = new Link(replace);
+        } else if(((ValueOption) optionMap.get("copyMode")).getValues().get(0).equals("channel")) {
+            strOp = replace ? "copying and replacing" : "copying";
+            channelCopy = new ChannelCopy(replace);
+            copyOperation = channelCopy;
         } else {
             strOp = replace ? "copying and replacing" : "copying";
             if(replace) copyOperation = new CopyReplace();
@@ -109,22 +172,90 @@ public class OrganizeFiles extends Command {
         // get the ignoreMark option
         boolean ignoreMark = optionMap.get("ignoreMark").isEnabled();
         DateExtractor.setIgnoreMark(ignoreMark);
+        // mark the files with the marks the repository's filesystem supports
+        DateExtractor.useMarkFor(destination);
+
+        // limit the time and bytes spent on reading a single file if a budget is given
+        ValueOption budgetOption = (ValueOption) optionMap.get("extractionBudget");
+        DateExtractor.setExtractionBudget(budgetOption.isEnabled() ? extractionBudget(budgetOption) : null);
 
         // get the maximum allowed folder size which is stored in the properties file
         int folderSize = Integer.parseInt(config.getProperties().getProperty("folderSize"));
-        Organizer thresholdOrganizer = new ThresholdOrganizer(copyOperation, folderSize, destination);
+        ThresholdOrganizer thresholdOrganizer = new ThresholdOrganizer(copyOperation, folderSize, destination);
+
+        // read the dates with multiple threads if the option is given
+        ValueOption threadsOption = (ValueOption) optionMap.get("threads");
+        if(threadsOption.isEnabled()) thresholdOrganizer.setExtractorThreads(Integer.parseInt(threadsOption.getValues().get(0)));
+        // place all files directly into their final folder
+        thresholdOrganizer.setBulkLoad(optionMap.get("bulk").isEnabled());
+        // split the folders exceeding the folder size once at the end
+        ValueOption deferSplitOption = (ValueOption) optionMap.get("deferSplit");
+        if(deferSplitOption.isEnabled()) thresholdOrganizer.setDeferredSplit(Integer.parseInt(deferSplitOption.getValues().get(0)));
 
         // add all extensions that are allowed
         // the list can also be empty, which means every extension is allowed
         for(String ext : extensions) thresholdOrganizer.allowFileExtension(ext);
 
         // set up the subject - observer references to update the progress bar
-        // whenever a file has been successfully processed by the organizer
-        bar.setSubject(thresholdOrganizer);
-        thresholdOrganizer.register(bar);
+        // whenever a file has been successfully processed by the organizer or,
+        // with the channel copy, whenever a chunk of bytes has been copied
+        if(channelCopy != null) {
+            ProgressBar bar = new ProgressBar(20, size);
+            bar.setSubject(channelCopy);
+            channelCopy.register(bar);
+        } else {
+            ProgressBar bar = new ProgressBar(20, fileCount);
+            bar.setSubject(thresholdOrganizer);
+            thresholdOrganizer.register(bar);
+        }
+
+        // reuse the dates of files that were read before, e.g. if an earlier run was interrupted
+        DateCache dateCache = null;
+        try {
+            dateCache = DateCache.open(destination);
+            DateExtractor.setDateCache(dateCache);
+        } catch(IOException ioe) {
+            System.err.println("could not open the date cache: " + ioe.getMessage());
+        }
+
+        // learn which directories have the datetimes in the file names instead of the metadata
+        StrategyMemo strategyMemo = null;
+        if(optionMap.get("nameFirst").isEnabled()) {
+            strategyMemo = new StrategyMemo();
+            DateExtractor.setStrategyMemo(strategyMemo);
+        }
 
         // start the execution of the algorithm
         System.out.printf("%s files %s -> %s\n", strOp, source, destination);
-        thresholdOrganizer.copyAndOrganize(source);
+        try {
+            thresholdOrganizer.copyAndOrganize(manifest);
+            if(strategyMemo != null) System.out.println(strategyMemo.report());
+        } finally {
+            manifest.close();
+            DateExtractor.setStrategyMemo(null);
+            DateExtractor.setExtractionBudget(null);
+            DateExtractor.setDateCache(null);
+            if(dateCache != null) {
+                try {
+                    dateCache.close();
+                } catch(IOException ioe) {
+                    System.err.println("could not close the date cache: " + ioe.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the extraction budget from the option's values, the seconds and megabytes.
+     * @param budgetOption extraction budget option
+     * @return extraction budget
+     * @throws IllegalArgumentException if the values aren't two positive integers
+     */
+    private static ExtractionBudget extractionBudget(ValueOption budgetOption) {
+        List<String> values = budgetOption.getValues();
+        if(values.size() != 2) throw new IllegalArgumentException("invalid extraction budget");
+        long seconds = Long.parseLong(values.get(0));
+        long megabytes = Long.parseLong(values.get(1));
+        return new ExtractionBudget(megabytes * 1000 * 1000, seconds * 1000);
     }
 }
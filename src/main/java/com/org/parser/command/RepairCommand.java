@@ -7,6 +7,7 @@ import com.org.util.consistency.ModelChecker;
 import com.org.util.consistency.ModelError;
 import com.org.util.consistency.ModelFixer;
 import com.org.util.graph.FileGraph;
+import com.org.util.time.DateExtractor;
 import com.org.view.ProgressBar;
 
 import java.io.File;
@@ -34,6 +35,8 @@ public class RepairCommand extends Command {
     public void validateConfiguration(String[] args, Configuration config) throws CommandException {
         // check if the repo is valid
         Checker.checkRepositoryFile(config.PROPERTY_FILE_PATH_STRING);
+        // read and write the marks the repository's filesystem supports
+        DateExtractor.useMarkFor(config.PROPERTY_FILE_PATH_STRING);
 
         // get the checker functionality
         ModelChecker checker = new ModelChecker(config);
@@ -3,12 +3,16 @@ package com.org.parser.command;
 import com.org.parser.Configuration;
 import com.org.util.consistency.Checker;
 import com.org.util.FileTools;
+import com.org.util.consistency.ThresholdMigration;
+import com.org.util.time.DateExtractor;
+import com.org.view.ProgressBar;
 
 import java.util.Properties;
 
 /**
  * This command can modify properties of the repository. Multiple properties
- * can be set with one execution
+ * can be set with one execution. After the folder sizes changed, the restructuring
+ * of the repository is planned and carried out with the migrate option.
  */
 public class SetProperty extends Command {
     /**
@@ -20,14 +24,16 @@ public class SetProperty extends Command {
      */
     @Override
     public void validateConfiguration(String[] args, Configuration config) throws CommandException {
-        // check that arguments were given
+        // check that the repo exists
+        Checker.checkRepository(config.PROPERTY_FILE_PATH_STRING);
+
+        // check that arguments were given, an interrupted migration can be resumed without
         if(args.length == 0) {
+            if(config.allOptions().get("migrate").isEnabled()
+                    && ThresholdMigration.getFile(config.PROPERTY_FILE_PATH_STRING).isFile()) return;
             throw new CommandException("property arguments missing");
         }
 
-        // check that the repo exists
-        Checker.checkRepository(config.PROPERTY_FILE_PATH_STRING);
-
         // get the given property's key value pair by splitting it between the equal sign
         String property = args[0].substring(0, args[0].indexOf('='));
 
@@ -37,6 +43,35 @@ public class SetProperty extends Command {
         } else if(!config.getModifiableProperties().contains(property)) {
             throw new CommandException(String.format("property '%s' can't be modified", property));
         }
+
+        // the thresholds must be numbers and the merge threshold can't be above the folder size
+        Properties properties = config.getProperties();
+        for(String arg : args) {
+            int idxAssign = arg.indexOf('=');
+            if(idxAssign == -1) continue;
+            properties.put(arg.substring(0, idxAssign), arg.substring(idxAssign+1));
+        }
+        int folderSize = parseSize(properties, "folderSize", 1);
+        if(properties.getProperty("mergeSize") != null && parseSize(properties, "mergeSize", 0) > folderSize) {
+            throw new CommandException("mergeSize can't be larger than folderSize");
+        }
+    }
+
+    /**
+     * Parse a threshold property.
+     * @param properties properties including the new values
+     * @param name name of the property
+     * @param min minimum value
+     * @return the threshold
+     * @throws CommandException if the value isn't an integer or too small
+     */
+    private int parseSize(Properties properties, String name, int min) throws CommandException {
+        try {
+            int size = Integer.parseInt(properties.getProperty(name));
+            if(size >= min) return size;
+        } catch(NumberFormatException nfe) {
+        }
+        throw new CommandException(String.format("%s needs to be an integer of at least %d", name, min));
     }
 
     /**
@@ -49,6 +84,8 @@ public class SetProperty extends Command {
     public void executeCommand(String[] args, Configuration config) {
         // get all properties before the change
         Properties properties = config.getProperties();
+        // true if a folder size changed, then the structure might not fit anymore
+        boolean resized = false;
 
         // iterate through all properties in the input
         for(String arg : args) {
@@ -62,10 +99,46 @@ public class SetProperty extends Command {
 
             // split the property name and the value and update the properties with its new values
             String name = arg.substring(0, idxAssign), value = arg.substring(idxAssign+1);
-            properties.put(name, value);
+            resized |= !value.equals(properties.put(name, value)) && (name.equals("folderSize") || name.equals("mergeSize"));
         }
 
         // write the changes to the property file
-        FileTools.storeProperties(properties, Configuration.PROPERTY_FILE_NAME_STRING);
+        if(args.length > 0) FileTools.storeProperties(properties, Configuration.PROPERTY_FILE_NAME_STRING);
+
+        // plan the restructuring if the folder sizes changed or a migration was interrupted
+        boolean migrate = config.allOptions().get("migrate").isEnabled();
+        if(resized || migrate) migrate(config, migrate);
+    }
+
+    /**
+     * Plan the restructuring of the repository for the current folder sizes and print
+     * the estimate. The steps are only carried out if the migrate option is given.
+     * @param config configuration object
+     * @param migrate true if the repository should be restructured
+     */
+    private void migrate(Configuration config, boolean migrate) {
+        // read and write the marks the repository's filesystem supports
+        DateExtractor.useMarkFor(config.PROPERTY_FILE_PATH_STRING);
+        ThresholdMigration migration = new ThresholdMigration(config);
+        boolean resumed = migration.plan();
+        int steps = migration.getSteps().size();
+        if(steps == 0) {
+            if(resumed) ThresholdMigration.getFile(config.PROPERTY_FILE_PATH_STRING).delete();
+            if(migrate) System.out.println("the structure already fits the folder size");
+            return;
+        }
+        System.out.println(resumed ? "resuming the interrupted migration" : "planned migration");
+        System.out.println(migration.report());
+        if(!migrate) {
+            System.out.println("run setProperty again with --migrate to restructure the repository now");
+            return;
+        }
+
+        // set up progress bar, which shows how many folders are restructured
+        ProgressBar bar = new ProgressBar(20, steps);
+        bar.setSubject(migration);
+        migration.register(bar);
+        migration.migrate();
+        System.out.println();
     }
 }
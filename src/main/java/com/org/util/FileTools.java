@@ -6,12 +6,14 @@ import java.awt.*;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.Properties;
+import java.util.function.Function;
 
 public class FileTools {
     public static int countFiles(File file) {
@@ -20,32 +22,22 @@ public class FileTools {
 
     public static int countFiles(File file, FilenameFilter filter) {
         if(file == null) return 0;
-        else if(file.isFile()) {
-            if(filter == null || filter.accept(file.getParentFile(), file.getName())) return 1;
-            else return 0;
-        }
-
-        int count = 0;
-        for(File f : file.listFiles()) {
-            count += countFiles(f, filter);
-        }
+        int[] count = new int[1];
+        new FileWalker()
+                .setFileFilter((p, a) -> filter == null || filter.accept(p.getParent() == null ? null : p.getParent().toFile(), p.getFileName().toString()))
+                .walk(file.toPath(), (p, a) -> count[0]++);
 
-        return count;
+        return count[0];
     }
 
     public static int countFiles(File file, FileFilter filter) {
         if(file == null) return 0;
-        else if(file.isFile()) {
-            if(filter == null || filter.accept(file)) return 1;
-            else return 0;
-        }
-
-        int count = 0;
-        for(File f : file.listFiles()) {
-            count += countFiles(f, filter);
-        }
+        int[] count = new int[1];
+        new FileWalker()
+                .setFileFilter((p, a) -> filter == null || filter.accept(p.toFile()))
+                .walk(file.toPath(), (p, a) -> count[0]++);
 
-        return count;
+        return count[0];
     }
 
     public static int countFolders(File folder) {
@@ -54,28 +46,35 @@ public class FileTools {
 
     public static int countFolders(File folder, FileFilter filter) {
         if(folder == null || !folder.exists()) return 0;
-        else if(folder.isFile()) return 0;
-
-        int count = 0;
-        if(filter == null || filter.accept(folder)) count = 1;
-        for(File f : folder.listFiles(a -> a.isDirectory())) {
-            count += countFolders(f, filter);
-        }
-
-        return count;
+        int[] count = new int[1];
+        new FileWalker().walk(folder.toPath(), new FileWalker.Visitor() {
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {}
+
+            @Override
+            public void preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if(filter == null || filter.accept(dir.toFile())) count[0]++;
+            }
+        });
+
+        return count[0];
     }
 
     private static int countFolders(File folder, FilenameFilter filter) {
         if(folder == null || !folder.exists()) return 0;
-        else if(folder.isFile()) return 0;
-
-        int count = 0;
-        if(filter == null || filter.accept(folder.getParentFile(), folder.getName())) count = 1;
-        for(File f : folder.listFiles(a -> a.isDirectory())) {
-            count += countFolders(f, filter);
-        }
-
-        return count;
+        int[] count = new int[1];
+        new FileWalker().walk(folder.toPath(), new FileWalker.Visitor() {
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {}
+
+            @Override
+            public void preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                File f = dir.toFile();
+                if(filter == null || filter.accept(f.getParentFile(), f.getName())) count[0]++;
+            }
+        });
+
+        return count[0];
     }
 
     public static int countDirectFiles(File file) {
@@ -98,16 +97,12 @@ public class FileTools {
 
     public static long size(File file, FilenameFilter filter) {
         if(file == null) return 0;
-        else if(file.isFile()) {
-            if(filter == null || filter.accept(file.getParentFile(), file.getName())) return file.length();
-            else return 0;
-        }
-        long sum = 0;
-        for(File f : file.listFiles()) {
-            sum += size(f, filter);
-        }
+        long[] sum = new long[1];
+        new FileWalker()
+                .setFileFilter((p, a) -> filter == null || filter.accept(p.getParent() == null ? null : p.getParent().toFile(), p.getFileName().toString()))
+                .walk(file.toPath(), (p, a) -> sum[0] += a.size());
 
-        return sum;
+        return sum[0];
     }
 
     // clear the directory and deletes all files terminally, preserves root directory, files are NOT moved to the trash bin
@@ -247,10 +242,39 @@ public class FileTools {
     }
 
     public static String chooseFileName(String path, String fileName, LocalDateTime originalTime) {
+        return chooseFileName(path, fileName, null, originalTime);
+    }
+
+    /**
+     * Choose the file name for a file that is added to the folder. If a file with the same
+     * name and datetime exists, the name is returned so the file is treated as a duplicate.
+     * A file in the folder that is a hard link to the source is always a duplicate, no matter
+     * its datetime. Otherwise a new name is created by adding a number, e.g. name(1).ext.
+     * @param path folder the file is added to
+     * @param fileName the file's name
+     * @param source source file, can be null
+     * @param originalTime the source file's datetime
+     * @return the chosen file name
+     */
+    public static String chooseFileName(String path, String fileName, File source, LocalDateTime originalTime) {
+        return chooseFileName(path, fileName, source, originalTime, DateExtractor::getDate);
+    }
+
+    /**
+     * Choose the file name for a file that is added to the folder, the datetimes of the
+     * files already in the folder are looked up with the given function.
+     * @param path folder the file is added to
+     * @param fileName the file's name
+     * @param source source file, can be null
+     * @param originalTime the source file's datetime
+     * @param dates returns the datetime of a file in the folder
+     * @return the chosen file name
+     */
+    public static String chooseFileName(String path, String fileName, File source, LocalDateTime originalTime, Function<File, LocalDateTime> dates) {
         File file = new File(path, fileName);
 
-        if(!file.exists()) return fileName;
-        LocalDateTime ldt = DateExtractor.getDate(file);
+        if(!file.exists() || isSameFile(file, source)) return fileName;
+        LocalDateTime ldt = dates.apply(file);
         if((ldt == null && originalTime == null) || ldt.truncatedTo(ChronoUnit.SECONDS).equals(originalTime.truncatedTo(ChronoUnit.SECONDS))) return fileName;
 
         int idxDot = fileName.lastIndexOf('.');
@@ -263,8 +287,8 @@ public class FileTools {
         while(true) {
             nameBuilder.append(name).append('(').append(count).append(')').append('.').append(ext);
             file = new File(path, nameBuilder.toString());
-            if(file.exists()) ldt = DateExtractor.getDate(file);
-            else break;
+            if(!file.exists() || isSameFile(file, source)) break;
+            ldt = dates.apply(file);
             if(ldt != null) ldt = ldt.truncatedTo(ChronoUnit.SECONDS);
             if(ldt.equals(originalTime)) break;
             nameBuilder.setLength(0);
@@ -274,6 +298,36 @@ public class FileTools {
         return nameBuilder.toString();
     }
 
+    /**
+     * Check whether both files are the same file on the disk, e.g. because one is a hard
+     * link to the other.
+     * @param file first file
+     * @param other second file, can be null
+     * @return true if both are the same file, false otherwise or if it can't be checked
+     */
+    public static boolean isSameFile(File file, File other) {
+        if(file == null || other == null) return false;
+        try {
+            return Files.isSameFile(file.toPath(), other.toPath());
+        } catch(IOException ioe) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the number of hard links pointing to the file. If the filesystem doesn't
+     * support links, 1 is returned.
+     * @param file file object
+     * @return number of links
+     */
+    public static int linkCount(File file) {
+        try {
+            return (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+        } catch(UnsupportedOperationException | IllegalArgumentException | IOException e) {
+            return 1;
+        }
+    }
+
     private static String getName(String name) {
         if(name.charAt(name.length()-1) != ')') return name;
         int idxOpenBracket = name.lastIndexOf('(');
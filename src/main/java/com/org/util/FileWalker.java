@@ -0,0 +1,146 @@
+package com.org.util;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.function.BiPredicate;
+
+/**
+ * Walks through a directory tree and hands out every entry together with its attributes.
+ * The attributes are read once per entry while the directory is listed, so there is no
+ * need to call isFile(), length(), etc. on each file afterwards. The traversal is based
+ * on Files.walkFileTree(), which keeps the open directories on an explicit stack instead
+ * of recursing on the Java stack, so deep trees are no problem. Subtrees can be pruned
+ * with a directory filter and files can be filtered before they are visited.
+ */
+public class FileWalker {
+    /**
+     * Visitor interface that is called for the entries found during the walk.
+     */
+    public interface Visitor {
+        /**
+         * Called for every file (not directory) that passes the file filter.
+         * @param file path to the file
+         * @param attrs the file's attributes
+         */
+        void visitFile(Path file, BasicFileAttributes attrs);
+
+        /**
+         * Called before the entries of a directory are visited. This includes the start
+         * directory.
+         * @param dir path to the directory
+         * @param attrs the directory's attributes
+         */
+        default void preVisitDirectory(Path dir, BasicFileAttributes attrs) {}
+
+        /**
+         * Called after all entries of a directory have been visited.
+         * @param dir path to the directory
+         */
+        default void postVisitDirectory(Path dir) {}
+    }
+
+    // only files accepted by this filter are visited, null accepts all
+    private BiPredicate<Path, BasicFileAttributes> fileFilter = null;
+    // only subdirectories accepted by this filter are entered, null accepts all
+    private BiPredicate<Path, BasicFileAttributes> directoryFilter = null;
+    // maximum depth of the walk, the start directory has depth 0
+    private int maxDepth = Integer.MAX_VALUE;
+    // set to true if the walk should be stopped
+    private boolean stopped = false;
+
+    /**
+     * Default empty constructor.
+     */
+    public FileWalker() {}
+
+    /**
+     * Set the filter for the files. Files that are not accepted are skipped.
+     * @param fileFilter filter for the files, null accepts all files
+     * @return this object
+     */
+    public FileWalker setFileFilter(BiPredicate<Path, BasicFileAttributes> fileFilter) {
+        this.fileFilter = fileFilter;
+        return this;
+    }
+
+    /**
+     * Set the filter for the directories. Directories that are not accepted are pruned,
+     * meaning that neither they nor anything in their subtree is visited. The start
+     * directory is always visited.
+     * @param directoryFilter filter for the directories, null accepts all directories
+     * @return this object
+     */
+    public FileWalker setDirectoryFilter(BiPredicate<Path, BasicFileAttributes> directoryFilter) {
+        this.directoryFilter = directoryFilter;
+        return this;
+    }
+
+    /**
+     * Set the maximum depth of the walk. A depth of 1 only visits the direct entries
+     * of the start directory.
+     * @param maxDepth maximum depth
+     * @return this object
+     */
+    public FileWalker setMaxDepth(int maxDepth) {
+        if(maxDepth < 0) throw new IllegalArgumentException("max depth can't be negative");
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Stop the current walk. Can be called from inside the visitor. No entries will
+     * be visited afterwards.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Walk through the file tree starting at the given path. If the start is a file,
+     * only the file itself is visited. Entries that can't be read are skipped, the
+     * same way File.listFiles() ignores them.
+     * @param start start file or directory
+     * @param visitor visitor called for the entries
+     */
+    public void walk(Path start, Visitor visitor) {
+        stopped = false;
+        try {
+            Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), maxDepth, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if(stopped) return FileVisitResult.TERMINATE;
+                    if(directoryFilter != null && !dir.equals(start) && !directoryFilter.test(dir, attrs)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    visitor.preVisitDirectory(dir, attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if(stopped) return FileVisitResult.TERMINATE;
+                    // directories at the maximum depth are also reported here, they aren't files
+                    if(attrs.isDirectory()) return FileVisitResult.CONTINUE;
+                    if(fileFilter == null || fileFilter.test(file, attrs)) visitor.visitFile(file, attrs);
+                    return stopped ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return stopped ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    if(stopped) return FileVisitResult.TERMINATE;
+                    visitor.postVisitDirectory(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch(IOException ioe) {
+            // the visitor never throws, so this can only happen if the start can't be accessed
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.org.util;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The manifest is the result of a single scan through a source directory. It stores the
+ * path, size and last modified time of all files that passed the filter, so the number of
+ * files, their total size and the files themselves can be accessed without walking through
+ * the source again. Small sources are kept in memory. If the number of files exceeds the
+ * memory limit, all entries are streamed into a temporary file instead.
+ */
+public class SourceManifest implements Iterable<SourceManifest.Entry>, Closeable {
+    // default maximum number of entries that are kept in memory
+    public static final int DEFAULT_MEMORY_LIMIT = 250000;
+
+    /**
+     * A single file in the manifest.
+     */
+    public static class Entry {
+        // path to the file
+        public final Path path;
+        // file size in bytes
+        public final long size;
+        // last modified time in milliseconds since the epoch
+        public final long lastModified;
+
+        /**
+         * Entry constructor
+         * @param path path to the file
+         * @param size file size in bytes
+         * @param lastModified last modified time in epoch milliseconds
+         */
+        public Entry(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    // maximum number of entries in memory
+    private final int memoryLimit;
+    // the scanned source file or directory, null before the scan
+    private File source = null;
+    // entries stored in memory, empty if they are stored in the temporary file
+    private List<Entry> entries = new ArrayList<>();
+    // temporary file the entries are streamed to, null if all are stored in memory
+    private File spillFile = null;
+    // streams of the iterators over the temporary file, closed with the manifest
+    private final List<Closeable> openStreams = new ArrayList<>();
+    // number of files
+    private int fileCount = 0;
+    // total size in bytes
+    private long size = 0;
+
+    /**
+     * SourceManifest constructor with the default memory limit.
+     */
+    public SourceManifest() {
+        this(DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * SourceManifest constructor
+     * @param memoryLimit maximum number of entries kept in memory before they are
+     *                    streamed into a temporary file
+     */
+    public SourceManifest(int memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Walk through the source once and add all files accepted by the filter.
+     * @param source source file or directory
+     * @param filter filename filter, null accepts all files
+     * @throws IOException if the temporary file can't be written
+     */
+    public void scan(File source, FilenameFilter filter) throws IOException {
+        this.source = source;
+        DataOutputStream[] out = new DataOutputStream[1];
+        IOException[] error = new IOException[1];
+        FileWalker walker = new FileWalker()
+                .setFileFilter((p, a) -> filter == null || filter.accept(p.getParent() == null ? null : p.getParent().toFile(), p.getFileName().toString()));
+
+        try {
+            walker.walk(source.toPath(), (p, a) -> {
+                Entry entry = new Entry(p, a.size(), a.lastModifiedTime().toMillis());
+                fileCount++;
+                size += entry.size;
+                try {
+                    if(out[0] == null && entries.size() < memoryLimit) {
+                        entries.add(entry);
+                        return;
+                    }
+                    // too many files for the memory, move everything to the temporary file
+                    if(out[0] == null) out[0] = spill();
+                    write(out[0], entry);
+                } catch(IOException ioe) {
+                    error[0] = ioe;
+                    walker.stop();
+                }
+            });
+        } finally {
+            if(out[0] != null) out[0].close();
+        }
+        if(error[0] != null) throw error[0];
+    }
+
+    /**
+     * Create the temporary file and write all entries in memory to it.
+     * @return output stream to the temporary file
+     * @throws IOException if the file can't be created or written
+     */
+    private DataOutputStream spill() throws IOException {
+        spillFile = Files.createTempFile("organizer_manifest", ".bin").toFile();
+        spillFile.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile, true)));
+        for(Entry entry : entries) write(out, entry);
+        entries = new ArrayList<>();
+        return out;
+    }
+
+    /**
+     * Write a single entry to the stream.
+     * @param out output stream
+     * @param entry manifest entry
+     * @throws IOException if writing fails
+     */
+    private static void write(DataOutputStream out, Entry entry) throws IOException {
+        out.writeUTF(entry.path.toString());
+        out.writeLong(entry.size);
+        out.writeLong(entry.lastModified);
+    }
+
+    /**
+     * Get the source that was scanned.
+     * @return source file or directory, null if nothing was scanned
+     */
+    public File getSource() {
+        return source;
+    }
+
+    /**
+     * Get the number of files in the manifest.
+     * @return number of files
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * Get the total size of all files in bytes.
+     * @return size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Return an iterator over all entries in the order they were found.
+     * @return iterator
+     */
+    @Override
+    public Iterator<Entry> iterator() {
+        if(spillFile == null) return entries.iterator();
+
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile)));
+        } catch(FileNotFoundException fnfe) {
+            throw new UncheckedIOException(fnfe);
+        }
+        openStreams.add(in);
+
+        return new Iterator<>() {
+            // number of entries that have been read
+            private int read = 0;
+
+            @Override
+            public boolean hasNext() {
+                return read < fileCount;
+            }
+
+            @Override
+            public Entry next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                try {
+                    Entry entry = new Entry(Path.of(in.readUTF()), in.readLong(), in.readLong());
+                    if(++read == fileCount) in.close();
+                    return entry;
+                } catch(IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }
+        };
+    }
+
+    /**
+     * Close the iterators that weren't read to the end and delete the temporary file if
+     * it exists.
+     */
+    @Override
+    public void close() {
+        for(Closeable stream : openStreams) {
+            try {
+                stream.close();
+            } catch(IOException ioe) {
+                // nothing left to read from it
+            }
+        }
+        openStreams.clear();
+        if(spillFile != null) spillFile.delete();
+    }
+}
@@ -3,9 +3,10 @@ package com.org.util.consistency;
 import com.org.observer.Observer;
 import com.org.observer.Subject;
 import com.org.parser.Configuration;
-import com.org.util.FileTools;
+import com.org.util.FileWalker;
 import com.org.util.graph.FileGraph;
 import com.org.util.graph.FileGraphFactory;
+import com.org.util.graph.LeafManifest;
 import com.org.util.time.DateExtractor;
 import com.org.util.time.DateIterator;
 import com.org.util.time.DateStats;
@@ -14,8 +15,11 @@ import java.io.File;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 
 /**
  * This class has validation functionality to search a file graph structure
@@ -29,6 +33,8 @@ public class ModelChecker implements Subject<Integer> {
     private Configuration config;
     // folder size threshold
     private int threshold;
+    // subfolders can only be reduced if they hold at most this many files
+    private int mergeSize;
     // saved errors after check in a map which maps each error a list of faulty folders
     // the error are stored here after execution and can be returned through a getter function
     private Map<ModelError, List<FileGraph.Node>> errors = new HashMap<>();
@@ -45,8 +51,12 @@ public class ModelChecker implements Subject<Integer> {
      */
     public ModelChecker(Configuration config) {
         this.graph = FileGraphFactory.get(config.PROPERTY_FILE_PATH_STRING);
+        // the check must not rely on an outdated model, read all folders that changed
+        graph.refreshChanged();
         this.config = config;
-        threshold = Integer.parseInt(config.getProperties().getProperty("folderSize"));
+        Properties properties = config.getProperties();
+        threshold = Integer.parseInt(properties.getProperty("folderSize"));
+        mergeSize = Configuration.mergeSize(properties);
     }
 
     /**
@@ -61,7 +71,7 @@ public class ModelChecker implements Subject<Integer> {
         for(ModelError me : ModelError.values()) errors.put(me, new ArrayList<>());
         // the error folder is always in the root of the graph
         FileGraph.Node root = graph.getRoot();
-        errorFolderPath = root.path + File.separator + Configuration.ERROR_FOLDER_NAME;
+        errorFolderPath = root.getPath() + File.separator + Configuration.ERROR_FOLDER_NAME;
         if(!new File(errorFolderPath).exists()) errors.get(ModelError.ERROR_FOLDER_MISSING).add(null);
         // start the dfs search
         checkAllDfs(graph.getRoot(), new ArrayList<>());
@@ -78,9 +88,9 @@ public class ModelChecker implements Subject<Integer> {
      */
     private int checkAllDfs(FileGraph.Node node, List<String> path) {
         // skip the error folder
-        if(node.path.equals(errorFolderPath)) return 0;
+        if(node.depth == 1 && node.getName().equals(Configuration.ERROR_FOLDER_NAME)) return 0;
         // add folder name to path
-        String folderName = FileTools.getNameWithoutPrefix(graph.getRoot().path, node.path);
+        String folderName = node.getName();
         path.add(folderName);
         // check the folder for errors
         boolean validFolder = checkFolder(node);
@@ -94,31 +104,47 @@ public class ModelChecker implements Subject<Integer> {
             if(!validFolderStructure(path)) errors.get(ModelError.INVALID_FOLDER_STRUCTURE).add(node);
             // check that the folder actually exists, this shouldn't lead to an error
             // unless there is a mismatch between the filesystem and the filegraph
-            File leaf_folder = new File(node.path);
+            File leaf_folder = new File(node.getPath());
             if(!leaf_folder.exists()) throw new IllegalStateException("graph structure error: leaf folder doesn't exist, mismatch between filegraph and real structure");
             // only check if the folder didn't already have errors to avoid redundancy
             if(validFolder) {
-                // check that each file in the leaf folder is in the correct one according to their datetime stamp
-                for(File f : leaf_folder.listFiles())
-                    if(!checkFile(node, f)) {
+                // check that each file in the leaf folder is in the correct one according to their datetime stamp,
+                // the datetimes are taken from the leaf's manifest and only unlisted or changed files are read
+                LeafManifest manifest = LeafManifest.load(leaf_folder);
+                Set<String> fileNames = new HashSet<>();
+                FileWalker walker = new FileWalker().setMaxDepth(1);
+                walker.walk(leaf_folder.toPath(), (f, attrs) -> {
+                    String fileName = f.getFileName().toString();
+                    if(Configuration.isRepositoryFile(fileName)) return;
+                    fileNames.add(fileName);
+                    LocalDateTime ldt = DateExtractor.isIgnoreMark() ? null : manifest.getDate(fileName, attrs.size());
+                    if(ldt == null) {
+                        ldt = DateExtractor.getDate(f.toFile());
+                        manifest.put(fileName, attrs.size(), ldt);
+                    }
+                    if(!checkFile(node, ldt)) {
                         // if the file doesn't belong in this folder, mark it as inconsistent
                         errors.get(ModelError.FOLDER_CONTAINS_INCONSISTENT_DATES).add(node);
-                        break;
+                        walker.stop();
                     }
+                });
+                // files that were removed since the manifest was written can only be dropped after a full listing
+                if(!errors.get(ModelError.FOLDER_CONTAINS_INCONSISTENT_DATES).contains(node)) manifest.retain(fileNames);
+                if(manifest.isDirty()) manifest.save(leaf_folder);
             }
             numFiles = node.fileCount;
         } else {
             // recursive call on inner node
-            for(FileGraph.Node child : node.children.values()) {
+            for(FileGraph.Node child : node.getChildren()) {
                 numFiles += checkAllDfs(child, path);
             }
         }
 
-        // if the number of files in the subdirectories are less than the threshold
+        // if the number of files in the subdirectories are not above the merge threshold
         // they aren't needed and the structure can be reduced here
         if(node != graph.getRoot()) {
             if(node.leaf && numFiles == 0) errors.get(ModelError.CAN_BE_REDUCED).add(node);
-            else if(!node.leaf && numFiles <= threshold) errors.get(ModelError.CAN_BE_REDUCED).add(node);
+            else if(!node.leaf && numFiles <= mergeSize) errors.get(ModelError.CAN_BE_REDUCED).add(node);
         }
 
         // update folder count
@@ -144,7 +170,16 @@ public class ModelChecker implements Subject<Integer> {
      * @return true if it's correct, false otherwise
      */
     public boolean checkFile(FileGraph.Node parentNode, File file) {
-        return parentNode.leaf && correctFolder(parentNode, file);
+        return checkFile(parentNode, DateExtractor.getDate(file));
+    }
+
+    /**
+     * check that the file with the given datetime is in a leaf folder and that it's in
+     * the correct folder.
+     * @return true if it's correct, false otherwise
+     */
+    public boolean checkFile(FileGraph.Node parentNode, LocalDateTime ldt) {
+        return parentNode.leaf && correctFolder(parentNode, ldt);
     }
 
     /**
@@ -157,13 +192,24 @@ public class ModelChecker implements Subject<Integer> {
     public boolean correctFolder(FileGraph.Node parentNode, File file) {
         // root node is always correct
         if(parentNode == graph.getRoot()) return true;
+        return correctFolder(parentNode, DateExtractor.getDate(file));
+    }
+
+    /**
+     * Function that checks that a file with the given datetime belongs in the folder.
+     * @param parentNode
+     * @param ldt the file's datetime
+     * @return true if valid, false otherwise
+     */
+    public boolean correctFolder(FileGraph.Node parentNode, LocalDateTime ldt) {
+        // root node is always correct
+        if(parentNode == graph.getRoot()) return true;
 
-        // extract the file's date and create an iterator for the time units
-        LocalDateTime ldt = DateExtractor.getDate(file);
+        // create an iterator for the time units of the file's date
         if(ldt == null) return false;
         DateIterator it = new DateIterator(ldt);
         // the date of the folder is parsed in its name, so split it up
-        String folderName = FileTools.getNameWithoutPrefix(graph.getRoot().path, parentNode.path);
+        String folderName = parentNode.getName();
         String[] folderSplit = folderName.split("_");
         // check if the folders time is in the correct depth of graph
         if(parentNode.depth != folderSplit.length) return false;
@@ -188,7 +234,7 @@ public class ModelChecker implements Subject<Integer> {
     public boolean checkFolder(FileGraph.Node folderNode) {
         boolean validFolder = true;
 
-        if(!validFolderName(FileTools.getNameWithoutPrefix(graph.getRoot().path, folderNode.path))) {
+        if(!validFolderName(folderNode.getName())) {
             errors.get(ModelError.INVALID_FOLDER_NAME).add(folderNode);
             validFolder = false;
         }
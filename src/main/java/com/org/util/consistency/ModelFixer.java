@@ -10,7 +10,7 @@ import com.org.util.FileTools;
 import com.org.util.graph.FileGraph;
 import com.org.util.graph.FileGraphFactory;
 import com.org.util.graph.FileGraphOperation;
-import com.org.util.time.DateExtractor;
+import com.org.util.graph.FileGraphSnapshot;
 import com.org.util.time.DateIterator;
 import com.org.util.time.DateTools;
 
@@ -29,6 +29,8 @@ import java.util.regex.Pattern;
 public class ModelFixer implements Subject<Integer> {
     // folder size threshold
     private int threshold;
+    // subfolders are only merged into their parent if they hold at most this many files
+    private int mergeSize;
 
     // subject/observer stuff, count number of errors fixed
     private List<Observer> obs = new ArrayList<>();
@@ -46,7 +48,9 @@ public class ModelFixer implements Subject<Integer> {
      * @param config configuration object
      */
     public ModelFixer(Configuration config) {
-        threshold = Integer.parseInt(config.getProperties().getProperty("folderSize"));
+        Properties properties = config.getProperties();
+        threshold = Integer.parseInt(properties.getProperty("folderSize"));
+        mergeSize = Configuration.mergeSize(properties);
         rootPath = config.PROPERTY_FILE_PATH_STRING;
         fileGraph = FileGraphFactory.get(rootPath);
         fileGraphOperation = new FileGraphOperation(fileGraph);
@@ -58,6 +62,8 @@ public class ModelFixer implements Subject<Integer> {
      * @param errors
      */
     public void fixStructure(Map<ModelError, List<FileGraph.Node>> errors) {
+        // the snapshot is outdated as soon as the first folder is changed
+        FileGraphSnapshot.invalidate(rootPath);
         // reset structures
         errorsFixed = 0;
         folderErrorCountMap.clear();
@@ -80,6 +86,8 @@ public class ModelFixer implements Subject<Integer> {
         System.out.println("reducing structure...");
         // remove empty leaf folders and reduce folders
         reduceStructure();
+        fileGraphOperation.saveManifests();
+        FileGraphSnapshot.save(fileGraph);
     }
 
     /**
@@ -108,13 +116,13 @@ public class ModelFixer implements Subject<Integer> {
             // maximum depth of a node is the 'seconds' time unit, anything past
             // that is not fixable
             if(fn.depth >= 6) continue;
-            String original = fn.path;
+            String original = fn.getPath();
             List<FileGraph.Node> path = fileGraphOperation.getPathToNode(fn);
             boolean restored = restoreFolder(fn, path, faultyFolders);
 
             // if restoration was possible, update the file graph to the new state
             if(restored) updateFolders();
-            if(!fn.path.equals(original)) {
+            if(!fn.getPath().equals(original)) {
                 updateFolders();
                 // check how many errors could be fixed by that method
                 for(FileGraph.Node n : path) {
@@ -123,7 +131,7 @@ public class ModelFixer implements Subject<Integer> {
                         folderErrorCountMap.remove(n);
                     }
                 }
-                System.out.printf("successfully restored structure:\n%s -> %s\n", original, fn.path);
+                System.out.printf("successfully restored structure:\n%s -> %s\n", original, fn.getPath());
                 notifyObservers();
             }
         }
@@ -197,10 +205,10 @@ public class ModelFixer implements Subject<Integer> {
         if(!allAreSameDate(node)) return false;
 
         // generate the correct folder name from one of its files
-        File leafFolder = new File(node.path);
-        File[] files = leafFolder.listFiles(a -> a.isFile());
+        File leafFolder = new File(node.getPath());
+        File[] files = listFiles(leafFolder);
         if(files.length == 0) return false;
-        String folderName = DateTools.folderName(files[0], node.depth);
+        String folderName = DateTools.folderName(fileGraphOperation.getDate(files[0]), node.depth);
 
         // validate with sibling nodes
         if(path.size() >= 3 && !validateWithSiblings(path.get(path.size()-2), node, folderName, faultyFolders)) {
@@ -234,8 +242,8 @@ public class ModelFixer implements Subject<Integer> {
         for(int i = path.size()-2; i >= 1; i--) {
             // get the folder's new name from its child
             FileGraph.Node currNode = path.get(i);
-            File currFolder = new File(currNode.path);
-            String newFolderName = correctPreviousFolderName(nextNode.path);
+            File currFolder = new File(currNode.getPath());
+            String newFolderName = correctPreviousFolderName(nextNode.getName());
             // validate the new name with its correctly named siblings
             if(!validateWithSiblings(path.get(i-1), currNode, newFolderName, faultyFolders)) {
                 return false;
@@ -258,9 +266,9 @@ public class ModelFixer implements Subject<Integer> {
      */
     private boolean allAreSameDate(FileGraph.Node node) {
         // get all the folder's files as objects
-        File folder = new File(node.path);
+        File folder = new File(node.getPath());
         StringBuilder folderNameBuilder = new StringBuilder();
-        File[] files = folder.listFiles(a -> a.isFile());
+        File[] files = listFiles(folder);
 
         // make sure that the folder exists
         if(files == null) return false;
@@ -269,7 +277,7 @@ public class ModelFixer implements Subject<Integer> {
 
         // get the date from the first file in the array, doesn't matter which one
         // and build the folder's correct name
-        LocalDateTime ldt = DateExtractor.getDate(files[0]);
+        LocalDateTime ldt = fileGraphOperation.getDate(files[0]);
         if(ldt == null) return false;
         DateIterator di = new DateIterator(ldt);
         boolean first = true;
@@ -282,7 +290,7 @@ public class ModelFixer implements Subject<Integer> {
 
         // check that all files are in the correct folder
         for(File f : files) {
-            if(!correctFolder(folderName, f)) {
+            if(!correctFolder(folderName, fileGraphOperation.getDate(f))) {
                 return false;
             }
         }
@@ -290,6 +298,15 @@ public class ModelFixer implements Subject<Integer> {
         return true;
     }
 
+    /**
+     * List the files of a folder without the repository files, e.g. the leaf's manifest.
+     * @param folder folder
+     * @return the files, null if the folder doesn't exist
+     */
+    private File[] listFiles(File folder) {
+        return folder.listFiles(a -> a.isFile() && !Configuration.isRepositoryFile(a.getName()));
+    }
+
     /**
      * Check if a folder name is valid considering the valid sibling folder's names.
      * @param parent parent node
@@ -304,9 +321,9 @@ public class ModelFixer implements Subject<Integer> {
         if(node.depth <= 1) return true;
 
         String prefix = folderName.substring(0, folderName.lastIndexOf('_'));
-        for(FileGraph.Node sibling : parent.children.values()) {
+        for(FileGraph.Node sibling : parent.getChildren()) {
             if(faultyNodes.contains(sibling)) continue;
-            String siblingFolder = FileTools.getNameWithoutPrefix(rootPath, sibling.path);
+            String siblingFolder = sibling.getName();
             if(!siblingFolder.startsWith(prefix)) {
                 return false;
             }
@@ -316,13 +333,12 @@ public class ModelFixer implements Subject<Integer> {
     }
 
     /**
-     * Returns the correct folder name considering the next folder's path. the correct folder given
+     * Returns the correct folder name considering the next folder's name. the correct folder given
      * the next folder name, e.g. if folderName = "2008_jan" then the correct previous folder is "2008"
-     * @param folderPath the absolute path of one of its subfolders
+     * @param folderName the name of one of its subfolders
      * @return the correct folder name
      */
-    private String correctPreviousFolderName(String folderPath) {
-        String folderName = FileTools.getNameWithoutPrefix(rootPath, folderPath);
+    private String correctPreviousFolderName(String folderName) {
         // the time units of the folders are delimited by underscores
         // so cut off the last unit
         int idxUnderscore = folderName.lastIndexOf("_");
@@ -333,71 +349,41 @@ public class ModelFixer implements Subject<Integer> {
     }
 
     /**
-     * Rename the folder associated with a node and update its path.
+     * Rename the folder associated with a node and update its name.
      * @param node node to be renamed
      * @param newFolderName new folder name
      * @return true if it was successful, false otherwise
      */
     private boolean renameFolder(FileGraph.Node node, String newFolderName) {
-        File folder = new File(node.path);
+        // a sibling with the same name would be replaced or merged
+        if(node.getParent().getChild(newFolderName) != null) return false;
+        File folder = new File(node.getPath());
         File renamedFolder = new File(folder.getParent(), newFolderName);
         if(!folder.renameTo(renamedFolder)) {
             return false;
         }
 
-        node.path = renamedFolder.getAbsolutePath();
+        node.rename(newFolderName);
         return true;
     }
 
     /**
      * Update the entire filegraph structure. Usually called after renaming
-     * folder names.
+     * folder names. The renamed nodes already have their new names, so only
+     * the folders that changed are read again.
      */
     private void updateFolders() {
-        FileGraph.Node root = fileGraph.getRoot();
-        updateFolders(root, new StringBuilder(root.path));
-    }
-
-    /**
-     * Recursive implementation of the updateFolders() function. It's implemented as
-     * a post order traversal algorithm. It first updates all children nodes and then
-     * updates the keys for its hash maps accordingly.
-     * @param node current node
-     * @param path string builder for keeping track of the current absolute path
-     */
-    private void updateFolders(FileGraph.Node node, StringBuilder path) {
-        String folderName = FileTools.getNameWithoutPrefix(rootPath, node.path);
-        int originalLength = path.length();
-        if(!folderName.isEmpty()) path.append(File.separator).append(folderName);
-        node.path = path.toString();
-
-        // leaf nodes don't need to be updated
-        if(!node.leaf) {
-            // go through each child entry
-            List<Map.Entry<String, FileGraph.Node>> entries = new ArrayList<>(node.children.entrySet());
-            for(Map.Entry<String, FileGraph.Node> e : entries) {
-                FileGraph.Node child = e.getValue();
-                updateFolders(child, path);
-                String key = e.getKey();
-                // after the update, remove the old key and add the updated key to the map
-                node.children.remove(key);
-                node.children.put(child.path, child);
-            }
-        }
-
-        // restore old state after being done with a folder
-        path.setLength(originalLength);
+        fileGraph.refreshChanged();
     }
 
     /**
      * Checks if a file is in the correct folder, e.g. matches the date parsed
      * in the folder's name.
      * @param folderName the folder's name
-     * @param f file to be checked
+     * @param ldt the file's datetime
      * @return true if the datetime is correct, false otherwise
      */
-    private boolean correctFolder(String folderName, File f) {
-        LocalDateTime ldt = DateExtractor.getDate(f);
+    private boolean correctFolder(String folderName, LocalDateTime ldt) {
         if(ldt == null) return false;
         DateIterator it = new DateIterator(ldt);
         // the time units in the folder's name are delimited with underscores
@@ -428,7 +414,7 @@ public class ModelFixer implements Subject<Integer> {
         for(FileGraph.Node invalidFolder : unrestorableFolders) {
             moveFilesToCorrectLocation(invalidFolder, foldersAboveThreshold);
             // update the folder's file count
-            if(invalidFolder.leaf) invalidFolder.fileCount = FileTools.countDirectFiles(new File(invalidFolder.path));
+            if(invalidFolder.leaf) invalidFolder.fileCount = FileTools.countDirectFiles(new File(invalidFolder.getPath()), (d, n) -> !Configuration.isRepositoryFile(n));
             else invalidFolder.fileCount = 0;
             // update the errors that have been fixed and notify all observers
             errorsFixed += folderErrorCountMap.getOrDefault(invalidFolder, 0);
@@ -455,13 +441,13 @@ public class ModelFixer implements Subject<Integer> {
      * @param foldersAboveThreshold set where all folders which exceed the threshold are stored for later processing
      */
     private void moveFilesToCorrectLocation(FileGraph.Node folderNode, Set<FileGraph.Node> foldersAboveThreshold) {
-        File folder = new File(folderNode.path);
+        File folder = new File(folderNode.getPath());
         ICopy move = new MoveReplace();
 
         for(File file : folder.listFiles(f -> f.isFile())) {
             FileGraph.Node correctNode = fileGraphOperation.copyFile(move, file);
             if(correctNode == null) {
-                if(!file.getName().equals(Configuration.PROPERTY_FILE_NAME_STRING))
+                if(!Configuration.isRepositoryFile(file.getName()))
                     System.err.println("modelfixer: error when moving file to correct location or duplicate");
             } else {
                 if(correctNode.fileCount > threshold) foldersAboveThreshold.add(correctNode);
@@ -474,11 +460,11 @@ public class ModelFixer implements Subject<Integer> {
      * Iterate through the entire file graph to find the folders not having enough
      * files to be split up into subfolders, so they can be summed up. And also
      * search for all folders that are empty to remove them. This function minimizes
-     * the folder structure according to the maximum number of files indicated by
-     * the threshold.
+     * the folder structure according to the merge threshold, which isn't above the
+     * maximum number of files indicated by the threshold.
      */
     public void reduceStructure() {
-        fileGraphOperation.reduceStructure(threshold);
+        fileGraphOperation.reduceStructure(mergeSize);
     }
 
     /**
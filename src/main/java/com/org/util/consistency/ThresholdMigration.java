@@ -0,0 +1,426 @@
+package com.org.util.consistency;
+
+import com.org.observer.Observer;
+import com.org.observer.Subject;
+import com.org.organizer.copy.ICopy;
+import com.org.organizer.copy.MoveReplace;
+import com.org.parser.Configuration;
+import com.org.util.graph.FileGraph;
+import com.org.util.graph.FileGraphFactory;
+import com.org.util.graph.FileGraphOperation;
+import com.org.util.graph.FileGraphSnapshot;
+import com.org.util.graph.LeafManifest;
+import com.org.util.time.DateTools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Restructures the repository after the folder size changed. The target structure is
+ * planned from the counts in the file graph and the datetimes in the leaf manifests:
+ * leaves above the new folder size are split and subtrees that fit into a single folder
+ * are merged into their topmost folder. Every file is moved at most once and a chain of
+ * folders with a single leaf is renamed instead. The remaining steps are kept in a journal
+ * in the repository's root, so an interrupted migration can be resumed. A progress bar
+ * can be attached to follow the steps.
+ */
+public class ThresholdMigration implements Subject<Integer> {
+    // folder size threshold
+    private final int threshold;
+    // subtrees are merged into a single folder if they hold at most this many files
+    private final int mergeSize;
+    // repository root path as string
+    private final String rootPath;
+    private final FileGraph fileGraph;
+    private final FileGraphOperation fileGraphOperation;
+    // planned steps, the first one is carried out next
+    private final List<Step> steps = new ArrayList<>();
+    // the estimate of the planned steps
+    private int filesToMove = 0, foldersToRename = 0, foldersToCreate = 0, foldersToDelete = 0;
+    private long bytesToMove = 0;
+
+    // subject/observer stuff, count number of steps carried out
+    private final List<Observer> obs = new ArrayList<>();
+    private int stepsDone = 0;
+
+    /**
+     * Kind of restructuring of a folder.
+     */
+    public enum Action {
+        // move the folder's files into new subfolders
+        SPLIT,
+        // move the files of all subfolders into the folder
+        MERGE
+    }
+
+    /**
+     * A single step of the migration.
+     */
+    public static class Step {
+        public final Action action;
+        // folder path relative to the repository's root
+        public final String path;
+
+        Step(Action action, String path) {
+            this.action = action;
+            this.path = path;
+        }
+    }
+
+    /**
+     * ThresholdMigration constructor. The folder sizes are taken from the configuration,
+     * so the new values need to be stored first.
+     * @param config configuration object
+     */
+    public ThresholdMigration(Configuration config) {
+        Properties properties = config.getProperties();
+        threshold = Integer.parseInt(properties.getProperty("folderSize"));
+        mergeSize = Configuration.mergeSize(properties);
+        rootPath = config.PROPERTY_FILE_PATH_STRING;
+        fileGraph = FileGraphFactory.get(rootPath);
+        fileGraphOperation = new FileGraphOperation(fileGraph);
+    }
+
+    /**
+     * Get the journal of the repository's migration.
+     * @param rootPath path to the repository
+     * @return journal file
+     */
+    public static File getFile(String rootPath) {
+        return new File(rootPath, Configuration.MIGRATION_FILE_NAME_STRING);
+    }
+
+    /**
+     * Plan the migration. If an interrupted migration left a journal, its remaining steps
+     * are used, otherwise the steps are computed from the file graph.
+     * @return true if a journal was resumed
+     */
+    public boolean plan() {
+        steps.clear();
+        boolean resumed = readJournal();
+        if(!resumed) plan(fileGraph.getRoot());
+        estimate();
+        return resumed;
+    }
+
+    /**
+     * Plan the steps for a subtree, post-order like the structure is reduced.
+     * @param node node
+     * @return number of files in the subtree if it fits into a single folder, -1 otherwise
+     */
+    private int plan(FileGraph.Node node) {
+        if(isErrorFolder(node)) return -1;
+        if(node.leaf) {
+            if(node.depth > 0 && node.depth < 6 && node.fileCount > threshold) {
+                steps.add(new Step(Action.SPLIT, relativePath(node)));
+                return -1;
+            }
+            return node.fileCount;
+        }
+
+        Map<FileGraph.Node, Integer> fitting = new LinkedHashMap<>();
+        int numFiles = node.fileCount;
+        boolean fits = true;
+        for(FileGraph.Node child : node.getChildren()) {
+            int childFiles = plan(child);
+            if(childFiles < 0) {
+                fits = false;
+            } else {
+                fitting.put(child, childFiles);
+                numFiles += childFiles;
+            }
+        }
+        // the parent decides whether the subtree is merged further up
+        if(node.depth > 0 && fits && numFiles <= mergeSize) return numFiles;
+
+        // the topmost subtrees that fit into a single folder are merged
+        for(FileGraph.Node child : fitting.keySet()) {
+            if(!child.leaf) steps.add(new Step(Action.MERGE, relativePath(child)));
+        }
+        // files left in an inner folder, e.g. by an interrupted split, are moved down
+        if(node.depth > 0 && node.fileCount > 0) steps.add(new Step(Action.SPLIT, relativePath(node)));
+        return -1;
+    }
+
+    /**
+     * Estimate the I/O of the planned steps. Files that are split are bucketed by the
+     * datetimes in their leaf's manifest to find out how many folders are created.
+     */
+    private void estimate() {
+        filesToMove = foldersToRename = foldersToCreate = foldersToDelete = 0;
+        bytesToMove = 0;
+        for(Step step : steps) {
+            FileGraph.Node node = fileGraphOperation.getNode(new File(rootPath, step.path));
+            if(node == null) continue;
+            if(step.action == Action.SPLIT) {
+                filesToMove += node.fileCount;
+                if(node.leaf) {
+                    bytesToMove += node.sizeTotal;
+                    foldersToCreate += splitFolders(LeafManifest.load(new File(node.getPath())).dates(), node.depth);
+                }
+            } else {
+                List<FileGraph.Node> folders = new ArrayList<>();
+                collectSubfolders(node, folders);
+                foldersToDelete += folders.size();
+                if(isChain(node)) {
+                    foldersToRename++;
+                    continue;
+                }
+                for(FileGraph.Node n : folders) filesToMove += n.fileCount;
+                bytesToMove += node.sizeTotal;
+            }
+        }
+    }
+
+    /**
+     * Count the folders a split creates.
+     * @param dates datetimes of the files in the folder
+     * @param depth depth of the folder
+     * @return number of new folders
+     */
+    private int splitFolders(List<LocalDateTime> dates, int depth) {
+        if(depth == 6 || dates.size() <= threshold) return 0;
+        Map<Integer, List<LocalDateTime>> buckets = new HashMap<>();
+        for(LocalDateTime ldt : dates) {
+            buckets.computeIfAbsent(DateTools.timeUnit(ldt, depth+1), u -> new ArrayList<>()).add(ldt);
+        }
+        int folders = buckets.size();
+        for(List<LocalDateTime> bucket : buckets.values()) folders += splitFolders(bucket, depth+1);
+        return folders;
+    }
+
+    /**
+     * Check whether a subtree is a chain of folders with a single leaf at the end, which
+     * is merged by renaming the leaf.
+     * @param node inner node
+     * @return true if there are no files above the leaf and each folder has one subfolder
+     */
+    private boolean isChain(FileGraph.Node node) {
+        for(FileGraph.Node n = node; !n.leaf; n = n.getChildren().get(0)) {
+            if(n.getChildCount() != 1 || n.fileCount > 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get a summary of the planned steps and how much I/O they need.
+     * @return report, one line per value
+     */
+    public String report() {
+        int splits = 0;
+        for(Step step : steps) if(step.action == Action.SPLIT) splits++;
+        return String.format("folders to split: %d, folders to merge: %d%n", splits, steps.size()-splits)
+                + String.format("files to move: %d (%.2fMB), folders to rename: %d%n", filesToMove, bytesToMove / 1e6, foldersToRename)
+                + String.format("folders to create: at least %d, folders to delete: %d", foldersToCreate, foldersToDelete);
+    }
+
+    /**
+     * Get the planned steps.
+     * @return steps in the order they're carried out
+     */
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * Carry out the planned steps. The journal is written before the first step and after
+     * each one, and deleted when all steps are done.
+     */
+    public void migrate() {
+        // the snapshot is outdated as soon as the first folder is changed, if the migration
+        // is interrupted the graph is built from the filesystem when it's resumed
+        FileGraphSnapshot.invalidate(rootPath);
+        stepsDone = 0;
+        writeJournal(0);
+        for(int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            if(step.action == Action.SPLIT) split(new File(rootPath, step.path));
+            else merge(new File(rootPath, step.path));
+            fileGraphOperation.saveManifests();
+            writeJournal(i+1);
+            stepsDone++;
+            notifyObservers();
+        }
+        getFile(rootPath).delete();
+        steps.clear();
+        FileGraphSnapshot.save(fileGraph);
+    }
+
+    /**
+     * Split a folder. A leaf is reorganized at once, an inner folder that still has files
+     * moves them into its subfolders.
+     * @param folder folder to split
+     */
+    private void split(File folder) {
+        FileGraph.Node node = fileGraphOperation.getNode(folder);
+        if(node == null) return;
+        if(node.leaf) {
+            fileGraphOperation.reorganize(node, threshold);
+            return;
+        }
+        File[] files = folder.listFiles((d, n) -> !Configuration.isRepositoryFile(n));
+        if(files == null) return;
+        ICopy moveReplace = new MoveReplace();
+        for(File file : files) {
+            if(!file.isFile()) continue;
+            if(fileGraphOperation.copyFile(moveReplace, file, fileGraphOperation.getDate(file)) == null) {
+                System.err.println("error during migrating: " + file.getAbsolutePath());
+            }
+        }
+        node.fileCount = 0;
+        LeafManifest.delete(folder);
+    }
+
+    /**
+     * Merge the subfolders of a folder into it. A collapse that was interrupted between
+     * its renames is finished first.
+     * @param folder folder to merge
+     */
+    private void merge(File folder) {
+        File collapsed = FileGraphOperation.collapseFolder(folder);
+        if(collapsed.isDirectory()) {
+            FileGraph.Node parent = fileGraphOperation.getNode(folder.getParentFile());
+            // the folders left above the leaf are empty
+            if(folder.exists()) deleteEmptyFolders(folder);
+            if(folder.exists() || !collapsed.renameTo(folder)) {
+                System.err.println("could not finish collapsing: " + folder.getAbsolutePath());
+                return;
+            }
+            if(parent != null) fileGraph.update(parent);
+        }
+        FileGraph.Node node = fileGraphOperation.getNode(folder);
+        if(node != null) fileGraphOperation.mergeSubtree(node);
+    }
+
+    /**
+     * Delete a folder if it contains nothing but empty folders and repository files.
+     * @param folder folder
+     */
+    private void deleteEmptyFolders(File folder) {
+        File[] entries = folder.listFiles();
+        if(entries == null) return;
+        for(File entry : entries) {
+            if(entry.isDirectory()) deleteEmptyFolders(entry);
+            else if(Configuration.isRepositoryFile(entry.getName())) entry.delete();
+        }
+        folder.delete();
+    }
+
+    /**
+     * Write the remaining steps to the journal. It's written into a temporary file first,
+     * which then replaces the old journal. The first line holds the folder sizes, every
+     * other line is "action TAB path".
+     * @param next index of the next step
+     */
+    private void writeJournal(int next) {
+        List<String> lines = new ArrayList<>();
+        lines.add(threshold + "\t" + mergeSize);
+        for(int i = next; i < steps.size(); i++) {
+            lines.add(steps.get(i).action + "\t" + steps.get(i).path);
+        }
+        Path journal = getFile(rootPath).toPath();
+        Path tmp = journal.resolveSibling(Configuration.MIGRATION_FILE_NAME_STRING + ".tmp");
+        try {
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING);
+        } catch(IOException ioe) {
+            System.err.println("could not write the migration journal: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Read the remaining steps of an interrupted migration. The journal is only used if it
+     * was written for the current folder sizes, otherwise it's deleted.
+     * @return true if the steps were read from the journal
+     */
+    private boolean readJournal() {
+        File journal = getFile(rootPath);
+        if(!journal.isFile()) return false;
+        try {
+            List<String> lines = Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8);
+            if(!lines.isEmpty() && lines.get(0).equals(threshold + "\t" + mergeSize)) {
+                for(String line : lines.subList(1, lines.size())) {
+                    int idx = line.indexOf('\t');
+                    if(idx == -1) continue;
+                    steps.add(new Step(Action.valueOf(line.substring(0, idx)), line.substring(idx+1)));
+                }
+                return true;
+            }
+        } catch(IOException | IllegalArgumentException e) {
+            steps.clear();
+        }
+        journal.delete();
+        return false;
+    }
+
+    /**
+     * Get the path of a folder relative to the repository's root.
+     * @param node node of the folder
+     * @return relative path
+     */
+    private String relativePath(FileGraph.Node node) {
+        return Path.of(rootPath).relativize(Path.of(node.getPath())).toString();
+    }
+
+    /**
+     * Collect all folders below a node.
+     * @param node node
+     * @param folders list the folders are added to
+     */
+    private void collectSubfolders(FileGraph.Node node, List<FileGraph.Node> folders) {
+        for(FileGraph.Node child : node.getChildren()) {
+            folders.add(child);
+            collectSubfolders(child, folders);
+        }
+    }
+
+    /**
+     * Check whether the node is the error folder in the repository's root.
+     * @param node node
+     * @return true if it's the error folder
+     */
+    private boolean isErrorFolder(FileGraph.Node node) {
+        return node.depth == 1 && node.getName().equals(Configuration.ERROR_FOLDER_NAME);
+    }
+
+    /**
+     * Register an observer
+     * @param o
+     */
+    @Override
+    public void register(Observer o) {
+        obs.add(o);
+    }
+
+    /**
+     * Unregister an observer
+     * @param o
+     */
+    @Override
+    public void unregister(Observer o) {
+        obs.remove(o);
+    }
+
+    /**
+     * Notify all observers
+     */
+    @Override
+    public void notifyObservers() {
+        for(Observer ob : obs) ob.update();
+    }
+
+    /**
+     * Get the number of steps carried out.
+     * @return number of steps
+     */
+    @Override
+    public Integer getState() {
+        return stepsDone;
+    }
+}
@@ -1,15 +1,17 @@
 package com.org.util.graph;
 
 import com.org.parser.Configuration;
-import com.org.util.time.DateIterator;
+import com.org.util.FileWalker;
+import com.org.util.time.DateTools;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Class that keeps a minimal model of the directory structure to a root path. Information
@@ -20,11 +22,25 @@ import java.util.Set;
  */
 public class FileGraph {
     /**
-     * Node class for the graph structure. Each node stores one absolute path to a folder.
+     * Node class for the graph structure. Each node represents one folder. The nodes form
+     * a trie of the time units: the children of a node are sorted by the integer value of
+     * their time unit (year, month 0-11, day of month, hour, minute, second), so the child
+     * for a datetime is found with a binary search without building any strings. Folder
+     * names and paths are not stored, they are built from the parent and the time unit when
+     * they're needed. Only folders whose name isn't the correct time unit, e.g. the error
+     * folder or invalid folders, store their name.
      */
     public static class Node {
-        // absoulte path to the folder
-        public String path;
+        // value of modified if the folder has to be read again on the next refresh
+        public static final long UNKNOWN = -1;
+        // shared children array of nodes without children
+        private static final Node[] NO_CHILDREN = new Node[0];
+        // parent node, null for the root
+        private Node parent;
+        // value of the folder's time unit, NO_UNIT if the folder's name isn't the time unit
+        private int unit = DateTools.NO_UNIT;
+        // the folder's name if it isn't built from the time unit, absolute path for the root
+        private String name;
         // number of direct files (not directories)
         public int fileCount = 0;
         // total number of files in this folder and all subfolders
@@ -35,18 +51,244 @@ public class FileGraph {
         public int depth;
         // boolean value indicating if the node is a leaf node or not
         public boolean leaf = true;
-        // map of all children/subfolders, maps the absolute path to the child
-        // folder to its node
-        public Map<String, Node> children = new HashMap<>();
+        // last modified time of the folder when it was read, UNKNOWN if it needs to be read again
+        public long modified = UNKNOWN;
+        // number of entries (files and folders) in the folder when it was read
+        public int entryCount = 0;
+        // children sorted by their time unit, children without a time unit are at the front
+        private Node[] children = NO_CHILDREN;
+        // number of children in the array
+        private int childCount = 0;
 
         /**
-         * Node constructor
-         * @param path absolute path to the folder
-         * @param depth depth of the node inside the whole graph
+         * Root node constructor
+         * @param rootPath absolute path to the root folder
          */
-        public Node(String path, int depth) {
-            this.path = path;
-            this.depth = depth;
+        Node(String rootPath) {
+            this.name = rootPath;
+            this.depth = 0;
+        }
+
+        /**
+         * Child node constructor
+         * @param parent parent node
+         */
+        private Node(Node parent) {
+            this.parent = parent;
+            this.depth = parent.depth+1;
+        }
+
+        /**
+         * Get the parent node.
+         * @return parent node, null for the root
+         */
+        public Node getParent() {
+            return parent;
+        }
+
+        /**
+         * Get the folder's name, the root's name is empty.
+         * @return folder name
+         */
+        public String getName() {
+            if(parent == null) return "";
+            return appendName(new StringBuilder()).toString();
+        }
+
+        /**
+         * Get the absolute path to the folder.
+         * @return path as string
+         */
+        public String getPath() {
+            return appendPath(new StringBuilder()).toString();
+        }
+
+        /**
+         * Append the folder's name to the string builder. Names of time unit folders contain
+         * the time units of their parents, e.g. 2023_märz_21.
+         * @param builder string builder
+         * @return the string builder
+         */
+        private StringBuilder appendName(StringBuilder builder) {
+            if(name != null) return builder.append(name);
+            if(depth > 1) parent.appendName(builder).append('_');
+            return builder.append(DateTools.unitName(depth, unit));
+        }
+
+        /**
+         * Append the folder's absolute path to the string builder.
+         * @param builder string builder
+         * @return the string builder
+         */
+        private StringBuilder appendPath(StringBuilder builder) {
+            if(parent == null) return builder.append(name);
+            parent.appendPath(builder).append(File.separator);
+            return appendName(builder);
+        }
+
+        /**
+         * Set the folder's name. If the name is the correct time unit folder name below the
+         * parent, only the time unit is stored.
+         * @param folderName folder name
+         */
+        private void setName(String folderName) {
+            String prefix = depth == 1 ? "" : parent.getName() + "_";
+            unit = folderName.startsWith(prefix) ? DateTools.parseUnit(depth, folderName.substring(prefix.length())) : DateTools.NO_UNIT;
+            name = unit == DateTools.NO_UNIT ? folderName : null;
+        }
+
+        /**
+         * Get a list with all children. Changing the list doesn't change the node.
+         * @return list of children
+         */
+        public List<Node> getChildren() {
+            return new ArrayList<>(Arrays.asList(children).subList(0, childCount));
+        }
+
+        /**
+         * Check whether the node has any children.
+         * @return true if there are children
+         */
+        public boolean hasChildren() {
+            return childCount != 0;
+        }
+
+        /**
+         * Get the number of children.
+         * @return number of children
+         */
+        public int getChildCount() {
+            return childCount;
+        }
+
+        /**
+         * Get the child for the time unit.
+         * @param unit value of the time unit
+         * @return child node, null if it doesn't exist
+         */
+        public Node getChild(int unit) {
+            int idx = indexOf(unit);
+            return idx >= 0 ? children[idx] : null;
+        }
+
+        /**
+         * Get the child with the folder name.
+         * @param folderName the child folder's name
+         * @return child node, null if it doesn't exist
+         */
+        public Node getChild(String folderName) {
+            String prefix = depth == 0 ? "" : getName() + "_";
+            if(folderName.startsWith(prefix)) {
+                int childUnit = DateTools.parseUnit(depth+1, folderName.substring(prefix.length()));
+                if(childUnit != DateTools.NO_UNIT) return getChild(childUnit);
+            }
+            // folders without a time unit are at the front
+            for(int i = 0; i < childCount && children[i].unit == DateTools.NO_UNIT; i++) {
+                if(children[i].name.equals(folderName)) return children[i];
+            }
+            return null;
+        }
+
+        /**
+         * Add a child for the time unit. If it already exists, the existing child is returned.
+         * @param unit value of the time unit
+         * @return the child node
+         */
+        public Node addChild(int unit) {
+            Node child = getChild(unit);
+            if(child != null) return child;
+            child = new Node(this);
+            child.unit = unit;
+            insert(child);
+            return child;
+        }
+
+        /**
+         * Add a child with the folder name. If it already exists, the existing child is returned.
+         * @param folderName the child folder's name
+         * @return the child node
+         */
+        public Node addChild(String folderName) {
+            Node child = getChild(folderName);
+            if(child != null) return child;
+            child = new Node(this);
+            child.setName(folderName);
+            insert(child);
+            return child;
+        }
+
+        /**
+         * Remove the child from the node. The child keeps its parent reference, so its path
+         * can still be built.
+         * @param child child node
+         */
+        public void removeChild(Node child) {
+            for(int i = 0; i < childCount; i++) {
+                if(children[i] != child) continue;
+                System.arraycopy(children, i+1, children, i, childCount-i-1);
+                children[--childCount] = null;
+                return;
+            }
+        }
+
+        /**
+         * Remove all children.
+         */
+        public void clearChildren() {
+            children = NO_CHILDREN;
+            childCount = 0;
+        }
+
+        /**
+         * Change the name of the folder after it was renamed in the filesystem. The names of
+         * the subfolders don't change.
+         * @param folderName new folder name
+         */
+        public void rename(String folderName) {
+            if(parent == null) throw new IllegalStateException("the root can't be renamed");
+            // the children's names are built from this name, so keep them first
+            Node[] oldChildren = Arrays.copyOf(children, childCount);
+            String[] childNames = new String[childCount];
+            for(int i = 0; i < childCount; i++) childNames[i] = oldChildren[i].getName();
+
+            parent.removeChild(this);
+            setName(folderName);
+            parent.insert(this);
+
+            clearChildren();
+            for(int i = 0; i < oldChildren.length; i++) {
+                oldChildren[i].setName(childNames[i]);
+                insert(oldChildren[i]);
+            }
+        }
+
+        /**
+         * Binary search for the child with the time unit.
+         * @param unit value of the time unit
+         * @return index of the child, or (-(insertion point) - 1) if it doesn't exist
+         */
+        private int indexOf(int unit) {
+            int low = 0, high = childCount-1;
+            while(low <= high) {
+                int mid = (low+high) >>> 1;
+                int midUnit = children[mid].unit;
+                if(midUnit < unit) low = mid+1;
+                else if(midUnit > unit) high = mid-1;
+                else return mid;
+            }
+            return -(low+1);
+        }
+
+        /**
+         * Insert the child at its sorted position.
+         * @param child child node
+         */
+        private void insert(Node child) {
+            int idx = child.unit == DateTools.NO_UNIT ? 0 : -(indexOf(child.unit)+1);
+            if(childCount == children.length) children = Arrays.copyOf(children, Math.max(2, childCount*2));
+            System.arraycopy(children, idx, children, idx+1, childCount-idx);
+            children[idx] = child;
+            childCount++;
         }
 
         /**
@@ -55,10 +297,13 @@ public class FileGraph {
          */
         @Override
         public String toString() {
-            return String.format("%s, files: %d, filesTotal: %d, size: %d, leaf: %b", path, fileCount, fileCountSubTree, sizeTotal, leaf);
+            return String.format("%s, files: %d, filesTotal: %d, size: %d, leaf: %b", getPath(), fileCount, fileCountSubTree, sizeTotal, leaf);
         }
     }
 
+    // folders modified less than this many milliseconds before they were read are read
+    // again on the next refresh, because a change in the same time stamp tick can't be seen
+    private static final long RACY_INTERVAL = 2000;
     // reference to the root node
     Node root;
 
@@ -67,59 +312,259 @@ public class FileGraph {
      * @param rootStr string path to the root folder
      */
     public FileGraph(String rootStr) {
-        root = new Node(Path.of(rootStr).toAbsolutePath().toString(), 0);
+        root = new Node(Path.of(rootStr).toAbsolutePath().toString());
         update(root);
     }
 
+    /**
+     * FileGraph constructor for a graph that has already been built, e.g. read from a
+     * snapshot. The filesystem is not accessed.
+     * @param root root node
+     */
+    FileGraph(Node root) {
+        this.root = root;
+    }
+
     /**
      * Update the file graph starting at the given node and its subtree. This function
-     * accesses the folders associated to the nodes and updates file count and other
-     * fields. After the recursive function finishes, the model of the files are
-     * identical to the filesystem.
+     * walks through the folders associated to the nodes and updates file count and other
+     * fields. After the walk finishes, the model of the files are identical to the
+     * filesystem.
      * @param node
      */
     public void update(Node node) {
-        File file = new File(node.path);
+        File file = new File(node.getPath());
         // the file must exist and be a directory
         if(!file.exists() || !file.isDirectory()) {
-            node.children.clear();
+            node.clearChildren();
             return;
         }
-        // prepare field values
+
+        // the folders that are currently walked through, the innermost folder is on top
+        Deque<UpdateFrame> stack = new ArrayDeque<>();
+        new FileWalker().walk(file.toPath(), new FileWalker.Visitor() {
+            @Override
+            public void preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if(stack.isEmpty()) {
+                    stack.push(new UpdateFrame(node, attrs));
+                    return;
+                }
+                UpdateFrame parent = stack.peek();
+                parent.entryCount++;
+                // if the child folder doesn't exist yet, create a new entry for the child
+                Node nextNode = parent.node.addChild(dir.getFileName().toString());
+                // mark the child as not to be removed
+                parent.toRemove.remove(nextNode);
+                stack.push(new UpdateFrame(nextNode, attrs));
+            }
+
+            @Override
+            public void visitFile(Path path, BasicFileAttributes attrs) {
+                UpdateFrame frame = stack.peek();
+                frame.entryCount++;
+                // skip the hidden configuration file and the snapshot
+                if(Configuration.isRepositoryFile(path.getFileName().toString())) return;
+                // increment the file count and add to the total size
+                frame.fileCount++;
+                frame.size += attrs.size();
+            }
+
+            @Override
+            public void postVisitDirectory(Path dir) {
+                UpdateFrame frame = stack.pop();
+                Node done = frame.node;
+                // all nodes whose folders don't exist in the filesystem anymore, need to be removed
+                for(Node rm : frame.toRemove) done.removeChild(rm);
+                // update the node's fields with the new values
+                done.fileCount = frame.fileCount;
+                done.leaf = !done.hasChildren();
+                done.fileCountSubTree = frame.fileCountSubTree + frame.fileCount;
+                done.sizeTotal = frame.size;
+                done.modified = frame.modified;
+                done.entryCount = frame.entryCount;
+                // add the folder's totals to its parent
+                UpdateFrame parent = stack.peek();
+                if(parent != null) {
+                    parent.fileCountSubTree += done.fileCountSubTree;
+                    parent.size += done.sizeTotal;
+                }
+            }
+        });
+    }
+
+    /**
+     * Stores the values that are summed up for a node while its folder is walked through.
+     */
+    private static class UpdateFrame {
+        // the node of the folder
+        Node node;
+        // number of direct files
         int fileCount = 0;
+        // number of files in all subfolders
         int fileCountSubTree = 0;
+        // total size of the files in bytes
         long size = 0;
+        // number of entries in the folder
+        int entryCount = 0;
+        // last modified time of the folder before it was read
+        long modified;
         // store nodes that don't exist anymore, because the folder is gone
-        Set<String> toRemove = new HashSet<>(node.children.keySet());
+        Set<Node> toRemove;
 
-        for(File child : file.listFiles()) {
-            if(child.isFile()) {
-                // skip the hidden configuration file
-                if(child.isHidden() && child.getName().equals(Configuration.PROPERTY_FILE_NAME_STRING)) continue;
-                // increment the file count and add to the total size
-                fileCount++;
-                size += child.length();
-            } else {
-                // if the child folder doesn't exist yet, create a new entry for the child
-                String nextStr = child.getAbsolutePath();
-                if(!node.children.containsKey(nextStr)) node.children.put(nextStr, new Node(nextStr, node.depth+1));
-                Node nextNode = node.children.get(nextStr);
-                // mark the child path as not to be removed
-                toRemove.remove(nextStr);
-                update(nextNode);
-                // if the child is a folder, add to its subtree total count
-                fileCountSubTree += nextNode.fileCountSubTree;
-                size += nextNode.sizeTotal;
+        /**
+         * UpdateFrame constructor
+         * @param node the node of the folder
+         * @param attrs the folder's attributes read before its entries
+         */
+        UpdateFrame(Node node, BasicFileAttributes attrs) {
+            this.node = node;
+            modified = modifiedTime(attrs);
+            toRemove = new HashSet<>(node.getChildren());
+        }
+    }
+
+    /**
+     * Refresh the whole file graph, see refreshChanged(Node).
+     */
+    public void refreshChanged() {
+        refreshChanged(root);
+    }
+
+    /**
+     * Refresh the file graph starting at the given node without reading every folder.
+     * Adding, removing or renaming an entry changes the last modified time of its folder,
+     * but not of the folders above it. So the time of every folder in the subtree is read,
+     * which is a single attribute access per folder. Only folders whose time changed since
+     * they were read the last time are listed again, and new folders are read completely.
+     * Afterwards the model matches the filesystem like after update(node), except for sizes
+     * of files that were changed in place, as this doesn't change the folder's time.
+     * @param node start node of the refresh
+     */
+    public void refreshChanged(Node node) {
+        // the nodes to check and their parents, the start node's parent doesn't matter
+        Deque<Node> stack = new ArrayDeque<>(), parents = new ArrayDeque<>();
+        stack.push(node);
+        parents.push(node);
+        while(!stack.isEmpty()) {
+            Node next = stack.pop(), parent = parents.pop();
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(Path.of(next.getPath()), BasicFileAttributes.class);
+            } catch(IOException ioe) {
+                attrs = null;
+            }
+
+            // the folder doesn't exist anymore
+            if(attrs == null || !attrs.isDirectory()) {
+                if(next == node) update(next);
+                else parent.removeChild(next);
+                continue;
+            }
+            // only list the folder again if its entries changed since it was read
+            List<Node> newChildren = List.of();
+            if(next.modified == Node.UNKNOWN || next.modified != attrs.lastModifiedTime().toMillis()) {
+                newChildren = readFolder(next, attrs);
+                if(newChildren == null) continue;
+            }
+            for(Node child : next.getChildren()) {
+                // new folders have just been read completely
+                if(newChildren.contains(child)) continue;
+                stack.push(child);
+                parents.push(next);
             }
         }
+        updateTotals();
+    }
 
-        // all nodes whose folders don't exist in the filesystem anymore, need to be removed
-        for(String rm : toRemove) node.children.remove(rm);
-        // update the node's fields with the new values
+    /**
+     * Read the direct entries of a single folder and update the node. Subfolders that are
+     * new are read completely with update(), the others are left as they are.
+     * @param node the folder's node
+     * @param attrs the folder's attributes read before its entries
+     * @return list of the new child nodes, null if the folder couldn't be read
+     */
+    private List<Node> readFolder(Node node, BasicFileAttributes attrs) {
+        int fileCount = 0, entryCount = 0;
+        long size = 0;
+        Set<Node> toRemove = new HashSet<>(node.getChildren());
+        List<String> newFolders = new ArrayList<>();
+
+        try(DirectoryStream<Path> entries = Files.newDirectoryStream(Path.of(node.getPath()))) {
+            for(Path entry : entries) {
+                BasicFileAttributes entryAttrs;
+                try {
+                    entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch(IOException ioe) {
+                    continue;
+                }
+                entryCount++;
+                if(entryAttrs.isDirectory()) {
+                    String folderName = entry.getFileName().toString();
+                    Node child = node.getChild(folderName);
+                    if(child == null) newFolders.add(folderName);
+                    else toRemove.remove(child);
+                } else if(!Configuration.isRepositoryFile(entry.getFileName().toString())) {
+                    fileCount++;
+                    size += entryAttrs.size();
+                }
+            }
+        } catch(IOException ioe) {
+            return null;
+        }
+
+        for(Node rm : toRemove) node.removeChild(rm);
+        List<Node> newChildren = new ArrayList<>();
+        for(String folderName : newFolders) {
+            Node child = node.addChild(folderName);
+            update(child);
+            newChildren.add(child);
+        }
         node.fileCount = fileCount;
-        node.leaf = node.children.isEmpty();
-        node.fileCountSubTree = fileCountSubTree + fileCount;
         node.sizeTotal = size;
+        node.entryCount = entryCount;
+        node.modified = modifiedTime(attrs);
+        node.leaf = !node.hasChildren();
+        return newChildren;
+    }
+
+    /**
+     * Get the folder's last modified time that is stored in the node. If the folder was
+     * modified just now, further changes could have the same time stamp, so it's stored
+     * as unknown.
+     * @param attrs the folder's attributes
+     * @return modified time in milliseconds or UNKNOWN
+     */
+    private static long modifiedTime(BasicFileAttributes attrs) {
+        long modified = attrs.lastModifiedTime().toMillis();
+        return System.currentTimeMillis() - modified < RACY_INTERVAL ? Node.UNKNOWN : modified;
+    }
+
+    /**
+     * Recalculate the number of files in the subtree and the total size of all inner
+     * nodes from their children. Copying files only updates the leaf the file is copied
+     * to, so this function needs to be called before the totals are used.
+     */
+    public void updateTotals() {
+        // post-order traversal, a node is finished after all of its children
+        Deque<Node> stack = new ArrayDeque<>(), done = new ArrayDeque<>();
+        stack.push(root);
+        while(!stack.isEmpty()) {
+            Node node = stack.pop();
+            done.push(node);
+            for(Node child : node.getChildren()) stack.push(child);
+        }
+        while(!done.isEmpty()) {
+            Node node = done.pop();
+            node.fileCountSubTree = node.fileCount;
+            if(!node.hasChildren()) continue;
+            long size = 0;
+            for(Node child : node.getChildren()) {
+                node.fileCountSubTree += child.fileCountSubTree;
+                size += child.sizeTotal;
+            }
+            // files directly in an inner folder are an inconsistency, their size is unknown
+            node.sizeTotal = node.fileCount == 0 ? size : Math.max(node.sizeTotal, size);
+        }
     }
 
     /**
@@ -139,7 +584,7 @@ public class FileGraph {
      */
     private void printFileStructure(Node node, int depth) {
         System.out.println("\t".repeat(depth) + node);
-        for(Node child : node.children.values()) {
+        for(Node child : node.getChildren()) {
             printFileStructure(child, depth+1);
         }
     }
@@ -161,32 +606,20 @@ public class FileGraph {
      * @return the leaf node
      */
     public Node getNode(LocalDateTime dateTime) {
-        DateIterator it = new DateIterator(dateTime);
         Node node = root;
-        // stores the current absolute path as string
-        StringBuilder path = new StringBuilder(root.path);
-        // stores the current folder name as string
-        StringBuilder folderName = new StringBuilder();
-        boolean first = true;
 
         // iterate through the tree starting from the root and stop if a leaf node is reached
-        while(it.hasNext()) {
-            if(first) first = false;
-            else folderName.append("_");
-            folderName.append(it.next());
-            path.append(File.separator).append(folderName);
-            // reached the end if the folder is not in the children map of the node
-            if(!node.children.containsKey(path.toString())) {
-                if(!node.leaf) {
-                    // if the node is not a leaf node but an inner node, the correct subfolder
-                    // was not yet created because it wasn't needed. A new node will be created
-                    Node next = new Node(path.toString(), node.depth+1);
-                    node.children.put(next.path, next);
-                    node = next;
-                }
+        for(int depth = 1; depth <= 6; depth++) {
+            int unit = DateTools.timeUnit(dateTime, depth);
+            Node next = node.getChild(unit);
+            // reached the end if the folder is not in the children of the node
+            if(next == null) {
+                // if the node is not a leaf node but an inner node, the correct subfolder
+                // was not yet created because it wasn't needed. A new node will be created
+                if(!node.leaf) node = node.addChild(unit);
                 break;
             }
-            node = node.children.get(path.toString());
+            node = next;
         }
 
         return node;
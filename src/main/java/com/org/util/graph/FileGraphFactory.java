@@ -13,12 +13,19 @@ public class FileGraphFactory {
 
     /**
      * Get the file graph created for the given string path. If it doesn't exist yet,
-     * create a new one.
+     * read it from the repository's snapshot and refresh the folders that changed since
+     * the snapshot was written. Only if there is no valid snapshot, a new one is built by
+     * walking through the repository.
      * @param path
      * @return
      */
     public static FileGraph get(String path) {
-        if(!fileGraphMap.containsKey(path)) fileGraphMap.put(path, new FileGraph(path));
+        if(!fileGraphMap.containsKey(path)) {
+            FileGraph fileGraph = FileGraphSnapshot.load(path);
+            if(fileGraph != null) fileGraph.refreshChanged();
+            else fileGraph = new FileGraph(path);
+            fileGraphMap.put(path, fileGraph);
+        }
         return fileGraphMap.get(path);
     }
 }
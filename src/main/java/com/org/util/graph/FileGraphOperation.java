@@ -6,11 +6,16 @@ import com.org.organizer.copy.MoveReplace;
 import com.org.parser.Configuration;
 import com.org.util.FileTools;
 import com.org.util.time.DateExtractor;
+import com.org.util.time.DatedFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -24,6 +29,8 @@ public class FileGraphOperation {
     private FileGraph fileGraph;
     // string path to the error folder
     private String errorFolderPath;
+    // manifests of the leaves that were read or changed, written by saveManifests()
+    private final Map<FileGraph.Node, LeafManifest> manifests = new HashMap<>();
 
     /**
      * FileGraphOperation constructor. The constructor will create the error folder
@@ -32,13 +39,21 @@ public class FileGraphOperation {
      */
     public FileGraphOperation(FileGraph fileGraph) {
         this.fileGraph = fileGraph;
-        errorFolderPath = fileGraph.getRoot().path + File.separator + Configuration.ERROR_FOLDER_NAME;
+        errorFolderPath = fileGraph.getRoot().getPath() + File.separator + Configuration.ERROR_FOLDER_NAME;
         File errorFolder = new File(errorFolderPath);
         if(!errorFolder.exists()) {
             addFolder(fileGraph.getRoot(), Configuration.ERROR_FOLDER_NAME);
         }
     }
 
+    /**
+     * Get the file graph the operations are executed on.
+     * @return file graph
+     */
+    public FileGraph getFileGraph() {
+        return fileGraph;
+    }
+
     // TODO update numFilesSubTree and sizeTotal
     /**
      * Copy a file into the file graph using the file graph's datetime functionality.
@@ -50,16 +65,33 @@ public class FileGraphOperation {
      */
     public FileGraph.Node copyFile(ICopy op, File file) {
         if(!file.exists()) return null;
-        // skipt the hidden config file
-        if(file.isHidden() && file.getName().equals(Configuration.PROPERTY_FILE_NAME_STRING)) return null;
+        // skip the hidden config file and the snapshot
+        if(file.isHidden() && Configuration.isRepositoryFile(file.getName())) return null;
         // get the correct node and folder to save it to
-        LocalDateTime dateTime = DateExtractor.getDate(file);
+        return copyFile(op, file, getDate(file));
+    }
+
+    /**
+     * Copy a file into the file graph with a datetime that has already been extracted,
+     * e.g. by a worker thread. The file is placed exactly like copyFile(op, file) would
+     * place it. A null datetime sends the file to the error folder.
+     * @param op file operation, copy/move
+     * @param file file that needs to be copied/moved
+     * @param dateTime the file's datetime, can be null
+     * @return the node the file was copied to, null if nothing was added
+     */
+    public FileGraph.Node copyFile(ICopy op, File file, LocalDateTime dateTime) {
+        if(!file.exists()) return null;
+        // skip the hidden config file and the snapshot
+        if(file.isHidden() && Configuration.isRepositoryFile(file.getName())) return null;
         FileGraph.Node node = getDirectory(dateTime);
         // duplicates can exist, so choose either a new name or ignore/replace the file
-        String fileName = FileTools.chooseFileName(node.path, file.getName(), dateTime);
+        String fileName = FileTools.chooseFileName(node.getPath(), file.getName(), file, dateTime, this::getDate);
         // if source and destination are the same, don't need to do anything
-        Path from = file.toPath(), to = Path.of(node.path, fileName);
+        Path from = file.toPath(), to = Path.of(node.getPath(), fileName);
         if(from.equals(to)) return null;
+        // folder the file is moved out of, null if it's not in the repository
+        FileGraph.Node source = getNode(file.getAbsoluteFile().getParentFile());
 
         boolean duplicate = to.toFile().exists();
         try {
@@ -69,6 +101,9 @@ public class FileGraphOperation {
         } catch(IOException ioe) {
             return null;
         }
+        // keep the manifests of both folders up to date
+        if(source != null && !file.exists()) manifest(source).remove(file.getName());
+        if(dateTime != null) manifest(node).put(fileName, to.toFile().length(), dateTime);
         // if the file was a duplicate then it was ignored or replaced, the file count doesn't change
         if(!duplicate) {
             updateNode(node, file);
@@ -89,6 +124,177 @@ public class FileGraphOperation {
         node.sizeTotal += file.length();
     }
 
+    /**
+     * Move the files of a source directory into their leaves in batches. The files of each
+     * leaf are moved together if the leaf can take all of them without exceeding the
+     * threshold and none of their names is used in the leaf yet. Then no names need to be
+     * chosen, the files aren't marked, because the leaf's manifest stores their datetimes,
+     * and the node is updated once. If all files go into a leaf whose folder doesn't exist
+     * yet and the directory contains nothing else, the directory is renamed to the leaf's
+     * folder and an empty directory is left behind, like moving the files would. The source
+     * given by the user and symbolic links to directories are never renamed, their files
+     * are moved one by one.
+     * @param op move operation
+     * @param source the source given by the user
+     * @param directory source directory outside the repository
+     * @param files files of the directory with their datetime
+     * @param threshold folder size threshold
+     * @return the files that weren't moved and need to be added one by one, e.g. files
+     * without a datetime or whose names are already used
+     */
+    public List<DatedFile> moveDirectory(ICopy op, File source, File directory, List<DatedFile> files, int threshold) {
+        List<DatedFile> outliers = new ArrayList<>();
+        if(!op.isMove() || getNode(directory.getAbsoluteFile()) != null) return new ArrayList<>(files);
+        // group the files by their leaf
+        Map<FileGraph.Node, List<DatedFile>> leaves = new LinkedHashMap<>();
+        for(DatedFile datedFile : files) {
+            if(datedFile.dateTime == null || Configuration.isRepositoryFile(datedFile.file.getName())) outliers.add(datedFile);
+            else leaves.computeIfAbsent(fileGraph.getNode(datedFile.dateTime), n -> new ArrayList<>()).add(datedFile);
+        }
+
+        for(Map.Entry<FileGraph.Node, List<DatedFile>> e : leaves.entrySet()) {
+            FileGraph.Node node = e.getKey();
+            List<DatedFile> leafFiles = e.getValue();
+            if(node.fileCount + leafFiles.size() > threshold) {
+                outliers.addAll(leafFiles);
+                continue;
+            }
+            File folder = new File(node.getPath());
+            String[] existing = folder.list();
+            Set<String> used = existing == null ? new HashSet<>() : new HashSet<>(Arrays.asList(existing));
+            List<DatedFile> batch = new ArrayList<>();
+            for(DatedFile datedFile : leafFiles) {
+                // files with names that are already used could be duplicates
+                if(used.add(datedFile.file.getName())) batch.add(datedFile);
+                else outliers.add(datedFile);
+            }
+
+            boolean renamed = outliers.isEmpty() && leaves.size() == 1 && (existing == null || existing.length == 0)
+                    && !Files.isSymbolicLink(directory.toPath()) && source != null && !samePath(directory, source)
+                    && renameDirectory(directory, folder, batch.size());
+            if(!renamed) folder.mkdirs();
+            LeafManifest manifest = manifest(node);
+            int moved = 0;
+            long size = 0;
+            for(DatedFile datedFile : batch) {
+                File file = datedFile.file;
+                Path to = folder.toPath().resolve(file.getName());
+                long fileSize = renamed ? to.toFile().length() : file.length();
+                if(!renamed) {
+                    try {
+                        op.execute(file.toPath(), to);
+                    } catch(IOException ioe) {
+                        outliers.add(datedFile);
+                        continue;
+                    }
+                }
+                manifest.put(file.getName(), fileSize, datedFile.dateTime);
+                moved++;
+                size += fileSize;
+            }
+            // the node is updated once for all files
+            node.fileCount += moved;
+            node.sizeTotal += size;
+        }
+
+        return outliers;
+    }
+
+    /**
+     * Rename a source directory to a leaf's folder, which must not exist or be empty.
+     * Only works on the same filesystem.
+     * @param directory source directory
+     * @param folder the leaf's folder
+     * @param fileCount number of files the directory has to contain, nothing else
+     * @return true if the directory was renamed
+     */
+    private boolean renameDirectory(File directory, File folder, int fileCount) {
+        String[] entries = directory.list();
+        if(entries == null || entries.length != fileCount) return false;
+        Set<PosixFilePermission> permissions = null;
+        try {
+            permissions = Files.getPosixFilePermissions(directory.toPath());
+        } catch(UnsupportedOperationException | IOException e) {
+            // the empty directory gets the default permissions
+        }
+        folder.getParentFile().mkdirs();
+        if(folder.exists() && !folder.delete()) return false;
+        try {
+            Files.move(directory.toPath(), folder.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException ioe) {
+            return false;
+        }
+        // moving the files one by one would leave the empty directory
+        try {
+            Files.createDirectory(directory.toPath());
+            if(permissions != null) Files.setPosixFilePermissions(directory.toPath(), permissions);
+        } catch(IOException ioe) {
+            System.err.println("couldn't recreate the source directory " + directory.getPath() + ": " + ioe.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Check whether two files have the same absolute, normalized path.
+     * @param a first file
+     * @param b second file
+     * @return true if both paths are the same
+     */
+    private static boolean samePath(File a, File b) {
+        return a.toPath().toAbsolutePath().normalize().equals(b.toPath().toAbsolutePath().normalize());
+    }
+
+    /**
+     * Get the datetime of a file. Files in the repository are looked up in their leaf's
+     * manifest first. If the file isn't listed or its size changed, it's read by the
+     * DateExtractor and the manifest is updated.
+     * @param file file object
+     * @return the file's datetime, null if it has none
+     */
+    public LocalDateTime getDate(File file) {
+        FileGraph.Node node = getNode(file.getAbsoluteFile().getParentFile());
+        if(node == null || isErrorFolder(node)) return DateExtractor.getDate(file);
+        LeafManifest manifest = manifest(node);
+        long size = file.length();
+        LocalDateTime ldt = DateExtractor.isIgnoreMark() ? null : manifest.getDate(file.getName(), size);
+        if(ldt == null) {
+            ldt = DateExtractor.getDate(file);
+            manifest.put(file.getName(), size, ldt);
+        }
+        return ldt;
+    }
+
+    /**
+     * Get the manifest of a folder, it's read when it's used for the first time.
+     * @param node node of the folder
+     * @return the folder's manifest
+     */
+    private LeafManifest manifest(FileGraph.Node node) {
+        return manifests.computeIfAbsent(node, n -> LeafManifest.load(new File(n.getPath())));
+    }
+
+    /**
+     * Delete the manifest of a folder that became an inner folder or is deleted.
+     * @param node node of the folder
+     */
+    private void deleteManifest(FileGraph.Node node) {
+        manifests.remove(node);
+        LeafManifest.delete(new File(node.getPath()));
+    }
+
+    /**
+     * Write the manifests of all leaves that changed. Should be called after the operations
+     * are finished and before the file graph snapshot is saved.
+     */
+    public void saveManifests() {
+        for(Map.Entry<FileGraph.Node, LeafManifest> e : manifests.entrySet()) {
+            FileGraph.Node node = e.getKey();
+            // inner folders don't keep a manifest
+            if(node.leaf && e.getValue().isDirty()) e.getValue().save(new File(node.getPath()));
+        }
+        manifests.clear();
+    }
+
     /**
      * Gets the correct directory for a file using the datetime stamp. The getNode() function
      * returns a node, where the folder might not exist. So this function gets the correct
@@ -98,51 +304,148 @@ public class FileGraphOperation {
      */
     private FileGraph.Node getDirectory(LocalDateTime dateTime) {
         FileGraph.Node node;
-        if(dateTime == null) node = getNode(new File(errorFolderPath));
+        if(dateTime == null) node = fileGraph.getRoot().addChild(Configuration.ERROR_FOLDER_NAME);
         else node = fileGraph.getNode(dateTime);
-        new File(node.path).mkdir();
+        new File(node.getPath()).mkdirs();
         return node;
     }
 
     /**
      * Reorganize a folder by creating new subfolders and moving all files in the current
-     * folder into the newly created children folders. This function takes in the folder
-     * size threshold. If the threshold is not exceeded it won't do anything.
+     * folder into them. This function takes in the folder size threshold. If the threshold
+     * is not exceeded it won't do anything. The datetimes of the files are read once and the
+     * final structure is computed in memory, so every file is moved exactly once into the
+     * deepest folder it needs, no matter how many levels the folder is split into.
      * @param node the node/folder to reorganize
      * @param threshold folder size threshold
      */
     public void reorganize(FileGraph.Node node, int threshold) {
         // can't reorganize if the folder depth is too high (beyond seconds), the threshold
         // is not exceeded. The error folder should never be reorganized
-        if(node.depth == 6 || node.fileCount <= threshold || node.path.equals(errorFolderPath)) return;
-        // marking the node as an inner node makes sure that the files are moved to
-        // new child folder that is created in the current folder
-        node.leaf = false;
-        File directory = new File(node.path);
-        ICopy moveReplace = new MoveReplace();
-
+        if(node.depth == 6 || node.fileCount <= threshold || isErrorFolder(node)) return;
+        File directory = new File(node.getPath());
+        List<DatedFile> files = new ArrayList<>();
+        // files that belong into the folder, the others are moved to their own folder anyway
+        List<DatedFile> belonging = new ArrayList<>();
         for(File file : directory.listFiles(a -> a.isFile())) {
-            FileGraph.Node destNode = copyFile(moveReplace, file);
-            if(destNode == null && !file.getName().equals(Configuration.PROPERTY_FILE_NAME_STRING)) {
-                System.err.println("error during reorganizing");
-            }
+            if(Configuration.isRepositoryFile(file.getName())) continue;
+            DatedFile datedFile = new DatedFile(file, getDate(file));
+            files.add(datedFile);
+            if(datedFile.dateTime != null && fileGraph.getNode(datedFile.dateTime) == node) belonging.add(datedFile);
         }
+        // marks the node and all folders that need to be split as inner nodes
+        splitLeaf(node, belonging, threshold);
+        if(node.leaf) return;
 
-        // reorganize all the child nodes afterwards, because they could still be
-        // above the threshold
+        ICopy moveReplace = new MoveReplace();
+        for(DatedFile datedFile : files) {
+            FileGraph.Node destNode = copyFile(moveReplace, datedFile.file, datedFile.dateTime);
+            if(destNode == null) System.err.println("error during reorganizing");
+        }
+        deleteManifest(node);
         node.fileCount = 0;
-        for(FileGraph.Node child : node.children.values()) {
-            reorganize(child, threshold);
+    }
+
+
+    /**
+     * Prepare the file graph for adding many files at once. The files are sorted by their
+     * datetime and grouped by the leaf they would be copied to. If a leaf can't take all of
+     * its files, the final structure is computed in memory by splitting the leaf's existing
+     * and new files into subfolders until every folder is below the threshold. Only the files
+     * already in the repository are moved here, exactly once into their final folder. After
+     * this function, copyFile() places every new file directly into its final leaf and no
+     * reorganization is needed.
+     * @param files new files with their datetime, will be sorted by datetime
+     * @param threshold folder size threshold
+     */
+    public void prepareLeaves(List<DatedFile> files, int threshold) {
+        files.sort(Comparator.comparing((DatedFile df) -> df.dateTime, Comparator.nullsFirst(Comparator.naturalOrder())));
+        // group the files by the leaf they belong to in the current structure
+        Map<FileGraph.Node, List<DatedFile>> leaves = new LinkedHashMap<>();
+        for(DatedFile datedFile : files) {
+            // files without a datetime go into the error folder which is never split
+            if(datedFile.dateTime == null) continue;
+            leaves.computeIfAbsent(fileGraph.getNode(datedFile.dateTime), n -> new ArrayList<>()).add(datedFile);
         }
+
+        for(Map.Entry<FileGraph.Node, List<DatedFile>> e : leaves.entrySet()) {
+            FileGraph.Node leaf = e.getKey();
+            if(leaf.depth == 6 || leaf.fileCount + e.getValue().size() <= threshold) continue;
+            // the leaf will be split, so its existing files need to be considered as well
+            List<DatedFile> existing = new ArrayList<>();
+            File directory = new File(leaf.getPath());
+            if(directory.exists()) {
+                for(File file : directory.listFiles(a -> a.isFile())) {
+                    if(Configuration.isRepositoryFile(file.getName())) continue;
+                    existing.add(new DatedFile(file, getDate(file)));
+                }
+            }
+            // duplicates with the same name and datetime are ignored or replaced when copying,
+            // so they mustn't be counted twice
+            Set<String> known = new HashSet<>();
+            List<DatedFile> all = new ArrayList<>();
+            for(DatedFile datedFile : existing) {
+                known.add(duplicateKey(datedFile));
+                all.add(datedFile);
+            }
+            for(DatedFile datedFile : e.getValue()) {
+                if(known.add(duplicateKey(datedFile))) all.add(datedFile);
+            }
+            splitLeaf(leaf, all, threshold);
+
+            // move the existing files straight into their final folder
+            if(leaf.leaf) continue;
+            ICopy moveReplace = new MoveReplace();
+            for(DatedFile datedFile : existing) {
+                FileGraph.Node destNode = copyFile(moveReplace, datedFile.file, datedFile.dateTime);
+                if(destNode == null) System.err.println("error during reorganizing");
+            }
+            deleteManifest(leaf);
+            leaf.fileCount = 0;
+        }
+    }
+
+    /**
+     * Files with the same name and the same datetime up to the seconds are the same file
+     * for the repository. This function returns a key identifying them.
+     * @param datedFile file and its datetime
+     * @return key as string
+     */
+    private String duplicateKey(DatedFile datedFile) {
+        LocalDateTime ldt = datedFile.dateTime == null ? null : datedFile.dateTime.truncatedTo(ChronoUnit.SECONDS);
+        return datedFile.file.getName() + File.pathSeparator + ldt;
     }
 
+    /**
+     * Split the node in the file graph model recursively until every leaf holds at most
+     * threshold files. No files are moved, the node and its new children are only marked
+     * as inner nodes or leaves. Children are created on demand by FileGraph.getNode().
+     * @param node node whose folder is going to contain the files
+     * @param files all files that are going to be stored in the node's subtree
+     * @param threshold folder size threshold
+     */
+    private void splitLeaf(FileGraph.Node node, List<DatedFile> files, int threshold) {
+        if(node.depth == 6 || files.size() <= threshold) return;
+        node.leaf = false;
+        // bucket the files by the child folder of the next time unit
+        Map<FileGraph.Node, List<DatedFile>> buckets = new LinkedHashMap<>();
+        for(DatedFile datedFile : files) {
+            // files without a date stay where they are, they're moved into the error folder
+            if(datedFile.dateTime == null) continue;
+            buckets.computeIfAbsent(fileGraph.getNode(datedFile.dateTime), n -> new ArrayList<>()).add(datedFile);
+        }
+        for(Map.Entry<FileGraph.Node, List<DatedFile>> e : buckets.entrySet()) {
+            splitLeaf(e.getKey(), e.getValue(), threshold);
+        }
+    }
 
     /**
      * reduce the structure if it shouldn't be split or folders are empty
      * if the number of files in its children is not above the threshold
      * then it shouldn't be split, so copy all files in the child folders
      * into itself then delete children
-     * @param threshold folder size threshold
+     * @param threshold merge threshold, at most the folder size threshold. A lower value
+     *                  keeps folders that were just split from being merged right away
      */
     public void reduceStructure(int threshold) {
         reduceStructure(threshold, fileGraph.getRoot());
@@ -157,7 +460,7 @@ public class FileGraphOperation {
      */
     private void reduceStructure(int threshold, FileGraph.Node node) {
         // skip the error folder
-        if(node.path.equals(errorFolderPath)) return;
+        if(isErrorFolder(node)) return;
 
         if(node.leaf) {
             // nothing to do
@@ -165,19 +468,17 @@ public class FileGraphOperation {
             int numFiles = 0;
             boolean allLeaves = true;
             // post order recursive call for all of its children nodes
-            Set<Map.Entry<String, FileGraph.Node>> entries = new HashSet<>(node.children.entrySet());
-            for(Map.Entry<String, FileGraph.Node> e : entries) {
-                FileGraph.Node child = e.getValue();
-                if(child.path.equals(errorFolderPath)) continue;
+            for(FileGraph.Node child : node.getChildren()) {
+                if(isErrorFolder(child)) continue;
                 reduceStructure(threshold, child);
                 // update the number of files in the child node
                 numFiles += child.fileCount;
                 allLeaves &= child.leaf;
                 // if the child node is a leaf and doesn't contain any files, it can be safely removed
                 if(child.leaf && child.fileCount == 0) {
-                    String key = e.getKey();
-                    node.children.remove(key);
-                    File emptyChild = new File(child.path);
+                    deleteManifest(child);
+                    node.removeChild(child);
+                    File emptyChild = new File(child.getPath());
                     if(!emptyChild.delete()) throw new IllegalStateException("couldnt delete empty child: " + child);
                 }
             }
@@ -188,45 +489,163 @@ public class FileGraphOperation {
             // the child folder contains more files than the threshold, because it has
             // been reorganized already (post-order traversal).
             if(allLeaves && numFiles <= threshold) {
-                ICopy moveOp = new MoveReplace();
-                Path currDir = Path.of(node.path);
-                // iterate through all children and all files to move them
-                for(FileGraph.Node child : node.children.values()) {
-                    if(child.path.equals(errorFolderPath)) continue;
-                    File childFolder = new File(child.path);
-                    for(File f : childFolder.listFiles()) {
-                        LocalDateTime ldt = DateExtractor.getDate(f);
-                        String fileName = FileTools.chooseFileName(node.path, f.getName(), ldt);
-                        Path from = f.toPath(), to = currDir.resolve(fileName);
-                        boolean duplicate = to.toFile().exists();
-                        try {
-                            moveOp.execute(from, to);
-                            // mark the file for increased performance in subsequent datetime accesses
-                            DateExtractor.markFile(to.toFile(), ldt);
-                            if(duplicate) {
-                                numFiles--;
-                                node.sizeTotal -= f.length();
-                            }
-                        } catch(IOException ioe) {
-                            System.err.println("error moving during restructuring: " + f.getAbsolutePath());
-                            ioe.printStackTrace();
-                        }
-                    }
-                    if(!childFolder.delete()) throw new IllegalStateException("cant delete folder after moving all files: " + child.path);
-
-                }
+                // a single child is renamed into place, several children are merged file by file
+                if(!collapseSoleChild(node)) numFiles = mergeChildren(node, numFiles);
 
                 // delete all children after moving
-                node.children.clear();
+                node.clearChildren();
                 node.fileCount = numFiles;
                 node.fileCountSubTree = numFiles;
             }
 
             // if the node has no children left, it becomes a leaf
-            if(node.children.isEmpty()) node.leaf = true;
+            if(!node.hasChildren()) node.leaf = true;
         }
     }
 
+    /**
+     * Replace the node's folder with its only child folder by renaming it, so none of the
+     * files need to be moved. Chains of folders holding a single subfolder are collapsed
+     * with one rename, the folders in between are deleted. This is only possible if every
+     * folder of the chain contains nothing but its subfolder.
+     * @param node inner node with a single leaf below it
+     * @return true if the leaf's folder was renamed into place
+     */
+    private boolean collapseSoleChild(FileGraph.Node node) {
+        if(node.depth == 0 || node.leaf) return false;
+        // the node and the folders between it and the leaf
+        List<FileGraph.Node> chain = new ArrayList<>();
+        FileGraph.Node child = node;
+        while(!child.leaf) {
+            if(child.getChildCount() != 1) return false;
+            FileGraph.Node next = child.getChildren().get(0);
+            String[] entries = new File(child.getPath()).list();
+            if(entries == null) return false;
+            for(String entry : entries) {
+                if(!entry.equals(next.getName()) && !Configuration.isRepositoryFile(entry)) return false;
+            }
+            chain.add(child);
+            child = next;
+        }
+        File folder = new File(node.getPath()), childFolder = new File(child.getPath());
+
+        // move the child next to the node, delete the empty folders and give the child its name
+        for(FileGraph.Node n : chain) deleteManifest(n);
+        File moved = collapseFolder(folder);
+        if(moved.exists() || !childFolder.renameTo(moved)) return false;
+        for(int i = chain.size()-1; i >= 0; i--) {
+            if(new File(chain.get(i).getPath()).delete()) continue;
+            childFolder.getParentFile().mkdirs();
+            if(!moved.renameTo(childFolder)) throw new IllegalStateException("couldnt restore folder after failed collapse: " + child.getPath());
+            return false;
+        }
+        if(!moved.renameTo(folder)) throw new IllegalStateException("couldnt rename folder into place: " + moved.getPath());
+        // the files keep their names, so the child's manifest is the node's manifest now
+        LeafManifest manifest = manifests.remove(child);
+        if(manifest != null) manifests.put(node, manifest);
+        return true;
+    }
+
+    /**
+     * Get the temporary name a folder's only leaf gets while the folder is collapsed.
+     * @param folder the collapsed folder
+     * @return the leaf's temporary folder next to the collapsed folder
+     */
+    public static File collapseFolder(File folder) {
+        return new File(folder.getParentFile(), "." + folder.getName() + ".collapse");
+    }
+
+    /**
+     * Merge all subfolders of an inner folder into it, so it becomes a leaf. Every file is
+     * moved once, directly from the folder it's in, no matter how deep it is. A chain of
+     * folders with a single leaf at the end is renamed instead.
+     * @param node inner node, the error folder and the root are never merged
+     */
+    public void mergeSubtree(FileGraph.Node node) {
+        if(node.leaf || node.depth == 0 || isErrorFolder(node)) return;
+        List<FileGraph.Node> folders = new ArrayList<>();
+        collectSubfolders(node, folders);
+        int numFiles = node.fileCount;
+        for(FileGraph.Node n : folders) numFiles += n.fileCount;
+        if(!collapseSoleChild(node)) numFiles = mergeChildren(node, numFiles);
+
+        node.clearChildren();
+        node.fileCount = numFiles;
+        node.fileCountSubTree = numFiles;
+        node.leaf = true;
+    }
+
+    /**
+     * Collect all folders below a node, children after their own children.
+     * @param node node
+     * @param folders list the folders are added to
+     */
+    private void collectSubfolders(FileGraph.Node node, List<FileGraph.Node> folders) {
+        for(FileGraph.Node child : node.getChildren()) {
+            if(isErrorFolder(child)) continue;
+            collectSubfolders(child, folders);
+            folders.add(child);
+        }
+    }
+
+    /**
+     * Move the files of all subfolders into the node's folder and delete the subfolders.
+     * Usually the node's children are all leaves. The files and their datetimes are
+     * collected first. The names already used
+     * in the node's folder are kept in memory, so only names that collide are checked on
+     * the disk again.
+     * @param node inner node
+     * @param numFiles number of files in the node and its subfolders
+     * @return number of files in the node after duplicates were replaced
+     */
+    private int mergeChildren(FileGraph.Node node, int numFiles) {
+        List<DatedFile> files = new ArrayList<>();
+        List<FileGraph.Node> children = new ArrayList<>();
+        collectSubfolders(node, children);
+        for(FileGraph.Node child : children) {
+            for(File f : new File(child.getPath()).listFiles(a -> a.isFile())) {
+                // the subfolder's manifest is deleted with the folder
+                if(Configuration.isRepositoryFile(f.getName())) continue;
+                files.add(new DatedFile(f, getDate(f)));
+            }
+        }
+
+        ICopy moveOp = new MoveReplace();
+        Path currDir = Path.of(node.getPath());
+        LeafManifest manifest = manifest(node);
+        // names of the files in the node's folder
+        Set<String> placed = new HashSet<>();
+        for(File f : currDir.toFile().listFiles(a -> a.isFile())) placed.add(f.getName());
+        for(DatedFile datedFile : files) {
+            File f = datedFile.file;
+            LocalDateTime ldt = datedFile.dateTime;
+            String fileName = f.getName();
+            if(placed.contains(fileName)) fileName = FileTools.chooseFileName(node.getPath(), fileName, null, ldt, this::getDate);
+            Path from = f.toPath(), to = currDir.resolve(fileName);
+            boolean duplicate = !placed.add(fileName);
+            long size = f.length();
+            try {
+                moveOp.execute(from, to);
+                // a renamed file needs a new mark, the others keep theirs
+                if(!fileName.equals(f.getName())) DateExtractor.markFile(to.toFile(), ldt);
+                manifest.put(fileName, size, ldt);
+                if(duplicate) {
+                    numFiles--;
+                    node.sizeTotal -= size;
+                }
+            } catch(IOException ioe) {
+                System.err.println("error moving during restructuring: " + f.getAbsolutePath());
+                ioe.printStackTrace();
+            }
+        }
+
+        for(FileGraph.Node child : children) {
+            deleteManifest(child);
+            if(!new File(child.getPath()).delete()) throw new IllegalStateException("cant delete folder after moving all files: " + child.getPath());
+        }
+        return numFiles;
+    }
+
     /**
      * Add a new folder as a child folder to a node and also update the file graph
      * in the process.
@@ -236,11 +655,9 @@ public class FileGraphOperation {
      */
     public FileGraph.Node addFolder(FileGraph.Node node, String folderName) {
         if(node == null) return null;
-        String path = node.path + File.separator + folderName;
-        if(!new File(path).mkdir()) return null;
+        if(!new File(node.getPath(), folderName).mkdir()) return null;
         // after adding the folder, the file graph needs to be updated
-        FileGraph.Node newNode = new FileGraph.Node(path, node.depth+1);
-        node.children.put(path, newNode);
+        FileGraph.Node newNode = node.addChild(folderName);
         node.leaf = false;
         return newNode;
     }
@@ -252,24 +669,17 @@ public class FileGraphOperation {
      * @return returns the path from root to given node in a list
      */
     public List<FileGraph.Node> getPathToNode(FileGraph.Node node) {
-        // get the folder's names from the absolute path
-        String[] folders = node.path.substring(fileGraph.getRoot().path.length()+1).split(Pattern.quote(File.separator));
+        // walk up the parents to the root and reverse the order afterwards
         List<FileGraph.Node> path = new ArrayList<>();
-        FileGraph.Node temp = fileGraph.getRoot();
-        StringBuilder key = new StringBuilder(temp.path);
-        path.add(temp);
-        for(int i = 0; i < folders.length; i++) {
-            key.append(File.separator).append(folders[i]);
-            temp = temp.children.get(key.toString());
-            path.add(temp);
-        }
+        for(FileGraph.Node temp = node; temp != null; temp = temp.getParent()) path.add(temp);
+        Collections.reverse(path);
 
         return path;
     }
 
     /**
-     * Get the node from a java API file object. This function uses the folder's name
-     * and searches the file graph for a node with the same absolute path as folder.
+     * Get the node from a java API file object. This function uses the folder's path
+     * relative to the root and looks up the folder names one by one in the file graph.
      * @param folder
      * @return
      */
@@ -277,19 +687,28 @@ public class FileGraphOperation {
         String fullPath = folder.getAbsolutePath();
         FileGraph.Node root = fileGraph.getRoot();
         // if the folder is not in the file graph subtree, stop
-        if(!fullPath.startsWith(root.path)) return null;
+        String rootPath = root.getPath();
+        if(!fullPath.startsWith(rootPath)) return null;
+        if(fullPath.length() == rootPath.length()) return root;
 
         FileGraph.Node node = root;
-        StringBuilder key = new StringBuilder(node.path);
         // get the folders from the absolute tree and split inbetween file separators, linux: /, windows: \\
-        String[] folders = fullPath.substring(fileGraph.getRoot().path.length()+1).split(Pattern.quote(File.separator));
+        String[] folders = fullPath.substring(rootPath.length()+1).split(Pattern.quote(File.separator));
         // start from the root and search for a path to the node
         for(int i = 0; i < folders.length; i++) {
-            key.append(File.separator).append(folders[i]);
-            node = node.children.get(key.toString());
+            node = node.getChild(folders[i]);
             if(node == null) return null;
         }
 
         return node;
     }
+
+    /**
+     * Check whether the node is the error folder in the repository's root.
+     * @param node node
+     * @return true if it's the error folder
+     */
+    private boolean isErrorFolder(FileGraph.Node node) {
+        return node.depth == 1 && node.getName().equals(Configuration.ERROR_FOLDER_NAME);
+    }
 }
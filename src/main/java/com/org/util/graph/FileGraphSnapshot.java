@@ -0,0 +1,196 @@
+package com.org.util.graph;
+
+import com.org.parser.Configuration;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Stores a file graph in a compact binary file next to the repository's configuration
+ * file, so it doesn't need to be built by walking through the whole repository every
+ * time a command starts. The nodes are written in pre-order. Each node stores the name
+ * of its folder, the file counts, the total size, its depth, if it's a leaf, the folder's
+ * last modified time and number of entries, and the number of children that follow it.
+ * After loading, only the folders that changed since then need to be read again.
+ * The snapshot is deleted before the repository is changed and written again after the
+ * change is finished. If the program stops in between, there is no snapshot and the
+ * graph is built from the filesystem the next time.
+ */
+public class FileGraphSnapshot {
+    // identifies the file as a file graph snapshot
+    private static final int MAGIC = 0x4F524746;
+    // version of the format, snapshots with another version are ignored
+    private static final int VERSION = 2;
+
+    /**
+     * Get the snapshot file of the repository.
+     * @param rootPath path to the repository
+     * @return snapshot file
+     */
+    public static File getFile(String rootPath) {
+        return new File(rootPath, Configuration.GRAPH_FILE_NAME_STRING);
+    }
+
+    /**
+     * Write the file graph to the snapshot file. The snapshot is written into a temporary
+     * file first, which then replaces the old snapshot, so there is never a half written
+     * snapshot. If the snapshot can't be written, the old one is deleted.
+     * @param graph file graph
+     * @return true if the snapshot was written, false otherwise
+     */
+    public static boolean save(FileGraph graph) {
+        FileGraph.Node root = graph.getRoot();
+        if(!new File(root.getPath()).isDirectory()) return false;
+        // store the current modified times of the folders changed while the graph was in use,
+        // this also updates the counts of the inner nodes which aren't updated while copying files
+        graph.refreshChanged();
+        Path snapshot = getFile(root.getPath()).toPath();
+        Path tmp = snapshot.resolveSibling(Configuration.GRAPH_FILE_NAME_STRING + ".tmp");
+
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                // pre-order traversal with the folder names relative to their parent
+                Deque<FileGraph.Node> stack = new ArrayDeque<>();
+                stack.push(root);
+                while(!stack.isEmpty()) {
+                    FileGraph.Node node = stack.pop();
+                    out.writeUTF(node.getName());
+                    out.writeInt(node.fileCount);
+                    out.writeInt(node.fileCountSubTree);
+                    out.writeLong(node.sizeTotal);
+                    out.writeInt(node.depth);
+                    out.writeBoolean(node.leaf);
+                    out.writeLong(node.modified);
+                    out.writeInt(node.entryCount);
+                    out.writeInt(node.getChildCount());
+                    for(FileGraph.Node child : node.getChildren()) stack.push(child);
+                }
+            }
+            try {
+                Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException amnse) {
+                Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch(IOException ioe) {
+            System.err.println("could not write the file graph snapshot: " + ioe.getMessage());
+            invalidate(root.getPath());
+            return false;
+        }
+    }
+
+    /**
+     * Read the file graph from the snapshot file. The snapshot is validated while it's
+     * read. Every node must be consistent with its children and the folders in the
+     * repository's root must be the ones stored in the snapshot.
+     * @param rootPath path to the repository
+     * @return the file graph, null if there is no valid snapshot
+     */
+    public static FileGraph load(String rootPath) {
+        String root = Path.of(rootPath).toAbsolutePath().toString();
+        File file = getFile(root);
+        if(!file.isFile()) return null;
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            FileGraph.Node rootNode = readNode(in, root, null);
+            if(rootNode == null || rootNode.depth != 0) return null;
+
+            // nodes whose children are still being read with the number of missing children
+            Deque<FileGraph.Node> parents = new ArrayDeque<>();
+            Deque<Integer> remaining = new ArrayDeque<>();
+            parents.push(rootNode);
+            remaining.push(in.readInt());
+            while(!parents.isEmpty()) {
+                if(remaining.peek() == 0) {
+                    FileGraph.Node done = parents.pop();
+                    remaining.pop();
+                    if(!validNode(done)) return null;
+                    continue;
+                }
+                remaining.push(remaining.pop()-1);
+                FileGraph.Node parent = parents.peek();
+                FileGraph.Node child = readNode(in, null, parent);
+                if(child == null) return null;
+                parents.push(child);
+                remaining.push(in.readInt());
+            }
+            // the whole file must have been read
+            if(in.read() != -1) return null;
+            if(!rootFoldersMatch(rootNode)) return null;
+            return new FileGraph(rootNode);
+        } catch(IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read a single node without its children.
+     * @param in input stream
+     * @param path absolute path of the node if it's the root, null otherwise
+     * @param parent parent node, null for the root, the node is added to its children
+     * @return the node, null if the node is invalid
+     * @throws IOException if the snapshot can't be read
+     */
+    private static FileGraph.Node readNode(DataInputStream in, String path, FileGraph.Node parent) throws IOException {
+        String name = in.readUTF();
+        FileGraph.Node node;
+        if(parent != null) {
+            if(name.isEmpty() || name.contains(File.separator)) return null;
+            // the same folder can't be stored twice
+            if(parent.getChild(name) != null) return null;
+            node = parent.addChild(name);
+        } else {
+            node = new FileGraph.Node(path);
+        }
+        int depth = node.depth;
+        node.fileCount = in.readInt();
+        node.fileCountSubTree = in.readInt();
+        node.sizeTotal = in.readLong();
+        node.depth = in.readInt();
+        node.leaf = in.readBoolean();
+        node.modified = in.readLong();
+        node.entryCount = in.readInt();
+        if(node.fileCount < 0 || node.sizeTotal < 0 || node.entryCount < 0) return null;
+        if(node.depth != depth) return null;
+        return node;
+    }
+
+    /**
+     * Check that the node is consistent with its children after all of them have been read.
+     * @param node node
+     * @return true if it's valid
+     */
+    private static boolean validNode(FileGraph.Node node) {
+        if(node.leaf && node.hasChildren()) return false;
+        int subTree = node.fileCount;
+        for(FileGraph.Node child : node.getChildren()) subTree += child.fileCountSubTree;
+        return subTree == node.fileCountSubTree;
+    }
+
+    /**
+     * Compare the folders in the repository's root with the root's children in the snapshot.
+     * @param root root node
+     * @return true if they are the same
+     */
+    private static boolean rootFoldersMatch(FileGraph.Node root) {
+        File[] folders = new File(root.getPath()).listFiles(File::isDirectory);
+        if(folders == null || folders.length != root.getChildCount()) return false;
+        for(File folder : folders) {
+            if(root.getChild(folder.getName()) == null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Delete the snapshot of the repository. This needs to be called before the
+     * repository is changed.
+     * @param rootPath path to the repository
+     */
+    public static void invalidate(String rootPath) {
+        getFile(Path.of(rootPath).toAbsolutePath().toString()).delete();
+    }
+}
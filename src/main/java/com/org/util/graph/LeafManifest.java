@@ -0,0 +1,207 @@
+package com.org.util.graph;
+
+import com.org.parser.Configuration;
+import com.org.util.FileTools;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Each leaf folder of the repository keeps a small hidden manifest that lists the name,
+ * size and datetime of its files. Operations that add or remove files update the manifest,
+ * so the datetimes of the files in the repository can be looked up without reading the
+ * files' metadata or modified times. An entry is only used if the file still has the same
+ * name and size, otherwise the file is read as usual and the entry is replaced. Every
+ * line of the manifest is "size TAB epoch milliseconds TAB name".
+ */
+public class LeafManifest {
+    // entries by file name
+    private final Map<String, Entry> entries = new HashMap<>();
+    // true if the entries changed since they were loaded
+    private boolean dirty = false;
+
+    /**
+     * A single file in the manifest.
+     */
+    private static class Entry {
+        // file size in bytes
+        final long size;
+        // the file's datetime
+        final LocalDateTime dateTime;
+
+        Entry(long size, LocalDateTime dateTime) {
+            this.size = size;
+            this.dateTime = dateTime;
+        }
+    }
+
+    /**
+     * Get the manifest file of a folder.
+     * @param folder leaf folder
+     * @return manifest file
+     */
+    public static File getFile(File folder) {
+        return new File(folder, Configuration.LEAF_MANIFEST_FILE_NAME_STRING);
+    }
+
+    /**
+     * Read the manifest of a folder. Lines that can't be parsed are skipped, so the files
+     * are read again.
+     * @param folder leaf folder
+     * @return the manifest, empty if the folder has none
+     */
+    public static LeafManifest load(File folder) {
+        LeafManifest manifest = new LeafManifest();
+        File file = getFile(folder);
+        if(!file.isFile()) return manifest;
+
+        try(BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while((line = in.readLine()) != null) {
+                int first = line.indexOf('\t');
+                int second = line.indexOf('\t', first+1);
+                if(first == -1 || second == -1) continue;
+                try {
+                    long size = Long.parseLong(line.substring(0, first));
+                    long epochMilli = Long.parseLong(line.substring(first+1, second));
+                    manifest.entries.put(line.substring(second+1), new Entry(size, FileTools.dateTime(epochMilli)));
+                } catch(NumberFormatException nfe) {
+                }
+            }
+        } catch(IOException ioe) {
+            manifest.entries.clear();
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Get the datetime of a file in the folder.
+     * @param fileName the file's name
+     * @param size the file's current size in bytes
+     * @return the datetime, null if the file isn't listed or its size changed
+     */
+    public LocalDateTime getDate(String fileName, long size) {
+        Entry entry = entries.get(fileName);
+        if(entry == null || entry.size != size) return null;
+        return entry.dateTime;
+    }
+
+    /**
+     * Add or replace the entry of a file.
+     * @param fileName the file's name
+     * @param size the file's size in bytes
+     * @param dateTime the file's datetime
+     */
+    public void put(String fileName, long size, LocalDateTime dateTime) {
+        // names with line breaks can't be stored, those files are always read
+        if(dateTime == null || fileName.indexOf('\n') != -1 || fileName.indexOf('\r') != -1) return;
+        Entry entry = entries.get(fileName);
+        if(entry != null && entry.size == size && entry.dateTime.equals(dateTime)) return;
+        entries.put(fileName, new Entry(size, dateTime));
+        dirty = true;
+    }
+
+    /**
+     * Remove the entry of a file that was moved out of the folder.
+     * @param fileName the file's name
+     */
+    public void remove(String fileName) {
+        if(entries.remove(fileName) != null) dirty = true;
+    }
+
+    /**
+     * Remove the entries of all files that aren't in the folder anymore.
+     * @param fileNames names of all files in the folder
+     */
+    public void retain(Set<String> fileNames) {
+        if(entries.keySet().retainAll(fileNames)) dirty = true;
+    }
+
+    /**
+     * Get the datetimes of all files in the manifest.
+     * @return list of datetimes
+     */
+    public List<LocalDateTime> dates() {
+        List<LocalDateTime> dates = new ArrayList<>();
+        for(Entry entry : entries.values()) dates.add(entry.dateTime);
+        return dates;
+    }
+
+    /**
+     * Get the number of files in the manifest.
+     * @return number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Check whether the entries changed since the manifest was loaded or saved.
+     * @return true if the manifest needs to be saved
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Write the manifest into the folder. It's written into a temporary file first, which
+     * then replaces the old manifest. An empty manifest deletes the file.
+     * @param folder leaf folder, its current path if it was renamed after loading
+     * @return true if the manifest was written, false otherwise
+     */
+    public boolean save(File folder) {
+        Path manifest = getFile(folder).toPath();
+        if(entries.isEmpty()) {
+            delete(folder);
+            dirty = false;
+            return true;
+        }
+        if(!folder.isDirectory()) return false;
+        Path tmp = manifest.resolveSibling(Configuration.LEAF_MANIFEST_FILE_NAME_STRING + ".tmp");
+
+        try {
+            try(Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmp), StandardCharsets.UTF_8))) {
+                for(Map.Entry<String, Entry> e : entries.entrySet()) {
+                    out.write(Long.toString(e.getValue().size));
+                    out.write('\t');
+                    out.write(Long.toString(FileTools.epochMilli(e.getValue().dateTime)));
+                    out.write('\t');
+                    out.write(e.getKey());
+                    out.write('\n');
+                }
+            }
+            try {
+                Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException amnse) {
+                Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING);
+            }
+            dirty = false;
+            return true;
+        } catch(IOException ioe) {
+            System.err.println("could not write the leaf manifest: " + ioe.getMessage());
+            delete(folder);
+            return false;
+        }
+    }
+
+    /**
+     * Delete the manifest of a folder, e.g. before the folder is deleted or when it
+     * becomes an inner folder.
+     * @param folder folder
+     */
+    public static void delete(File folder) {
+        getFile(folder).delete();
+        new File(folder, Configuration.LEAF_MANIFEST_FILE_NAME_STRING + ".tmp").delete();
+    }
+}
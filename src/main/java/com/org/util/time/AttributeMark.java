@@ -0,0 +1,113 @@
+package com.org.util.time;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Marks files by storing the datetime in the extended attribute user.organizer.date, e.g.
+ * "2022-08-05T16:38:25;1048576;1659710305000", followed by the file's size and lastModified
+ * when it was marked to find files that changed since. Reading the mark is a single
+ * attribute lookup and there are no false positives, and the file's lastModified field
+ * isn't changed. The attribute belongs to the file's content, so files with multiple hard
+ * links are marked as well. Copies that keep the file's attributes keep the mark. Only
+ * available on filesystems with extended attributes, e.g. ext4, xfs or btrfs on Linux.
+ */
+public class AttributeMark implements IMark {
+    // name of the attribute, the view adds the user namespace
+    public static final String ATTRIBUTE_NAME = "organizer.date";
+    // maximum length of a mark, a datetime with nanoseconds, the size and the lastModified
+    private static final int MAX_LENGTH = 80;
+    // separates the datetime, the size and the lastModified
+    private static final char SEPARATOR = ';';
+    // buffers of the current thread, reused for every file
+    private static final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_LENGTH));
+
+    /**
+     * Check whether the files in the directory can be marked with extended attributes.
+     * @param directory directory on the filesystem
+     * @return true if the filesystem supports user defined attributes
+     */
+    public static boolean isSupported(Path directory) {
+        try {
+            return Files.getFileStore(directory).supportsFileAttributeView(UserDefinedFileAttributeView.class);
+        } catch(IOException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read the datetime from the file's attribute.
+     * @param file file object
+     * @return the marked datetime, null if the file has no or an invalid attribute
+     */
+    @Override
+    public LocalDateTime read(File file) {
+        String[] fields = readFields(file);
+        if(fields == null) return null;
+        try {
+            return LocalDateTime.parse(fields[0]);
+        } catch(DateTimeParseException dtpe) {
+            return null;
+        }
+    }
+
+    /**
+     * Compare the size and lastModified stored in the mark with the attributes.
+     * @param file file object
+     * @param attrs the file's current attributes
+     * @return true if the file is marked and has the same size and lastModified
+     */
+    @Override
+    public boolean isMarked(File file, BasicFileAttributes attrs) {
+        String[] fields = readFields(file);
+        if(fields == null || fields.length != 3) return false;
+        return fields[1].equals(Long.toString(attrs.size()))
+                && fields[2].equals(Long.toString(attrs.lastModifiedTime().toMillis()));
+    }
+
+    /**
+     * Store the datetime in the file's attribute, together with the file's size and lastModified.
+     * @param file file object
+     * @param ldt the file's datetime
+     * @throws IOException if the attribute can't be written
+     */
+    @Override
+    public void write(File file, LocalDateTime ldt) throws IOException {
+        UserDefinedFileAttributeView view = view(file);
+        if(view == null) throw new IOException("extended attributes not supported for " + file.getPath());
+        BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        String mark = ldt.toString() + SEPARATOR + attrs.size() + SEPARATOR + attrs.lastModifiedTime().toMillis();
+        view.write(ATTRIBUTE_NAME, StandardCharsets.US_ASCII.encode(mark));
+    }
+
+    /**
+     * Read the file's attribute and split it into its fields.
+     * @param file file object
+     * @return the fields of the mark, null if the file has no attribute
+     */
+    private static String[] readFields(File file) {
+        UserDefinedFileAttributeView view = view(file);
+        if(view == null) return null;
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
+        try {
+            view.read(ATTRIBUTE_NAME, buffer);
+        } catch(IOException ioe) {
+            // the attribute doesn't exist or is too long for a mark
+            return null;
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).split(String.valueOf(SEPARATOR));
+    }
+
+    private static UserDefinedFileAttributeView view(File file) {
+        return Files.getFileAttributeView(file.toPath(), UserDefinedFileAttributeView.class);
+    }
+}
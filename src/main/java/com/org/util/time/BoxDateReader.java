@@ -0,0 +1,353 @@
+package com.org.util.time;
+
+import com.drew.imaging.FileType;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reads the dates of ISO base media files (mp4, mov, 3gp, heic, cr3) by going from box header
+ * to box header. Only the headers and the few boxes with dates are read, the media data is
+ * never read, so a date is found with a handful of small reads even in very large videos.
+ * Videos and cr3 files have their creation and modification time in the movie header box
+ * (mvhd), the same the library reads them from. HEIF images and cr3 files have their dates
+ * in exif structures, which are found by this class and read by the ExifDateReader. If the
+ * structure is unusual, an IOException is thrown and the library has to read the file instead.
+ */
+class BoxDateReader {
+    // seconds between 01.01.1904, the epoch of iso media files, and 01.01.1970
+    private static final long ISO_EPOCH_OFFSET = 2082844800L;
+    // boxes that are read as a whole can't be larger than this
+    private static final int MAX_BOX_SIZE = 4*1024*1024;
+    // box types
+    private static final int MOOV = type("moov");
+    private static final int MVHD = type("mvhd");
+    private static final int META = type("meta");
+    private static final int IINF = type("iinf");
+    private static final int INFE = type("infe");
+    private static final int ILOC = type("iloc");
+    private static final int EXIF = type("Exif");
+    private static final int UUID = type("uuid");
+    private static final int CMT1 = type("CMT1");
+    private static final int CMT2 = type("CMT2");
+    private static final int CMT4 = type("CMT4");
+    // canon's box in cr3 files containing the exif structures
+    private static final long CANON_UUID_HIGH = 0x85c0b687820f11e0L;
+    private static final long CANON_UUID_LOW = 0x8111f4ce462b6a48L;
+
+    // reader of the file
+    private final MetadataReader reader;
+    // length of the file
+    private final long length;
+    // format of the file
+    private final FileType fileType;
+    // buffer for box headers and small boxes
+    private final ByteBuffer buffer = ByteBuffer.allocate(32);
+    // dates of the movie header box
+    private final List<Date> dates = new ArrayList<>();
+    // start and end of the exif structures in the file
+    private final List<long[]> exifRegions = new ArrayList<>();
+    // true if the movie header box was read
+    private boolean movieHeader = false;
+    // header of the last box read: type, position of its content and its end
+    private int boxType;
+    private long boxContent;
+    private long boxEnd;
+
+    /**
+     * BoxDateReader constructor
+     * @param reader reader of the file
+     * @param length length of the file
+     * @param fileType format of the file, Mp4, QuickTime, Heif or Crx
+     */
+    BoxDateReader(MetadataReader reader, long length, FileType fileType) {
+        this.reader = reader;
+        this.length = length;
+        this.fileType = fileType;
+    }
+
+    /**
+     * Walk through the boxes at the top level of the file. Videos end after the movie box,
+     * HEIF images after the meta box.
+     * @throws IOException if the library has to read the file
+     */
+    void read() throws IOException {
+        boolean heif = fileType == FileType.Heif;
+        long position = 0;
+        while(readBoxHeader(position, length)) {
+            int type = boxType;
+            long content = boxContent, end = boxEnd;
+            // only the media data at the end of the file may be cut off
+            if(end > length) throw new IOException("box beyond the end of the file");
+            if(heif && type == META) {
+                readMeta(content, end);
+                break;
+            }
+            if(!heif && type == MOOV) {
+                readMovie(content, end);
+                break;
+            }
+            position = end;
+        }
+        if(heif && exifRegions.isEmpty()) throw new IOException("no exif item");
+        if(!heif && !movieHeader) throw new IOException("no movie header");
+    }
+
+    /**
+     * Get the dates of the movie header box.
+     * @return creation and modification time, empty for HEIF images
+     */
+    List<Date> getDates() {
+        return dates;
+    }
+
+    /**
+     * Get the parts of the file with exif structures. They start with a TIFF header.
+     * @return start and end of the exif structures
+     */
+    List<long[]> getExifRegions() {
+        return exifRegions;
+    }
+
+    /**
+     * Read the movie box with the movie header box, and for cr3 files canon's box with the
+     * exif structures.
+     * @param start start of the box's content
+     * @param end end of the box
+     * @throws IOException if the library has to read the file
+     */
+    private void readMovie(long start, long end) throws IOException {
+        long position = start;
+        while(readBoxHeader(position, end)) {
+            int type = boxType;
+            long content = boxContent;
+            position = boxEnd;
+            if(position > end) throw new IOException("box beyond its parent");
+            if(type == MVHD) {
+                if(movieHeader) throw new IOException("multiple movie headers");
+                readMovieHeader(content);
+            } else if(type == UUID && fileType == FileType.Crx) {
+                ByteBuffer uuid = read(content, 16);
+                if(uuid.getLong() == CANON_UUID_HIGH && uuid.getLong() == CANON_UUID_LOW) readCanon(content + 16, position);
+            }
+        }
+    }
+
+    /**
+     * Read the creation and modification time of the movie header box.
+     * @param start start of the box's content
+     * @throws IOException if the file can't be read
+     */
+    private void readMovieHeader(long start) throws IOException {
+        ByteBuffer mvhd = read(start, 4);
+        int version = mvhd.get() & 0xFF;
+        long creation, modification;
+        if(version == 1) {
+            mvhd = read(start + 4, 16);
+            creation = mvhd.getLong();
+            modification = mvhd.getLong();
+        } else if(version == 0) {
+            mvhd = read(start + 4, 8);
+            creation = mvhd.getInt() & 0xFFFFFFFFL;
+            modification = mvhd.getInt() & 0xFFFFFFFFL;
+        } else {
+            throw new IOException("unknown movie header version");
+        }
+        dates.add(new Date((creation - ISO_EPOCH_OFFSET)*1000));
+        dates.add(new Date((modification - ISO_EPOCH_OFFSET)*1000));
+        movieHeader = true;
+    }
+
+    /**
+     * Find the exif structures in canon's box, CMT1 has IFD0, CMT2 the Exif IFD and CMT4 the
+     * GPS IFD, each with their own TIFF header.
+     * @param start start of the box's content
+     * @param end end of the box
+     * @throws IOException if the library has to read the file
+     */
+    private void readCanon(long start, long end) throws IOException {
+        long position = start;
+        while(readBoxHeader(position, end)) {
+            if(boxEnd > end) throw new IOException("box beyond its parent");
+            if(boxType == CMT1 || boxType == CMT2 || boxType == CMT4) exifRegions.add(new long[] {boxContent, boxEnd});
+            position = boxEnd;
+        }
+    }
+
+    /**
+     * Find the exif item in the meta box of a HEIF image. The item info box has the item's
+     * id and the item location box where it's stored in the file.
+     * @param start start of the box's content
+     * @param end end of the box
+     * @throws IOException if the library has to read the file
+     */
+    private void readMeta(long start, long end) throws IOException {
+        if(end - start > MAX_BOX_SIZE) throw new IOException("meta box too large");
+        ByteBuffer meta = read(start, (int) (end - start));
+        // version and flags
+        meta.getInt();
+
+        long exifItem = -1;
+        ByteBuffer iloc = null;
+        while(meta.remaining() >= 8) {
+            ByteBuffer box = childBox(meta);
+            if(boxType == IINF) exifItem = readItemInfo(box);
+            else if(boxType == ILOC) iloc = box;
+        }
+        if(exifItem == -1 || iloc == null) throw new IOException("no exif item");
+        readItemLocation(iloc, exifItem);
+    }
+
+    /**
+     * Find the id of the exif item in the item info box.
+     * @param iinf content of the box
+     * @return id of the exif item, -1 if there is none
+     * @throws IOException if the library has to read the file
+     */
+    private long readItemInfo(ByteBuffer iinf) throws IOException {
+        int version = iinf.get() & 0xFF;
+        iinf.position(iinf.position() + 3);
+        long entries = version == 0 ? iinf.getShort() & 0xFFFF : iinf.getInt() & 0xFFFFFFFFL;
+        long exifItem = -1;
+        for(long i = 0; i < entries && iinf.remaining() >= 8; i++) {
+            ByteBuffer infe = childBox(iinf);
+            if(boxType != INFE) continue;
+            int infeVersion = infe.get() & 0xFF;
+            infe.position(infe.position() + 3);
+            // older versions don't have an item type
+            if(infeVersion < 2) continue;
+            long id = infeVersion == 2 ? infe.getShort() & 0xFFFF : infe.getInt() & 0xFFFFFFFFL;
+            // item protection index
+            infe.getShort();
+            if(infe.getInt() != EXIF) continue;
+            if(exifItem != -1) throw new IOException("multiple exif items");
+            exifItem = id;
+        }
+        return exifItem;
+    }
+
+    /**
+     * Find the location of the exif item in the item location box. The item must be stored
+     * in one piece at an offset in the file.
+     * @param iloc content of the box
+     * @param exifItem id of the exif item
+     * @throws IOException if the library has to read the file
+     */
+    private void readItemLocation(ByteBuffer iloc, long exifItem) throws IOException {
+        int version = iloc.get() & 0xFF;
+        iloc.position(iloc.position() + 3);
+        if(version > 2) throw new IOException("unknown item location version");
+        int sizes = iloc.getShort() & 0xFFFF;
+        int offsetSize = sizes >> 12, lengthSize = (sizes >> 8) & 0xF, baseOffsetSize = (sizes >> 4) & 0xF;
+        int indexSize = version == 0 ? 0 : sizes & 0xF;
+        long items = version < 2 ? iloc.getShort() & 0xFFFF : iloc.getInt() & 0xFFFFFFFFL;
+        for(long i = 0; i < items; i++) {
+            long id = version < 2 ? iloc.getShort() & 0xFFFF : iloc.getInt() & 0xFFFFFFFFL;
+            int constructionMethod = version == 0 ? 0 : iloc.getShort() & 0xF;
+            // data reference index
+            iloc.getShort();
+            long baseOffset = number(iloc, baseOffsetSize);
+            int extents = iloc.getShort() & 0xFFFF;
+            if(id != exifItem) {
+                iloc.position(iloc.position() + extents*(indexSize + offsetSize + lengthSize));
+                continue;
+            }
+            if(constructionMethod != 0 || extents != 1) throw new IOException("exif item not stored in one piece");
+            number(iloc, indexSize);
+            long start = baseOffset + number(iloc, offsetSize);
+            long end = start + number(iloc, lengthSize);
+            if(start < 0 || end <= start + 4 || end > length) throw new IOException("invalid exif item location");
+            // the exif item starts with the offset of the TIFF header
+            long tiffStart = start + 4 + (read(start, 4).getInt() & 0xFFFFFFFFL);
+            if(tiffStart >= end) throw new IOException("invalid exif item");
+            exifRegions.add(new long[] {tiffStart, end});
+            return;
+        }
+        throw new IOException("exif item has no location");
+    }
+
+    /**
+     * Read the header of a box in the file.
+     * @param position position of the box
+     * @param parentEnd end of the parent box or the file
+     * @return false if there is no box left in the parent
+     * @throws IOException if the header is invalid
+     */
+    private boolean readBoxHeader(long position, long parentEnd) throws IOException {
+        if(parentEnd - position < 8) return false;
+        ByteBuffer header = read(position, (int) Math.min(16, parentEnd - position));
+        long size = header.getInt() & 0xFFFFFFFFL;
+        boxType = header.getInt();
+        long headerSize = 8;
+        if(size == 1) {
+            if(header.remaining() < 8) throw new IOException("invalid box size");
+            size = header.getLong();
+            headerSize = 16;
+        } else if(size == 0) {
+            // the box extends to the end of its parent
+            size = parentEnd - position;
+        }
+        if(size < headerSize) throw new IOException("invalid box size");
+        boxContent = position + headerSize;
+        boxEnd = position + size;
+        return true;
+    }
+
+    /**
+     * Get the next box from a buffer with the content of its parent box.
+     * @param parent content of the parent box, its position is moved after the box
+     * @return content of the box
+     * @throws IOException if the box is invalid
+     */
+    private ByteBuffer childBox(ByteBuffer parent) throws IOException {
+        long size = parent.getInt() & 0xFFFFFFFFL;
+        boxType = parent.getInt();
+        if(size == 0) size = parent.remaining() + 8;
+        if(size < 8 || size - 8 > parent.remaining()) throw new IOException("invalid box size");
+        ByteBuffer box = parent.slice(parent.position(), (int) size - 8);
+        parent.position(parent.position() + (int) size - 8);
+        return box;
+    }
+
+    /**
+     * Read an unsigned big endian number.
+     * @param buffer buffer
+     * @param size number of bytes, 0, 4 or 8
+     * @return the number
+     * @throws IOException if the size isn't allowed
+     */
+    private static long number(ByteBuffer buffer, int size) throws IOException {
+        switch(size) {
+            case 0: return 0;
+            case 4: return buffer.getInt() & 0xFFFFFFFFL;
+            case 8: return buffer.getLong();
+            default: throw new IOException("invalid number size");
+        }
+    }
+
+    /**
+     * Read bytes from the file. Small reads use the same buffer.
+     * @param position position in the file
+     * @param count number of bytes
+     * @return buffer with the bytes
+     * @throws IOException if the file ends before
+     */
+    private ByteBuffer read(long position, int count) throws IOException {
+        ByteBuffer bytes = count <= buffer.capacity() ? buffer.clear().limit(count) : ByteBuffer.allocate(count);
+        if(reader.readAt(bytes, position) < count) throw new EOFException();
+        return bytes.flip();
+    }
+
+    /**
+     * Convert a box type to its number.
+     * @param type four character code
+     * @return type as int
+     */
+    private static int type(String type) {
+        return type.charAt(0) << 24 | type.charAt(1) << 16 | type.charAt(2) << 8 | type.charAt(3);
+    }
+}
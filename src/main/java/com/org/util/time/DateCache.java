@@ -0,0 +1,539 @@
+package com.org.util.time;
+
+import com.org.parser.Configuration;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent cache for the datetimes extracted by the DateExtractor. Files are identified
+ * by their device, inode, size and last modified time, so an unchanged file is found again
+ * no matter where it's located, e.g. when the same source is organized again after an
+ * interruption. If the file is modified, its key changes and the date is extracted again.
+ * A rename keeps the key, so datetimes that weren't read from the metadata are only a hint
+ * that the metadata has none, the DateExtractor parses the file's current name again.
+ * The cache is an append-only log in the repository's root with fixed size records. When
+ * it's opened, only an index from the key's hash to the record's position in the log is
+ * built. The records are read on demand, and the most recently used entries are kept in
+ * memory. Superseded and old records are removed by compacting the log.
+ */
+public class DateCache implements Closeable {
+    // identifies the file as a date cache
+    private static final int MAGIC = 0x4F524443;
+    // version of the format, caches with another version are discarded
+    private static final int VERSION = 1;
+    // size of the header with the magic number and the version
+    private static final int HEADER_SIZE = 8;
+    // key (4 longs), datetime (long + int), time the record was written (long), source (byte)
+    private static final int RECORD_SIZE = 4*8 + 8 + 4 + 8 + 1;
+    // default number of entries kept in memory
+    public static final int DEFAULT_MEMORY_ENTRIES = 10000;
+
+    /**
+     * Identifies a file by its device, inode, size and last modified time.
+     */
+    public static class Key {
+        // device id, -1 if the filesystem doesn't offer it
+        final long dev;
+        // inode number, hash of the absolute path if the filesystem doesn't offer it
+        final long ino;
+        // file size in bytes
+        final long size;
+        // last modified time in nanoseconds since the epoch
+        final long modified;
+
+        /**
+         * Key constructor
+         * @param dev device id
+         * @param ino inode number
+         * @param size file size in bytes
+         * @param modified last modified time in nanoseconds
+         */
+        Key(long dev, long ino, long size, long modified) {
+            this.dev = dev;
+            this.ino = ino;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /**
+         * 64 bit hash of the key used in the index.
+         * @return hash
+         */
+        long hash64() {
+            long h = mix(dev);
+            h = mix(h ^ ino);
+            h = mix(h ^ size);
+            return mix(h ^ modified);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return dev == k.dev && ino == k.ino && size == k.size && modified == k.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash64());
+        }
+    }
+
+    /**
+     * A cached datetime with the way it was extracted.
+     */
+    public static class Entry {
+        // the file's datetime, null if the extraction failed
+        public final LocalDateTime dateTime;
+        // where the datetime was read from
+        public final DateSource source;
+        // time the entry was written in milliseconds since the epoch
+        final long stored;
+
+        /**
+         * Entry constructor
+         * @param dateTime the file's datetime, can be null
+         * @param source where the datetime was read from
+         * @param stored time the entry was written in epoch milliseconds
+         */
+        Entry(LocalDateTime dateTime, DateSource source, long stored) {
+            this.dateTime = dateTime;
+            this.source = source;
+            this.stored = stored;
+        }
+    }
+
+    // path to the log file
+    private final Path file;
+    // channel to read and append records
+    private FileChannel channel;
+    // position where the next record is appended
+    private long end;
+    // index from the key's hash to the record's position
+    private LongIndex index;
+    // most recently used entries
+    private final Map<Key, Entry> recent;
+
+    /**
+     * DateCache constructor
+     * @param file path to the log file
+     * @param memoryEntries number of entries kept in memory
+     */
+    private DateCache(Path file, int memoryEntries) {
+        this.file = file;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the cache file of the repository.
+     * @param rootPath path to the repository
+     * @return cache file
+     */
+    public static File getFile(String rootPath) {
+        return new File(Path.of(rootPath).toAbsolutePath().toString(), Configuration.DATE_CACHE_FILE_NAME_STRING);
+    }
+
+    /**
+     * Open the date cache of the repository, the cache file is created if it doesn't exist.
+     * @param rootPath path to the repository
+     * @return the opened cache
+     * @throws IOException if the cache file can't be opened
+     */
+    public static DateCache open(String rootPath) throws IOException {
+        return open(rootPath, DEFAULT_MEMORY_ENTRIES);
+    }
+
+    /**
+     * Open the date cache of the repository, the cache file is created if it doesn't exist.
+     * @param rootPath path to the repository
+     * @param memoryEntries number of entries kept in memory
+     * @return the opened cache
+     * @throws IOException if the cache file can't be opened
+     */
+    public static DateCache open(String rootPath, int memoryEntries) throws IOException {
+        DateCache cache = new DateCache(getFile(rootPath).toPath(), memoryEntries);
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * Create the key of a file. On unix systems it's built from the device id and the inode,
+     * on other systems from the absolute path instead.
+     * @param file file object
+     * @return the key, null if the file's attributes can't be read
+     */
+    public static Key key(File file) {
+        Path path = file.toPath();
+        try {
+            Map<String, Object> attrs = Files.readAttributes(path, "unix:dev,ino,size,lastModifiedTime");
+            long modified = ((FileTime) attrs.get("lastModifiedTime")).to(TimeUnit.NANOSECONDS);
+            return new Key((Long) attrs.get("dev"), (Long) attrs.get("ino"), (Long) attrs.get("size"), modified);
+        } catch(UnsupportedOperationException | IllegalArgumentException e) {
+            // no unix attributes, fall through
+        } catch(IOException ioe) {
+            return null;
+        }
+
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            long pathHash = 0;
+            for(char c : file.getAbsolutePath().toCharArray()) pathHash = 31*pathHash + c;
+            return new Key(-1, mix(pathHash), attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the cached entry of a file.
+     * @param key the file's key
+     * @return the entry, null if the file isn't cached
+     */
+    public synchronized Entry get(Key key) {
+        Entry entry = recent.get(key);
+        if(entry != null) return entry;
+        long position = index.get(key.hash64());
+        if(position < 0) return null;
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            readFully(buffer, position);
+            buffer.flip();
+            // a different key with the same hash
+            if(!key.equals(readKey(buffer))) return null;
+            entry = readEntry(buffer);
+        } catch(IOException ioe) {
+            return null;
+        }
+        recent.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Store the datetime of a file. The record is appended to the log immediately.
+     * @param key the file's key
+     * @param dateTime the file's datetime, null if the extraction failed
+     * @param source where the datetime was read from
+     */
+    public synchronized void put(Key key, LocalDateTime dateTime, DateSource source) {
+        Entry entry = new Entry(dateTime, source, System.currentTimeMillis());
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        writeRecord(buffer, key, entry);
+        buffer.flip();
+        try {
+            while(buffer.hasRemaining()) channel.write(buffer, end + buffer.position());
+        } catch(IOException ioe) {
+            // the entry is just not cached
+            return;
+        }
+        index.put(key.hash64(), end);
+        end += RECORD_SIZE;
+        recent.put(key, entry);
+    }
+
+    /**
+     * Get the number of files in the cache.
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Get the number of records in the log, including superseded records.
+     * @return number of records
+     */
+    public synchronized long recordCount() {
+        return (end - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    /**
+     * Get the size of the log file.
+     * @return size in bytes
+     */
+    public synchronized long fileSize() {
+        return end;
+    }
+
+    /**
+     * Rewrite the log with only the current record of every file.
+     * @return number of removed records
+     * @throws IOException if the log can't be rewritten
+     */
+    public long compact() throws IOException {
+        return evict(0);
+    }
+
+    /**
+     * Remove all entries that were written before the given age and compact the log.
+     * @param maxAgeMillis maximum age of the entries in milliseconds, 0 keeps all entries
+     * @return number of removed records
+     * @throws IOException if the log can't be rewritten
+     */
+    public synchronized long evict(long maxAgeMillis) throws IOException {
+        long records = recordCount();
+        long minStored = maxAgeMillis > 0 ? System.currentTimeMillis() - maxAgeMillis : Long.MIN_VALUE;
+        // copy the current records in the order of the log
+        long[] positions = index.values();
+        Arrays.sort(positions);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try(FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out);
+            long outPosition = HEADER_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            for(long position : positions) {
+                buffer.clear();
+                readFully(buffer, position);
+                buffer.flip();
+                readKey(buffer);
+                if(readEntry(buffer).stored < minStored) continue;
+                buffer.rewind();
+                while(buffer.hasRemaining()) outPosition += out.write(buffer, outPosition);
+            }
+        }
+
+        channel.close();
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException amnse) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        recent.clear();
+        load();
+        return records - recordCount();
+    }
+
+    /**
+     * Remove all entries.
+     * @throws IOException if the log can't be truncated
+     */
+    public synchronized void clear() throws IOException {
+        channel.truncate(0);
+        writeHeader(channel);
+        end = HEADER_SIZE;
+        index = new LongIndex();
+        recent.clear();
+    }
+
+    /**
+     * Close the log file.
+     * @throws IOException if the file can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Open the log file and build the index from its records. A log with an unknown format
+     * is discarded, and an incomplete record at the end, e.g. after a crash, is removed.
+     * @throws IOException if the log can't be read
+     */
+    private void load() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = new LongIndex();
+        long fileSize = channel.size();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if(fileSize >= HEADER_SIZE) {
+            readFully(header, 0);
+            header.flip();
+        }
+        if(fileSize < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            clear();
+            return;
+        }
+
+        // only complete records are used
+        end = HEADER_SIZE + (fileSize - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+        if(end != fileSize) channel.truncate(end);
+        // read the records in large blocks, later records replace earlier ones
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 4096);
+        long position = HEADER_SIZE;
+        while(position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            readFully(buffer, position);
+            buffer.flip();
+            while(buffer.remaining() >= RECORD_SIZE) {
+                int start = buffer.position();
+                index.put(readKey(buffer).hash64(), position + start);
+                buffer.position(start + RECORD_SIZE);
+            }
+            position += buffer.limit();
+        }
+    }
+
+    /**
+     * Fill the buffer with data from the log starting at the position.
+     * @param buffer buffer to fill
+     * @param position position in the log
+     * @throws IOException if the log ends before the buffer is full
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position() - start);
+            if(read < 0) throw new IOException("unexpected end of the date cache");
+        }
+    }
+
+    /**
+     * Write the header at the start of the channel.
+     * @param out channel
+     * @throws IOException if it can't be written
+     */
+    private static void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while(header.hasRemaining()) out.write(header, header.position());
+    }
+
+    /**
+     * Write a record into the buffer.
+     * @param buffer buffer
+     * @param key the file's key
+     * @param entry the cached entry
+     */
+    private static void writeRecord(ByteBuffer buffer, Key key, Entry entry) {
+        buffer.putLong(key.dev).putLong(key.ino).putLong(key.size).putLong(key.modified);
+        // the local datetime is stored without a time zone so it's read back exactly the same
+        buffer.putLong(entry.dateTime == null ? 0 : entry.dateTime.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(entry.dateTime == null ? 0 : entry.dateTime.getNano());
+        buffer.putLong(entry.stored);
+        buffer.put((byte) entry.source.ordinal());
+    }
+
+    /**
+     * Read the key of a record from the buffer.
+     * @param buffer buffer positioned at the start of the record
+     * @return the key
+     */
+    private static Key readKey(ByteBuffer buffer) {
+        return new Key(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Read the entry of a record from the buffer.
+     * @param buffer buffer positioned after the record's key
+     * @return the entry
+     * @throws IOException if the record is invalid
+     */
+    private static Entry readEntry(ByteBuffer buffer) throws IOException {
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        long stored = buffer.getLong();
+        int source = buffer.get();
+        if(source < 0 || source >= DateSource.values().length) throw new IOException("invalid date cache record");
+        DateSource dateSource = DateSource.values()[source];
+        LocalDateTime dateTime = dateSource == DateSource.FAILED ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+        return new Entry(dateTime, dateSource, stored);
+    }
+
+    /**
+     * Mix the bits of a long value, finalizer of the 64 bit murmur hash.
+     * @param h value
+     * @return mixed value
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Hash map from long to long with open addressing. It stores the positions of the records,
+     * which are never 0 because of the header, so 0 marks an empty slot.
+     */
+    private static class LongIndex {
+        // hashes of the keys
+        private long[] keys = new long[1024];
+        // record positions, 0 if the slot is empty
+        private long[] values = new long[1024];
+        // number of entries
+        private int size = 0;
+
+        /**
+         * Get the position for the hash.
+         * @param key hash of the key
+         * @return position, -1 if there is none
+         */
+        long get(long key) {
+            int mask = keys.length-1;
+            for(int i = (int) key & mask; values[i] != 0; i = (i+1) & mask) {
+                if(keys[i] == key) return values[i];
+            }
+            return -1;
+        }
+
+        /**
+         * Set the position for the hash.
+         * @param key hash of the key
+         * @param value position of the record
+         */
+        void put(long key, long value) {
+            int mask = keys.length-1;
+            int i = (int) key & mask;
+            while(values[i] != 0 && keys[i] != key) i = (i+1) & mask;
+            if(values[i] == 0) size++;
+            keys[i] = key;
+            values[i] = value;
+            // keep the table at most half full
+            if(size*2 > keys.length) grow();
+        }
+
+        /**
+         * Get all positions.
+         * @return array of positions
+         */
+        long[] values() {
+            long[] all = new long[size];
+            int n = 0;
+            for(long value : values) {
+                if(value != 0) all[n++] = value;
+            }
+            return all;
+        }
+
+        /**
+         * Get the number of entries.
+         * @return number of entries
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Double the size of the table.
+         */
+        private void grow() {
+            long[] oldKeys = keys, oldValues = values;
+            keys = new long[oldKeys.length*2];
+            values = new long[oldValues.length*2];
+            size = 0;
+            for(int i = 0; i < oldKeys.length; i++) {
+                if(oldValues[i] != 0) put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
@@ -1,9 +1,6 @@
 package com.org.util.time;
 
 
-import com.drew.imaging.ImageMetadataReader;
-import com.drew.imaging.ImageProcessingException;
-import com.drew.imaging.quicktime.QuickTimeMetadataReader;
 import com.drew.lang.annotations.Nullable;
 import com.drew.metadata.Directory;
 import com.drew.metadata.Metadata;
@@ -21,13 +18,13 @@ import com.org.util.FileTools;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -35,7 +32,7 @@ import java.util.regex.Pattern;
 /**
  * The DateExtractor class offers some functionality for handling the datetime for files.
  * Such as, extracting the datetime metadata if there are any, and marking a file by storing
- * the extracted datetime in the lastModified field for quick access. For the extraction,
+ * the extracted datetime in the file's attributes for quick access. For the extraction,
  * the metadata-extractor library (https://github.com/drewnoakes/metadata-extractor) is used.
  */
 public class DateExtractor {
@@ -102,6 +99,16 @@ public class DateExtractor {
     private static final int currentYear = LocalDateTime.now().getYear();
     // can be set as true if all marks on the files should be ignored
     private static boolean ignoreMark = false;
+    // how the files are marked
+    private static IMark mark = new LastModifiedMark();
+    // cache of already extracted datetimes, null if none is used
+    private static DateCache dateCache = null;
+    // scanner finding datetimes in file names
+    private static FileNameDateScanner fileNameScanner = FileNameDateScanner.DEFAULT;
+    // strategies of the directories that were read, null if none are learned
+    private static StrategyMemo strategyMemo = null;
+    // limits for reading the metadata of a single file, null if there are none
+    private static ExtractionBudget extractionBudget = null;
     // map storing the tags which store the datetime for each directory class, library specific
     private static Map<Class, List<Integer>> dateTagMap = new HashMap<>();
 
@@ -124,29 +131,79 @@ public class DateExtractor {
     /**
      * read the date from a file, if it's a jpg, mp4, or any other supported file with date metadata
      * return this value. otherwise return the last modified date. If the file is marked
-     * this function will instead return the lastModified field, as it's much faster.
+     * this function will instead return the marked datetime, as it's much faster.
+     * If a date cache is set, the cache is checked before reading the metadata and the
+     * extracted datetime is stored in it. Ignoring the marks ignores the cache as well, and
+     * files whose extraction failed are always read again. A renamed file keeps its cache key,
+     * so for files without a datetime in their metadata, the cache only saves reading the
+     * metadata and the name is parsed again. If a strategy memo is set and the directory's
+     * files have their datetimes in their names, the name is read before the metadata. Then
+     * the name's datetime wins, even if the file's metadata has another one. Such datetimes
+     * aren't cached, so the file's metadata is read when it's organized without the memo.
+     * If reading the metadata exceeds the extraction budget, the file is treated like a
+     * corrupted file and the datetime isn't cached, so it's read again with another budget.
      * @param file
      * @return the date associated to the file or last modified, can return
      * null if an error occurred, e.g. corrupt jpg file
      */
     public static LocalDateTime getDate(File file) {
         if(!file.exists() || !file.isFile()) return null;
-        // if marks are allowed and the file is marked, then return the lastModified field
-        if(!ignoreMark && fileIsMarked(file)) return FileTools.dateTime(file.lastModified());
+        // if marks are allowed and the file is marked, then return the marked datetime
+        if(!ignoreMark) {
+            LocalDateTime marked = mark.read(file);
+            if(marked != null) return marked;
+        }
+        // files that haven't changed since their date was extracted are in the cache, files
+        // that failed are read again because the error might have been temporary
+        DateCache cache = dateCache;
+        DateCache.Key key = cache == null ? null : DateCache.key(file);
+        // the metadata is known to have no datetime, the name might have changed since
+        boolean noMetadata = false;
+        if(key != null && !ignoreMark) {
+            DateCache.Entry entry = cache.get(key);
+            if(entry != null && entry.source == DateSource.METADATA) return entry.dateTime;
+            noMetadata = entry != null && entry.source != DateSource.FAILED;
+        }
+
         LocalDateTime ldt = null;
+        DateSource source = DateSource.METADATA;
         String ext = FileTools.getFileExtension(file);
+        StrategyMemo.Strategy strategy = null;
         // skip extraction if the file extension is not supported
-        if(supportedFileExtensions.contains(ext)) {
+        if(!noMetadata && supportedFileExtensions.contains(ext)) {
+            // files in directories where the names have the datetimes are read by name first
+            StrategyMemo memo = strategyMemo;
+            if(memo != null) strategy = memo.get(file, ext);
+            if(strategy != null && strategy.isFileNameFirst()) {
+                ldt = DateExtractor.getDate(file.getName());
+                strategy.fileNameRead(ldt != null);
+                if(ldt != null) return ldt;
+            }
             try {
                 ldt = extractDateFromMetadata(file);
-            } catch(Exception e) {
+            } catch(ExtractionBudgetException ebe) {
+                System.err.println("skipped reading " + file.getPath() + ", " + ebe.getMessage());
                 return null;
+            } catch(Exception e) {
+                source = DateSource.FAILED;
             }
         }
-        // sometimes the datetime is parsed in the file's name
-        if(ldt == null) ldt = DateExtractor.getDate(file.getName());
-        // if it reaches this point, return the lastModified, as every file supports this attribute
-        if(ldt == null) ldt = FileTools.dateTime(file.lastModified());
+        if(source != DateSource.FAILED) {
+            // sometimes the datetime is parsed in the file's name
+            if(ldt == null) {
+                ldt = DateExtractor.getDate(file.getName());
+                source = DateSource.FILE_NAME;
+            }
+            // if it reaches this point, return the lastModified, as every file supports this attribute
+            if(ldt == null) {
+                ldt = FileTools.dateTime(file.lastModified());
+                source = DateSource.LAST_MODIFIED;
+            }
+        }
+
+        // learn where the datetimes of the directory's files are
+        if(strategy != null) strategy.metadataRead(source);
+        if(key != null && !noMetadata) cache.put(key, ldt, source);
         return ldt;
     }
 
@@ -161,27 +218,20 @@ public class DateExtractor {
     }
 
     /**
-     * Mark the file with the given datetime. The datetime will be converted to epochMillis
-     * and a hash created with the file's name and saved in the last three digits of the
-     * decimal number. The lastModified field will be modified into the date given as input.
-     * Since accessing this attribute is much faster than having to extract it from its metadata,
-     * it will save a lot of time. The datetime in the lastModified filed will be correct up
-     * until the milliseconds, as they are used for the hash.
+     * Mark the file with the given datetime. Since reading the mark is much faster than
+     * having to extract the datetime from its metadata, it will save a lot of time. How the
+     * datetime is stored depends on the mark that is set, see LastModifiedMark and AttributeMark.
+     * Files that can't be marked are left as they are.
      * @param file file object
      * @param ldt local datetime object
      */
     public static void markFile(File file, LocalDateTime ldt) {
         if(ldt == null) return;
-        // the datetime for the lastModified field are given as milliseconds since 01.01.1970
-        long epochMillis = FileTools.epochMilli(ldt);
-        // create the hash from the file's name, the hash has a 1/1000 chance to be correct
-        // even if the file isn't actually marked
-        long fileHash = fileNameHashCode(file.getName());
-        // only use the last 3 digits
-        long mark = fileHash % 1000;
-        // replace the last 3 digits of the datetime in long with the hash
-        long markedLastModified = epochMillis - (epochMillis%1000) + mark;
-        file.setLastModified(markedLastModified);
+        try {
+            mark.write(file, ldt);
+        } catch(IOException ioe) {
+            // the file is read again the next time
+        }
     }
 
     /**
@@ -194,177 +244,173 @@ public class DateExtractor {
         ignoreMark = boolIgnoreMark;
     }
 
+    /**
+     * Check whether the marks and other stored datetimes of files are ignored.
+     * @return true if every file's metadata is read
+     */
+    public static boolean isIgnoreMark() {
+        return ignoreMark;
+    }
+
+    /**
+     * Set how files are marked and how the marks are read.
+     * @param fileMark the mark
+     */
+    public static void setMark(IMark fileMark) {
+        mark = fileMark;
+    }
+
+    /**
+     * Get how files are currently marked.
+     * @return the mark
+     */
+    public static IMark getMark() {
+        return mark;
+    }
+
+    /**
+     * Mark the files in the directory with extended attributes if its filesystem supports
+     * them, otherwise in their lastModified field.
+     * @param directory the directory, e.g. the repository
+     */
+    public static void useMarkFor(String directory) {
+        if(AttributeMark.isSupported(Path.of(directory))) mark = new AttributeMark();
+        else mark = new LastModifiedMark();
+    }
+
+    /**
+     * Set the cache that is used by getDate(File file) to look up the datetimes of files
+     * that have been read before. Set to null to read every file again.
+     * @param cache the date cache, can be null
+     */
+    public static void setDateCache(DateCache cache) {
+        dateCache = cache;
+    }
+
+    /**
+     * Set the memo that learns for each directory and file extension whether the files'
+     * names or their metadata have the datetimes. Set to null to always read the metadata first.
+     * The memo changes which datetime wins for files with a datetime in their name and in
+     * their metadata, and what it learns depends on the order the files are read in, so it
+     * should only be used if the files are read one after another.
+     * @param memo the strategy memo, can be null
+     */
+    public static void setStrategyMemo(StrategyMemo memo) {
+        strategyMemo = memo;
+    }
+
+    /**
+     * Set the limits for reading the metadata of a single file. Set to null to read
+     * files without limits.
+     * @param budget the extraction budget, can be null
+     */
+    public static void setExtractionBudget(ExtractionBudget budget) {
+        extractionBudget = budget;
+    }
+
+    /**
+     * Get the limits for reading the metadata of a single file.
+     * @return the extraction budget, null if there are no limits
+     */
+    public static ExtractionBudget getExtractionBudget() {
+        return extractionBudget;
+    }
+
+    /**
+     * Set the scanner that is used to find datetimes in the names of files without
+     * datetime metadata.
+     * @param scanner file name scanner with its layouts
+     */
+    public static void setFileNameScanner(FileNameDateScanner scanner) {
+        fileNameScanner = scanner;
+    }
+
     /**
      * Uses the metadata-extractor library functions to extract the metadata saved
-     * inside a file.
+     * inside a file. The file is opened once and read by the reader for its format.
+     * The exif dates of JPEG and TIFF based files and the dates of videos and HEIF
+     * images are read directly, only unusual files of these formats are read by the library.
      * @param file file object
      * @return the localdatetime stored in the file, can return null if nothing was found
+     * @throws ExtractionBudgetException if reading the file exceeds the extraction budget
      * @throws Exception
      */
     private static LocalDateTime extractDateFromMetadata(File file) throws Exception {
-        Metadata md = readMetadata(file);
+        Metadata md;
         // quick time formats (mov) are not read correctly
         boolean quickTime = false;
-        if(md == null) {
-            md = readQuickTimeMetadata(file);
-            quickTime = true;
+        try(MetadataReader reader = new MetadataReader(file, extractionBudget)) {
+            // the dates of the most common formats are read directly
+            List<Date> dates = reader.readExifDates();
+            if(dates == null) dates = reader.readBoxDates();
+            if(dates != null) return earliestDate(dates);
+            reader.checkBudget();
+            md = reader.readMetadata();
+            if(md == null) {
+                reader.checkBudget();
+                md = reader.readQuickTimeMetadata();
+                quickTime = true;
+            }
+            // the library ignores some failed reads and returns incomplete metadata
+            reader.checkBudget();
         }
 
-        // iterate through all datetime attributes of the file and if multiple
-        // are stored, then use the earliest possible date
-        Date minDate = null;
+        // collect all datetime attributes of the file
+        List<Date> dates = new ArrayList<>();
         for(Directory dir : md.getDirectories()) {
             List<Integer> dateTags = dateTagMap.get(dir.getClass());
             if(dateTags == null) continue;
             for(int tag : dateTags) {
                 Date date = dir.getDate(tag, TimeZone.getDefault());
-                if(date == null) continue;
-                LocalDateTime ldt = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
-                // sometimes the datetime from the file could be incorrect
-                if(ldt.getYear() < 1970 || ldt.getYear() > currentYear) continue;
-                // choose the earliest date
-                if(minDate == null) minDate = date;
-                else if(date.compareTo(minDate) < 0) minDate = date;
+                if(date != null) dates.add(date);
             }
         }
+        LocalDateTime ldt = earliestDate(dates);
         // if no datetime field was found and both readMetadata() and the quicktime metadata
         // was attempted, the file is often corrupted
-        if(minDate == null) {
-            if(quickTime) throw new Exception("file might be corrupted");
-            else return null;
-        }
-        // return the date converted to localdatetime, assumes that the application is run
-        // at the same time zone (should possibly be set statically, or as repository property)
-        return LocalDateTime.ofInstant(minDate.toInstant(), ZoneId.systemDefault());
-    }
-
-    /**
-     * Read the metadata of a file using the metadata-extractor library and return a
-     * Metadata object storing all found directories.
-     * @param file file object
-     * @return metadata object, can be null
-     */
-    private static Metadata readMetadata(File file) {
-        Metadata md = null;
-
-        try {
-            md = ImageMetadataReader.readMetadata(file);
-        } catch(ImageProcessingException ipe) {
-        } catch(IOException ioe) {
-        }
-
-        return md;
+        if(ldt == null && quickTime) throw new Exception("file might be corrupted");
+        return ldt;
     }
 
     /**
-     * Read the quicktime metadata of a file using the metadata-extractor library and
-     * return a Metadata object storing all found directories.
-     * @param file file object
-     * @return metadat object, can be null
+     * If multiple datetimes are stored in a file, the earliest possible one is used.
+     * @param dates all datetimes stored in the file
+     * @return the earliest valid datetime, null if there is none
      */
-    private static Metadata readQuickTimeMetadata(File file) {
-        Metadata md = null;
-        try {
-            md = QuickTimeMetadataReader.readMetadata(file);
-        } catch(ImageProcessingException ipe) {
-        } catch(IOException ioe) {
+    private static LocalDateTime earliestDate(List<Date> dates) {
+        Date minDate = null;
+        for(Date date : dates) {
+            LocalDateTime ldt = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
+            // sometimes the datetime from the file could be incorrect
+            if(ldt.getYear() < 1970 || ldt.getYear() > currentYear) continue;
+            // choose the earliest date
+            if(minDate == null) minDate = date;
+            else if(date.compareTo(minDate) < 0) minDate = date;
         }
-        return md;
+        if(minDate == null) return null;
+        // return the date converted to localdatetime, assumes that the application is run
+        // at the same time zone (should possibly be set statically, or as repository property)
+        return LocalDateTime.ofInstant(minDate.toInstant(), ZoneId.systemDefault());
     }
 
     /**
-     * Check whether a file has been marked by comparing the last 3 digits of the lastModified
-     * field with the hash of the file's name.
+     * Check whether a file has been marked with the current mark.
      * @param file file object
      * @return true if it has been marked, false otherwise
      */
     public static boolean fileIsMarked(File file) {
-        long lm = file.lastModified();
-        long lmMark = lm % 1000;
-        long fileHash = fileNameHashCode(file.getName());
-        long nameMark = fileHash % 1000;
-        // if the file is marked the hash is the last 3 digits of the lastModified field
-        return lmMark == nameMark;
-    }
-
-    /**
-     * Create a hash code from a string value. The hash value is always positive. The hash
-     * code for the same string is always the same.
-     * @param value string input
-     * @return a hash code as long
-     */
-    private static long fileNameHashCode(String value) {
-        long h = 0;
-
-        char val[] = value.toCharArray();
-
-        if(val.length == 0) return 0;
-        for (int i = 0; i < val.length; i++) {
-            h = 31 * h + val[i];
-        }
-
-        if(h < 0) {
-            if(h == Long.MIN_VALUE) h = Long.MAX_VALUE;
-            else h = -h;
-        }
-
-        return h;
+        return mark.read(file) != null;
     }
 
     /**
-     * attempts to parse a localdatetime from an input string
-     * only supports the pattern 'yyyy MM dd HH mm ss', if all
-     * these values are in the right order and contained in the
-     * name
-     * @param str
-     * @return
+     * Attempts to find a localdatetime in an input string, e.g. a file's name, using
+     * the layouts of the file name scanner. The default layouts find datetimes with
+     * the pattern 'yyyy MM dd HH mm ss' and any separators, and the dates of WhatsApp
+     * files.
+     * @param str input string
+     * @return the localdatetime, null if none was found
      */
     public static LocalDateTime getDate(String str) {
-        // if a date is stored in the name, its numbers are in the name, such as:
-        // IMG_2022-08-05-16-38-25
-        String[] nums = str.split("\\D+");
-        List<String> timeUnits = new ArrayList<>();
-        boolean first = true;
-        int i = 0;
-        // go through the string from left to right, the first number needs to have 4
-        // letters for the year, all the others only 2
-        while(i < nums.length) {
-            if(first) {
-                if(nums[i].length() < 4) {
-                    i++;
-                } else {
-                    timeUnits.add(nums[i].substring(0, 4));
-                    nums[i] = nums[i].substring(4);
-                    first = false;
-                }
-            } else {
-                if(nums[i].length() < 2) {
-                    i++;
-                } else {
-                    timeUnits.add(nums[i].substring(0, 2));
-                    nums[i] = nums[i].substring(2);
-                }
-
-            }
-        }
-        // if there are not enough numbers, it probably isn't a date
-        if(timeUnits.size() < 6) return null;
-        // get the first 6 numbers for year, month, day, hour, min, second
-        timeUnits = timeUnits.subList(0, 6);
-        // convert to the list to a string using the default .toString() function
-        String strDate = timeUnits.toString();
-        // lists look like [...], so remove the brackets at the start and the end
-        strDate = strDate.substring(1, strDate.length()-1);
-        String pattern = "yyyy, MM, dd, HH, mm, ss";
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
-        // try parsing the datetime, it can throw an exception if the date doesn't make sense
-        LocalDateTime ldt = null;
-        try {
-            ldt = LocalDateTime.parse(strDate, formatter);
-        } catch(Exception e) {
-        }
-        // if the year is above the current year, something must be wrong
-        if(ldt != null && ldt.getYear() > currentYear) ldt = null;
-        return ldt;
+        return fileNameScanner.scan(str);
     }
 }
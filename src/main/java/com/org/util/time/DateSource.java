@@ -0,0 +1,15 @@
+package com.org.util.time;
+
+/**
+ * Where the datetime of a file was read from by the DateExtractor.
+ */
+public enum DateSource {
+    // date fields in the file's metadata
+    METADATA,
+    // datetime parsed from the file's name
+    FILE_NAME,
+    // the file's lastModified field
+    LAST_MODIFIED,
+    // the file couldn't be read, e.g. corrupt metadata, there is no datetime
+    FAILED
+}
@@ -1,11 +1,15 @@
 package com.org.util.time;
 
 import java.io.File;
+import java.time.LocalDateTime;
 
 /**
  * Class that offers some useful functions concerning dates.
  */
 public class DateTools {
+    // returned if a string is not a valid time unit
+    public static final int NO_UNIT = -1;
+
     /**
      * This function reads the file's datetime attribute and returns the appropriate
      * folder name according to the filegraph standard.
@@ -14,8 +18,18 @@ public class DateTools {
      * @return folder name as string
      */
     public static String folderName(File file, int depth) {
+        return folderName(DateExtractor.getDate(file), depth);
+    }
+
+    /**
+     * Return the folder name of a datetime according to the filegraph standard.
+     * @param ldt datetime
+     * @param depth the depth in which the node is
+     * @return folder name as string
+     */
+    public static String folderName(LocalDateTime ldt, int depth) {
         StringBuilder folderNameBuilder = new StringBuilder();
-        DateIterator di = new DateIterator(DateExtractor.getDate(file));
+        DateIterator di = new DateIterator(ldt);
         boolean first = true;
 
         for(int i = 0; i < depth; i++) {
@@ -27,4 +41,59 @@ public class DateTools {
 
         return folderNameBuilder.toString();
     }
+
+    /**
+     * Get the value of the time unit that belongs to the depth in the filegraph: the year,
+     * month (0-11), day of month, hour, minute or second.
+     * @param dateTime date time object
+     * @param depth depth between 1 and 6
+     * @return the time unit's value
+     */
+    public static int timeUnit(LocalDateTime dateTime, int depth) {
+        switch(depth) {
+            case 1: return dateTime.getYear();
+            case 2: return dateTime.getMonthValue()-1;
+            case 3: return dateTime.getDayOfMonth();
+            case 4: return dateTime.getHour();
+            case 5: return dateTime.getMinute();
+            case 6: return dateTime.getSecond();
+            default: throw new IllegalArgumentException("invalid depth: " + depth);
+        }
+    }
+
+    /**
+     * Get the string of a time unit the way it's used in the folder names, e.g. "märz"
+     * for the month 2 or "13h" for the hour 13.
+     * @param depth depth between 1 and 6
+     * @param unit the time unit's value
+     * @return the time unit as string
+     */
+    public static String unitName(int depth, int unit) {
+        if(depth == 2) return DateStats.monthStr[unit];
+        return unit + DateStats.unit[depth];
+    }
+
+    /**
+     * Parse the string of a time unit, the inverse of unitName(). Only the exact strings
+     * returned by unitName() are accepted, e.g. "05" or "5 h" are invalid.
+     * @param depth depth of the time unit
+     * @param str the time unit as string
+     * @return the time unit's value, NO_UNIT if the string is invalid
+     */
+    public static int parseUnit(int depth, String str) {
+        if(depth < 1 || depth > 6) return NO_UNIT;
+        if(depth == 2) return DateStats.monthInt.getOrDefault(str, NO_UNIT);
+        if(!str.endsWith(DateStats.unit[depth])) return NO_UNIT;
+        String digits = str.substring(0, str.length()-DateStats.unit[depth].length());
+        // only plain digits without leading zeros
+        if(digits.isEmpty() || digits.length() > 10 || (digits.length() > 1 && digits.charAt(0) == '0')) return NO_UNIT;
+        long value = 0;
+        for(int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if(c < '0' || c > '9') return NO_UNIT;
+            value = value*10 + (c-'0');
+        }
+        if(value < DateStats.dateRange[depth][0] || value > DateStats.dateRange[depth][1]) return NO_UNIT;
+        return (int) value;
+    }
 }
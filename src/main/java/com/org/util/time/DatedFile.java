@@ -0,0 +1,34 @@
+package com.org.util.time;
+
+import java.io.File;
+import java.time.LocalDateTime;
+
+/**
+ * Stores a file together with its already extracted datetime, so the date doesn't need
+ * to be read again when the file is processed later.
+ */
+public class DatedFile {
+    // the file object
+    public final File file;
+    // the file's datetime, null if it couldn't be extracted
+    public final LocalDateTime dateTime;
+
+    /**
+     * DatedFile constructor
+     * @param file file object
+     * @param dateTime the file's datetime, can be null
+     */
+    public DatedFile(File file, LocalDateTime dateTime) {
+        this.file = file;
+        this.dateTime = dateTime;
+    }
+
+    /**
+     * Return the dated file as formatted string.
+     * @return string
+     */
+    @Override
+    public String toString() {
+        return String.format("%s, date: %s", file, dateTime);
+    }
+}
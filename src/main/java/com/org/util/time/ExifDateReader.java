@@ -0,0 +1,330 @@
+package com.org.util.time;
+
+import com.drew.lang.RandomAccessReader;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reads only the date tags of the exif structure in JPEG files and TIFF based raw files,
+ * without decoding all the other tags, maker notes and thumbnails like the library does.
+ * The image file directories (IFDs) are followed by the same rules the library's TIFF
+ * reader uses, so the dates are read from the same directories: IFD0 and the IFDs
+ * following it, the Exif and SubIFDs, and the GPS and Interop IFDs. If anything is unusual,
+ * e.g. a date in another format, IPTC data or an invalid offset, an IOException is thrown
+ * and the library has to read the file instead.
+ */
+class ExifDateReader {
+    // tags holding a date in the format "yyyy:MM:dd HH:mm:ss"
+    private static final int TAG_DATETIME = 0x0132;
+    private static final int TAG_DATETIME_ORIGINAL = 0x9003;
+    private static final int TAG_DATETIME_DIGITIZED = 0x9004;
+    // tags pointing to other IFDs
+    private static final int TAG_SUB_IFDS = 0x014A;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_GPS_IFD = 0x8825;
+    private static final int TAG_INTEROP_IFD = 0xA005;
+    // tag marking the IFDs of a multipage TIFF
+    private static final int TAG_PAGE_NUMBER = 0x0129;
+    // tags containing IPTC data, which has dates as well
+    private static final int TAG_IPTC = 0x83BB;
+    private static final int TAG_PHOTOSHOP = 0x8649;
+    // TIFF data type of strings
+    private static final int TYPE_ASCII = 2;
+    // kinds of IFDs, they decide which pointers and following IFDs the library reads
+    private static final int IFD0 = 0;
+    private static final int IMAGE = 1;
+    private static final int THUMBNAIL = 2;
+    // IFDs following a thumbnail IFD share the thumbnail's directory in the library
+    private static final int MERGED_THUMBNAIL = 3;
+    private static final int SUB_IFD = 4;
+    private static final int OTHER = 5;
+    // more IFDs than this are not plausible
+    private static final int MAX_IFDS = 32;
+
+    // reader for the file
+    private final RandomAccessReader reader;
+    // position of the TIFF header in the file, offsets in the TIFF structure are relative to it
+    private final long base;
+    // end of the TIFF structure in the file, e.g. the end of the exif segment
+    private final long end;
+    // all dates found
+    private final List<Date> dates = new ArrayList<>();
+    // IFDs to read and their kinds
+    private final long[] ifds = new long[MAX_IFDS];
+    private final int[] kinds = new int[MAX_IFDS];
+    private int ifdCount = 0;
+
+    /**
+     * ExifDateReader constructor
+     * @param reader reader for the file
+     * @param base position of the TIFF header
+     * @param end end of the TIFF structure
+     */
+    private ExifDateReader(RandomAccessReader reader, long base, long end) {
+        this.reader = reader;
+        this.base = base;
+        this.end = end;
+    }
+
+    /**
+     * Read the dates from the exif segment of a JPEG file.
+     * @param reader reader for the file
+     * @return all dates, can be empty
+     * @throws IOException if the library has to read the file
+     */
+    static List<Date> readJpeg(RandomAccessReader reader) throws IOException {
+        reader.setMotorolaByteOrder(true);
+        if(reader.getUInt16(0) != 0xFFD8) throw new IOException("no JPEG file");
+        long exifStart = -1, exifEnd = -1;
+        int position = 2;
+        // go through the segments until the image data starts
+        while(true) {
+            if(reader.getUInt8(position) != 0xFF) throw new IOException("invalid JPEG segment");
+            // skip fill bytes
+            while(reader.getUInt8(position+1) == 0xFF) position++;
+            int marker = reader.getUInt8(position+1);
+            // start of scan or end of image
+            if(marker == 0xDA || marker == 0xD9) break;
+            // the library expects a length for all other markers
+            if(marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) throw new IOException("JPEG marker without length");
+            int length = reader.getUInt16(position+2);
+            if(length < 2) throw new IOException("invalid JPEG segment length");
+            if(marker == 0xE1 && length >= 8 && isExifPreamble(reader, position+4)) {
+                // the library reads every exif segment, more than one is unusual
+                if(exifStart != -1) throw new IOException("multiple exif segments");
+                exifStart = position + 10;
+                exifEnd = position + 2 + length;
+            } else if(marker == 0xED) {
+                // IPTC data is stored in the APP13 segment
+                throw new IOException("JPEG file with IPTC segment");
+            }
+            position += 2 + length;
+        }
+        if(exifStart == -1) return new ArrayList<>();
+        ExifDateReader exifReader = new ExifDateReader(reader, exifStart, exifEnd);
+        exifReader.readTiff();
+        return exifReader.dates;
+    }
+
+    /**
+     * Read the dates from a TIFF file.
+     * @param reader reader for the file
+     * @return all dates, can be empty
+     * @throws IOException if the library has to read the file
+     */
+    static List<Date> readTiff(RandomAccessReader reader) throws IOException {
+        ExifDateReader exifReader = new ExifDateReader(reader, 0, reader.getLength());
+        exifReader.readTiff();
+        return exifReader.dates;
+    }
+
+    /**
+     * Check whether the bytes at the index are "Exif\0\0".
+     * @param reader reader for the file
+     * @param index position in the file
+     * @return true if the exif preamble is found
+     * @throws IOException if the file can't be read
+     */
+    private static boolean isExifPreamble(RandomAccessReader reader, int index) throws IOException {
+        return reader.getUInt32(index) == 0x45786966L && reader.getUInt16(index+4) == 0;
+    }
+
+    /**
+     * Read the TIFF header and all IFDs.
+     * @throws IOException if the library has to read the file
+     */
+    private void readTiff() throws IOException {
+        int byteOrder = reader.getUInt16(index(0, 2));
+        if(byteOrder == 0x4D4D) reader.setMotorolaByteOrder(true);
+        else if(byteOrder == 0x4949) reader.setMotorolaByteOrder(false);
+        else throw new IOException("invalid byte order");
+        if(reader.getUInt16(index(2, 2)) != 42) throw new IOException("not a standard TIFF header");
+
+        addIfd(reader.getUInt32(index(4, 4)), IFD0);
+        for(int i = 0; i < ifdCount; i++) readIfd(ifds[i], kinds[i]);
+    }
+
+    /**
+     * Read the date tags of an IFD and add the IFDs it points to.
+     * @param offset offset of the IFD
+     * @param kind kind of the IFD
+     * @throws IOException if the library has to read the file
+     */
+    private void readIfd(long offset, int kind) throws IOException {
+        int count = reader.getUInt16(index(offset, 2));
+        // the library swaps the byte order for such IFDs
+        if(count > 0xFF && (count & 0xFF) == 0) throw new IOException("IFD in other byte order");
+        index(offset, 2 + 12L*count + 4);
+
+        boolean pageNumber = false;
+        // the library keeps only one value per tag and IFD
+        boolean dateTime = false, original = false, digitized = false;
+        for(int i = 0; i < count; i++) {
+            long entry = offset + 2 + 12L*i;
+            int tag = reader.getUInt16(index(entry, 2));
+            int type = reader.getUInt16(index(entry+2, 2));
+            long components = reader.getUInt32(index(entry+4, 4));
+            switch(tag) {
+                case TAG_DATETIME:
+                    if(dateTime) throw new IOException("duplicate date tag");
+                    dateTime = true;
+                    readDate(entry, type, components, kind);
+                    break;
+                case TAG_DATETIME_ORIGINAL:
+                    if(original) throw new IOException("duplicate date tag");
+                    original = true;
+                    readDate(entry, type, components, kind);
+                    break;
+                case TAG_DATETIME_DIGITIZED:
+                    if(digitized) throw new IOException("duplicate date tag");
+                    digitized = true;
+                    readDate(entry, type, components, kind);
+                    break;
+                case TAG_SUB_IFDS:
+                    addPointers(entry, type, components, SUB_IFD);
+                    break;
+                case TAG_EXIF_IFD:
+                    if(kind == IFD0) addPointers(entry, type, components, SUB_IFD);
+                    break;
+                case TAG_GPS_IFD:
+                    if(kind == IFD0) addPointers(entry, type, components, OTHER);
+                    break;
+                case TAG_INTEROP_IFD:
+                    if(kind == SUB_IFD) addPointers(entry, type, components, OTHER);
+                    break;
+                case TAG_PAGE_NUMBER:
+                    pageNumber = true;
+                    break;
+                case TAG_IPTC:
+                case TAG_PHOTOSHOP:
+                    throw new IOException("TIFF file with IPTC data");
+                default:
+                    break;
+            }
+        }
+
+        // only IFD0, image and thumbnail IFDs are followed by other IFDs
+        int followerKind;
+        if(kind == IFD0 || kind == IMAGE) followerKind = pageNumber ? IMAGE : THUMBNAIL;
+        else if(kind == THUMBNAIL || kind == MERGED_THUMBNAIL) followerKind = MERGED_THUMBNAIL;
+        else return;
+        long next = reader.getUInt32(index(offset + 2 + 12L*count, 4));
+        // the library doesn't follow IFDs pointing backwards
+        if(next > offset) addIfd(next, followerKind);
+    }
+
+    /**
+     * Add the IFDs a tag points to. The library treats the values of every tag with a 4 byte
+     * data type as pointers.
+     * @param entry offset of the tag's entry
+     * @param type data type of the tag
+     * @param components number of pointers
+     * @param kind kind of the IFDs
+     * @throws IOException if the library has to read the file
+     */
+    private void addPointers(long entry, int type, long components, int kind) throws IOException {
+        // long, signed long, float and IFD
+        if(type != 4 && type != 9 && type != 11 && type != 13) throw new IOException("invalid IFD pointer");
+        if(components > MAX_IFDS) throw new IOException("too many IFDs");
+        // values up to 4 bytes are stored in the entry itself
+        long values = components <= 1 ? entry+8 : reader.getUInt32(index(entry+8, 4));
+        for(int c = 0; c < components; c++) {
+            int pointer = reader.getInt32(index(values + 4L*c, 4));
+            if(pointer <= 0) throw new IOException("invalid IFD pointer");
+            addIfd(pointer, kind);
+        }
+    }
+
+    /**
+     * Add an IFD to the IFDs to read.
+     * @param offset offset of the IFD
+     * @param kind kind of the IFD
+     * @throws IOException if there are too many IFDs
+     */
+    private void addIfd(long offset, int kind) throws IOException {
+        // the library reads every IFD only once, the kind depends on the order it's read in
+        for(int i = 0; i < ifdCount; i++) {
+            if(ifds[i] != offset) continue;
+            if(kinds[i] != kind) throw new IOException("IFD used twice");
+            return;
+        }
+        if(ifdCount == MAX_IFDS) throw new IOException("too many IFDs");
+        ifds[ifdCount] = offset;
+        kinds[ifdCount++] = kind;
+    }
+
+    /**
+     * Read the date of a tag in the format "yyyy:MM:dd HH:mm:ss". Values out of range roll over
+     * into the next unit, like the library's lenient parser does. Before 1583 the library uses
+     * the julian calendar, so these dates differ, but they're never used by the DateExtractor.
+     * @param entry offset of the tag's entry
+     * @param type data type of the tag
+     * @param components number of bytes of the value
+     * @param kind kind of the IFD
+     * @throws IOException if the value is in another format
+     */
+    private void readDate(long entry, int type, long components, int kind) throws IOException {
+        if(type != TYPE_ASCII) throw new IOException("date tag is not ascii");
+        // the library overwrites the thumbnail's dates with the dates of the following IFDs
+        if(kind == MERGED_THUMBNAIL) throw new IOException("date in merged IFD");
+        // values up to 4 bytes are stored in the entry itself
+        long offset = components <= 4 ? entry+8 : reader.getUInt32(index(entry+8, 4));
+        int length = (int) Math.min(components, 20);
+        byte[] bytes = reader.getBytes(index(offset, length), length);
+
+        // the string ends at the first null byte
+        int stringLength = 0;
+        while(stringLength < length && bytes[stringLength] != 0) stringLength++;
+        // the library can't parse empty dates, so they're skipped
+        if(stringLength == 0) return;
+        if(stringLength != 19) throw new IOException("unknown date format");
+        if(bytes[4] != ':' || bytes[7] != ':' || bytes[10] != ' ' || bytes[13] != ':' || bytes[16] != ':') {
+            throw new IOException("unknown date format");
+        }
+
+        LocalDateTime ldt = LocalDateTime.of(number(bytes, 0, 4), 1, 1, 0, 0)
+                .plusMonths(number(bytes, 5, 2)-1)
+                .plusDays(number(bytes, 8, 2)-1)
+                .plusHours(number(bytes, 11, 2))
+                .plusMinutes(number(bytes, 14, 2))
+                .plusSeconds(number(bytes, 17, 2));
+        // the library parses the date in the default time zone
+        dates.add(Date.from(ldt.atZone(ZoneId.systemDefault()).toInstant()));
+    }
+
+    /**
+     * Parse the decimal digits in the byte array.
+     * @param bytes ascii bytes
+     * @param start index of the first digit
+     * @param digits number of digits
+     * @return the number
+     * @throws IOException if a byte is not a digit
+     */
+    private static int number(byte[] bytes, int start, int digits) throws IOException {
+        int value = 0;
+        for(int i = start; i < start+digits; i++) {
+            if(bytes[i] < '0' || bytes[i] > '9') throw new IOException("unknown date format");
+            value = value*10 + (bytes[i]-'0');
+        }
+        return value;
+    }
+
+    /**
+     * Convert an offset in the TIFF structure to an index in the file and make sure the
+     * bytes are inside the TIFF structure.
+     * @param offset offset relative to the TIFF header
+     * @param count number of bytes read at the offset
+     * @return index in the file
+     * @throws IOException if the bytes are outside of the TIFF structure
+     */
+    private int index(long offset, long count) throws IOException {
+        long index = base + offset;
+        if(offset < 0 || index + count > end || index + count > Integer.MAX_VALUE) throw new IOException("offset out of range");
+        return (int) index;
+    }
+}
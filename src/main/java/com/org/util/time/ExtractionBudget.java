@@ -0,0 +1,90 @@
+package com.org.util.time;
+
+/**
+ * Limits the time and the number of bytes the DateExtractor spends on reading the metadata
+ * of a single file. Truncated or malformed files can make the metadata-extractor library
+ * read a huge file from start to end or take very long, which would stall the whole
+ * organization. The limits are checked whenever bytes are read or skipped, the time also
+ * after the file was parsed. Files that exceed them are treated like corrupted files, so a
+ * budget is only used if it was given to the organize command.
+ */
+public class ExtractionBudget {
+    // maximum number of bytes read from a file
+    private final long maxBytes;
+    // maximum time spent on a file in nanoseconds
+    private final long maxNanos;
+
+    /**
+     * ExtractionBudget constructor
+     * @param maxBytes maximum number of bytes read from a file
+     * @param maxMillis maximum time spent on a file in milliseconds
+     */
+    public ExtractionBudget(long maxBytes, long maxMillis) {
+        if(maxBytes <= 0 || maxMillis <= 0) throw new IllegalArgumentException("extraction budget needs to be positive");
+        this.maxBytes = maxBytes;
+        this.maxNanos = maxMillis * 1000000;
+    }
+
+    /**
+     * Get the maximum number of bytes read from a file.
+     * @return number of bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the maximum time spent on a file.
+     * @return time in milliseconds
+     */
+    public long getMaxMillis() {
+        return maxNanos / 1000000;
+    }
+
+    /**
+     * Start reading a file.
+     * @return the tracker of the bytes read and time spent on the file
+     */
+    Tracker start() {
+        return new Tracker();
+    }
+
+    /**
+     * Tracks the bytes read and the time spent on a single file. Once the budget is
+     * exceeded, every further read fails as well, because the library sometimes ignores
+     * failed reads and continues with the next part of the file.
+     */
+    class Tracker {
+        // time when the file was opened
+        private final long startNanos = System.nanoTime();
+        // number of bytes read so far
+        private long bytes = 0;
+        // set once the budget is exceeded
+        private ExtractionBudgetException exceeded = null;
+
+        /**
+         * Count the bytes that are about to be read and check the limits.
+         * @param count number of bytes
+         * @throws ExtractionBudgetException if a limit is exceeded
+         */
+        void charge(long count) throws ExtractionBudgetException {
+            check();
+            bytes += count;
+            if(bytes > maxBytes) {
+                exceeded = new ExtractionBudgetException(String.format("read more than %d bytes", maxBytes));
+            }
+            check();
+        }
+
+        /**
+         * Check whether the time is up or the budget has been exceeded by an earlier read.
+         * @throws ExtractionBudgetException if a limit was exceeded
+         */
+        void check() throws ExtractionBudgetException {
+            if(exceeded == null && System.nanoTime() - startNanos > maxNanos) {
+                exceeded = new ExtractionBudgetException(String.format("took longer than %d ms", getMaxMillis()));
+            }
+            if(exceeded != null) throw exceeded;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.org.util.time;
+
+import java.io.IOException;
+
+/**
+ * Thrown if reading the metadata of a file exceeds the extraction budget.
+ */
+public class ExtractionBudgetException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ExtractionBudgetException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,204 @@
+package com.org.util.time;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.util.Arrays;
+
+/**
+ * Finds datetimes in file names, such as IMG_20220805_163825.jpg or IMG-20220805-WA0001.jpg.
+ * The names are compared to a list of layouts, which are compiled once. A layout consists of:
+ * <ul>
+ *     <li>the fields yyyy, MM, dd, HH, mm and ss, matching exactly that many digits</li>
+ *     <li>a space, matching any number of characters that aren't digits, also none</li>
+ *     <li>text in single quotes, matching that text ignoring the case</li>
+ *     <li>any other character, matching exactly that character</li>
+ * </ul>
+ * The layouts are tried in their order and the first datetime that is valid is returned.
+ * Fields must not start in the middle of a number. Layouts without time fields return the
+ * start of the day. The names are scanned character by character and the datetime is built
+ * from the digits directly, without creating any objects in between.
+ */
+public class FileNameDateScanner {
+    // the layouts used by the DateExtractor
+    public static final FileNameDateScanner DEFAULT = new FileNameDateScanner(
+            // date and time with any separators, e.g. IMG_20220805_163825, PXL_20220805_163825123,
+            // Screenshot_2022-02-05-05-42-25-713_com.miui.gallery or 2022-08-05T16.38.25
+            "yyyy MM dd HH mm ss",
+            // WhatsApp images, videos, audios and voice messages, e.g. IMG-20220805-WA0001
+            "'IMG-'yyyyMMdd'-WA'",
+            "'VID-'yyyyMMdd'-WA'",
+            "'AUD-'yyyyMMdd'-WA'",
+            "'PTT-'yyyyMMdd'-WA'",
+            // ISO dates, e.g. 2022-08-05 Holiday
+            "yyyy-MM-dd");
+
+    // current year as the application is running
+    private static final int currentYear = LocalDateTime.now().getYear();
+    // kinds of the elements of a layout
+    private static final byte FIELD = 0;
+    private static final byte SEPARATORS = 1;
+    private static final byte LITERAL = 2;
+    // units of the fields, in the order of LocalDateTime.of()
+    private static final int YEAR = 0, MONTH = 1, DAY = 2, HOUR = 3, MINUTE = 4, SECOND = 5;
+
+    // compiled layouts
+    private final Layout[] layouts;
+
+    /**
+     * Compile the layouts.
+     * @param layouts layouts in the order they are tried
+     * @throws IllegalArgumentException if a layout is invalid
+     */
+    public FileNameDateScanner(String... layouts) {
+        this.layouts = new Layout[layouts.length];
+        for(int i = 0; i < layouts.length; i++) this.layouts[i] = new Layout(layouts[i]);
+    }
+
+    /**
+     * Find the datetime in the name.
+     * @param name file name
+     * @return the datetime of the first matching layout, null if no layout matches
+     */
+    public LocalDateTime scan(String name) {
+        for(Layout layout : layouts) {
+            for(int start = 0; start < name.length(); start++) {
+                // fields don't start in the middle of a number
+                if(layout.kinds[0] == FIELD && start > 0 && isDigit(name.charAt(start-1))) continue;
+                LocalDateTime ldt = layout.match(name, start);
+                if(ldt != null) return ldt;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * A compiled layout, the elements are stored in arrays.
+     */
+    private static class Layout {
+        // kind of each element
+        private final byte[] kinds;
+        // unit of a field or character of a literal
+        private final int[] values;
+        // number of digits of a field
+        private final int[] widths;
+
+        /**
+         * Compile a layout.
+         * @param layout the layout as string
+         * @throws IllegalArgumentException if the layout is invalid
+         */
+        Layout(String layout) {
+            int n = 0;
+            byte[] kinds = new byte[layout.length()];
+            int[] values = new int[layout.length()];
+            int[] widths = new int[layout.length()];
+            boolean[] units = new boolean[6];
+            int i = 0;
+            while(i < layout.length()) {
+                char c = layout.charAt(i);
+                int unit = "yMdHms".indexOf(c);
+                if(unit != -1) {
+                    int width = 0;
+                    while(i < layout.length() && layout.charAt(i) == c) {
+                        width++;
+                        i++;
+                    }
+                    if(width != (unit == YEAR ? 4 : 2)) throw new IllegalArgumentException("invalid field width in layout " + layout);
+                    if(units[unit]) throw new IllegalArgumentException("duplicate field in layout " + layout);
+                    units[unit] = true;
+                    kinds[n] = FIELD;
+                    values[n] = unit;
+                    widths[n++] = width;
+                } else if(c == ' ') {
+                    kinds[n++] = SEPARATORS;
+                    i++;
+                } else if(c == '\'') {
+                    int end = layout.indexOf('\'', i+1);
+                    if(end == -1) throw new IllegalArgumentException("unclosed quote in layout " + layout);
+                    for(int j = i+1; j < end; j++) {
+                        kinds[n] = LITERAL;
+                        values[n++] = Character.toLowerCase(layout.charAt(j));
+                    }
+                    i = end+1;
+                } else if(Character.isLetterOrDigit(c)) {
+                    throw new IllegalArgumentException("unknown field " + c + " in layout " + layout);
+                } else {
+                    kinds[n] = LITERAL;
+                    values[n++] = c;
+                    i++;
+                }
+            }
+            if(!units[YEAR] || !units[MONTH] || !units[DAY]) throw new IllegalArgumentException("layout without date " + layout);
+            for(int j = 0; j < n; j++) {
+                // otherwise the separators would consume the characters of the next element
+                if(kinds[j] == SEPARATORS && (j+1 == n || kinds[j+1] != FIELD)) {
+                    throw new IllegalArgumentException("separators must be followed by a field in layout " + layout);
+                }
+            }
+            this.kinds = Arrays.copyOf(kinds, n);
+            this.values = Arrays.copyOf(values, n);
+            this.widths = Arrays.copyOf(widths, n);
+        }
+
+        /**
+         * Match the layout at the position in the name.
+         * @param name file name
+         * @param start position in the name
+         * @return the datetime, null if the layout doesn't match or the datetime is invalid
+         */
+        LocalDateTime match(String name, int start) {
+            int year = 0, month = 0, day = 0, hour = 0, minute = 0, second = 0;
+            int p = start;
+            for(int e = 0; e < kinds.length; e++) {
+                switch(kinds[e]) {
+                    case FIELD:
+                        if(p + widths[e] > name.length()) return null;
+                        int value = 0;
+                        for(int end = p + widths[e]; p < end; p++) {
+                            char c = name.charAt(p);
+                            if(!isDigit(c)) return null;
+                            value = value*10 + (c - '0');
+                        }
+                        switch(values[e]) {
+                            case YEAR: year = value; break;
+                            case MONTH: month = value; break;
+                            case DAY: day = value; break;
+                            case HOUR: hour = value; break;
+                            case MINUTE: minute = value; break;
+                            default: second = value; break;
+                        }
+                        break;
+                    case SEPARATORS:
+                        while(p < name.length() && !isDigit(name.charAt(p))) p++;
+                        break;
+                    default:
+                        if(p == name.length() || Character.toLowerCase(name.charAt(p)) != values[e]) return null;
+                        p++;
+                        break;
+                }
+            }
+            return resolve(year, month, day, hour, minute, second);
+        }
+
+        /**
+         * Build the datetime like DateTimeFormatter's smart resolver does: a day after the end of
+         * the month is changed to its last day, and 24:00:00 is the start of the next day.
+         * @return the datetime, null if the values are invalid or the year is in the future
+         */
+        private static LocalDateTime resolve(int year, int month, int day, int hour, int minute, int second) {
+            if(year < 1 || year > currentYear) return null;
+            if(month < 1 || month > 12 || day < 1 || day > 31) return null;
+            if(minute > 59 || second > 59) return null;
+            boolean endOfDay = hour == 24 && minute == 0 && second == 0;
+            if(hour > 23 && !endOfDay) return null;
+            day = Math.min(day, Month.of(month).length(Year.isLeap(year)));
+            if(endOfDay) return LocalDateTime.of(year, month, day, 0, 0).plusDays(1);
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.org.util.time;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+
+/**
+ * Mark interface. A mark stores the datetime of a file that has already been extracted in
+ * the file's attributes, so it can be read again without reading the file's metadata.
+ */
+public interface IMark {
+    /**
+     * Read the datetime from the file's mark.
+     * @param file file object
+     * @return the marked datetime, null if the file isn't marked
+     */
+    LocalDateTime read(File file);
+
+    /**
+     * Check whether the file is marked and hasn't been changed since it was marked.
+     * @param file file object
+     * @param attrs the file's current attributes
+     * @return true if the mark is up to date
+     */
+    boolean isMarked(File file, BasicFileAttributes attrs);
+
+    /**
+     * Mark the file with the datetime.
+     * @param file file object
+     * @param ldt the file's datetime
+     * @throws IOException if the file can't be marked
+     */
+    void write(File file, LocalDateTime ldt) throws IOException;
+}
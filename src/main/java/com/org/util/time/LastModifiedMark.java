@@ -0,0 +1,98 @@
+package com.org.util.time;
+
+import com.org.util.FileTools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+
+/**
+ * Marks files by storing the datetime in the lastModified field. The datetime will be
+ * converted to epochMillis and a hash created with the file's name and saved in the last
+ * three digits of the decimal number. The datetime in the lastModified field will be correct
+ * up until the milliseconds, as they are used for the hash. Works on every filesystem, but
+ * the file's real lastModified is lost and one in a thousand unmarked files looks marked.
+ */
+public class LastModifiedMark implements IMark {
+
+    /**
+     * Check whether a file has been marked by comparing the last 3 digits of the lastModified
+     * field with the hash of the file's name. If it is, the lastModified field is the datetime.
+     * @param file file object
+     * @return the marked datetime, null if the file isn't marked
+     */
+    @Override
+    public LocalDateTime read(File file) {
+        long lm = file.lastModified();
+        if(!isMarked(file.getName(), lm)) return null;
+        return FileTools.dateTime(lm);
+    }
+
+    /**
+     * Check the mark in the lastModified field of the attributes. Changing the file
+     * changes its lastModified field, so the mark is gone.
+     * @param file file object
+     * @param attrs the file's current attributes
+     * @return true if the file is marked
+     */
+    @Override
+    public boolean isMarked(File file, BasicFileAttributes attrs) {
+        return isMarked(file.getName(), attrs.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Replace the lastModified field with the datetime and the hash of the name. Files with
+     * multiple hard links are not marked, because all links share the lastModified field
+     * and the mark would change the source file's lastModified as well.
+     * @param file file object
+     * @param ldt the file's datetime
+     * @throws IOException if the lastModified field can't be changed
+     */
+    @Override
+    public void write(File file, LocalDateTime ldt) throws IOException {
+        if(FileTools.linkCount(file) > 1) return;
+        // the datetime for the lastModified field are given as milliseconds since 01.01.1970
+        long epochMillis = FileTools.epochMilli(ldt);
+        // create the hash from the file's name, the hash has a 1/1000 chance to be correct
+        // even if the file isn't actually marked
+        long fileHash = fileNameHashCode(file.getName());
+        // only use the last 3 digits
+        long mark = fileHash % 1000;
+        // replace the last 3 digits of the datetime in long with the hash
+        long markedLastModified = epochMillis - (epochMillis%1000) + mark;
+        if(!file.setLastModified(markedLastModified)) throw new IOException("could not mark " + file.getPath());
+    }
+
+    private static boolean isMarked(String name, long lastModified) {
+        long lmMark = lastModified % 1000;
+        long fileHash = fileNameHashCode(name);
+        long nameMark = fileHash % 1000;
+        // if the file is marked the hash is the last 3 digits of the lastModified field
+        return lmMark == nameMark;
+    }
+
+    /**
+     * Create a hash code from a string value. The hash value is always positive. The hash
+     * code for the same string is always the same.
+     * @param value string input
+     * @return a hash code as long
+     */
+    private static long fileNameHashCode(String value) {
+        long h = 0;
+
+        char val[] = value.toCharArray();
+
+        if(val.length == 0) return 0;
+        for (int i = 0; i < val.length; i++) {
+            h = 31 * h + val[i];
+        }
+
+        if(h < 0) {
+            if(h == Long.MIN_VALUE) h = Long.MAX_VALUE;
+            else h = -h;
+        }
+
+        return h;
+    }
+}
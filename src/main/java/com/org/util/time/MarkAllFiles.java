@@ -2,24 +2,44 @@ package com.org.util.time;
 
 import com.org.observer.Observer;
 import com.org.observer.Subject;
+import com.org.util.FileWalker;
 
-import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class implements functionality to mark files to increase performance by
  * reducing the amount of IO operations needed to read the datetime attribute.
- * Details to how the file is marked are in the DateExtractor class. The execution
- * features registering observers to track the current progress.
+ * Details to how the file is marked are in the DateExtractor class. The files are found
+ * by a single walk and marked in batches by a pool of threads. In the incremental mode
+ * only files that aren't marked, or changed since they were marked, are read and marked
+ * again. The execution features registering observers to track the current progress.
  */
 public class MarkAllFiles implements Subject<Integer> {
+    // number of files handed to a thread at once
+    private static final int BATCH_SIZE = 64;
     // absolute path as string to the repository
     private String repoPath;
     // list of observers for the subject-observer pattern
     private List<Observer> obs = new ArrayList<>();
-    // number of currently marked files after execution, subject-state
-    int markedFilesCount = 0;
+    // number of currently processed files after execution, subject-state
+    private final AtomicInteger processedFilesCount = new AtomicInteger();
+    // number of files that were marked, the others were already marked
+    private final AtomicInteger markedFilesCount = new AtomicInteger();
+    // previous mark whose datetimes are reused, null if every file is read
+    private IMark previousMark = null;
+    // number of threads marking the files
+    private int threads = 1;
+    // if true, files that are marked and haven't changed are skipped
+    private boolean incremental = false;
 
     /**
      * MarkAllFiles constructor
@@ -30,30 +50,125 @@ public class MarkAllFiles implements Subject<Integer> {
     }
 
     /**
-     * Marks all the files by recursively going through the filesystem structure.
-     * The root is the repository path given when creating the object.
+     * Reuse the datetimes of files that are marked with another mark, e.g. to migrate the
+     * marks in the lastModified field to extended attributes. These files aren't read again,
+     * so a file that only looks marked, e.g. a lastModified whose milliseconds match the
+     * hash by chance, keeps the wrong datetime.
+     * @param mark the previous mark
+     * @return this object
+     */
+    public MarkAllFiles migrateFrom(IMark mark) {
+        this.previousMark = mark;
+        return this;
+    }
+
+    /**
+     * Set the number of threads that read and mark the files.
+     * @param threads number of threads, at least 1
+     * @return this object
+     */
+    public MarkAllFiles setThreads(int threads) {
+        if(threads < 1) throw new IllegalArgumentException("number of threads must be positive");
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Enable or disable the incremental mode. Files with an up to date mark are skipped,
+     * so marking a repository again only reads the files added or changed since.
+     * @param incremental true to skip marked files
+     * @return this object
+     */
+    public MarkAllFiles setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * Marks all the files by walking through the filesystem structure. The root is the
+     * repository path given when creating the object. The walk is the same as the one
+     * used to count the files, so the progress reaches the number of counted files.
      */
     public void execute() {
         // reset the state
-        markedFilesCount = 0;
-        execute(new File(repoPath));
+        processedFilesCount.set(0);
+        markedFilesCount.set(0);
+        if(threads == 1) {
+            new FileWalker().walk(Path.of(repoPath), this::markFile);
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        // limits the batches waiting for a thread, so a large tree isn't kept in memory
+        Semaphore pending = new Semaphore(2*threads);
+        List<Path> files = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        try {
+            new FileWalker().walk(Path.of(repoPath), (file, attrs) -> {
+                files.add(file);
+                attributes.add(attrs);
+                if(files.size() == BATCH_SIZE) submit(pool, pending, files, attributes);
+            });
+            submit(pool, pending, files, attributes);
+        } finally {
+            pool.shutdown();
+        }
+        try {
+            while(!pool.awaitTermination(1, TimeUnit.SECONDS));
+        } catch(InterruptedException ie) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
-     * Recursive implementation of marking all files.
-     * @param file file object
+     * Hand a batch of files to the thread pool, the lists are cleared afterwards. Blocks
+     * while too many batches are waiting.
+     * @param pool thread pool
+     * @param pending permits for the waiting batches
+     * @param files paths to the files
+     * @param attributes the files' attributes
      */
-    private void execute(File file) {
-        if(file == null || !file.exists()) return;
-        if(file.isFile()) {
-            DateExtractor.markFile(file);
-            markedFilesCount++;
-            notifyObservers();
-        } else {
-            for(File f : file.listFiles()) {
-                execute(f);
+    private void submit(ExecutorService pool, Semaphore pending, List<Path> files, List<BasicFileAttributes> attributes) {
+        if(files.isEmpty()) return;
+        List<Path> batchFiles = new ArrayList<>(files);
+        List<BasicFileAttributes> batchAttributes = new ArrayList<>(attributes);
+        files.clear();
+        attributes.clear();
+        pending.acquireUninterruptibly();
+        pool.execute(() -> {
+            try {
+                for(int i = 0; i < batchFiles.size(); i++) markFile(batchFiles.get(i), batchAttributes.get(i));
+            } finally {
+                pending.release();
             }
+        });
+    }
+
+    /**
+     * Mark a single file, unless it's skipped in the incremental mode.
+     * @param file path to the file
+     * @param attrs the file's attributes
+     */
+    private void markFile(Path file, BasicFileAttributes attrs) {
+        IMark mark = DateExtractor.getMark();
+        if(!incremental || !mark.isMarked(file.toFile(), attrs)) {
+            LocalDateTime previous = previousMark == null ? null : previousMark.read(file.toFile());
+            if(previous != null) DateExtractor.markFile(file.toFile(), previous);
+            else DateExtractor.markFile(file.toFile());
+            markedFilesCount.incrementAndGet();
         }
+        processedFilesCount.incrementAndGet();
+        notifyObservers();
+    }
+
+    /**
+     * Get the number of files that were marked by the last execution. Without the incremental
+     * mode this is the number of all files.
+     * @return number of marked files
+     */
+    public int getMarkedCount() {
+        return markedFilesCount.get();
     }
 
     /**
@@ -75,19 +190,20 @@ public class MarkAllFiles implements Subject<Integer> {
     }
 
     /**
-     * Notify all observers.
+     * Notify all observers. The files are marked by multiple threads, the observers are
+     * notified by one thread at a time.
      */
     @Override
-    public void notifyObservers() {
+    public synchronized void notifyObservers() {
         for(Observer o : obs) o.update();
     }
 
     /**
-     * Get the object's state.
+     * Get the object's state, the number of processed files.
      * @return
      */
     @Override
     public Integer getState() {
-        return markedFilesCount;
+        return processedFilesCount.get();
     }
 }
@@ -0,0 +1,393 @@
+package com.org.util.time;
+
+import com.drew.imaging.FileType;
+import com.drew.imaging.FileTypeDetector;
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.imaging.jpeg.JpegMetadataReader;
+import com.drew.imaging.jpeg.JpegSegmentMetadataReader;
+import com.drew.imaging.quicktime.QuickTimeMetadataReader;
+import com.drew.imaging.tiff.TiffMetadataReader;
+import com.drew.lang.BufferBoundsException;
+import com.drew.lang.RandomAccessReader;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifReader;
+import com.drew.metadata.iptc.IptcReader;
+import com.drew.metadata.photoshop.PhotoshopReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Front-end for the metadata-extractor library that opens a file only once. The format
+ * is detected from the magic bytes at the start of the file, and the file is handed
+ * directly to the library's reader for that format. The readers don't get the whole file,
+ * they read from the file channel: stream based readers skip over data they don't need,
+ * e.g. the video data in mp4 files, by moving the channel's position, and TIFF based
+ * formats only read the parts of the file their directories point to. The buffers are
+ * kept per thread and reused for all files. All reads are counted against the extraction
+ * budget, if one is given.
+ */
+public class MetadataReader implements Closeable {
+    // number of bytes at the start of the file used to detect the format
+    private static final int HEADER_SIZE = 256;
+    // size of the buffer for reading the file
+    private static final int BUFFER_SIZE = 16*1024;
+    // JPEG segments that can contain date tags
+    private static final List<JpegSegmentMetadataReader> jpegReaders = List.of(new ExifReader(), new IptcReader(), new PhotoshopReader());
+    // buffers of the current thread, reused for every file
+    private static final ThreadLocal<ByteBuffer> headerBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(HEADER_SIZE));
+    private static final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE));
+
+    // channel of the opened file
+    private final FileChannel channel;
+    // length of the file in bytes
+    private final long length;
+    // format of the file
+    private FileType fileType;
+    // bytes read and time spent on the file, null if there is no budget
+    private final ExtractionBudget.Tracker tracker;
+
+    /**
+     * Open the file and detect its format.
+     * @param file file object
+     * @throws IOException if the file can't be read
+     */
+    public MetadataReader(File file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * Open the file and detect its format. Reading the file fails as soon as the budget
+     * is exceeded.
+     * @param file file object
+     * @param budget limits for reading the file, null if there are none
+     * @throws IOException if the file can't be read
+     */
+    public MetadataReader(File file, ExtractionBudget budget) throws IOException {
+        tracker = budget == null ? null : budget.start();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            length = channel.size();
+            fileType = detectFileType();
+        } catch(IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Get the format of the file detected from its magic bytes.
+     * @return file type, FileType.Unknown if it wasn't detected
+     */
+    public FileType getFileType() {
+        return fileType;
+    }
+
+    /**
+     * Read the metadata with the library's reader for the file's format.
+     * @return metadata object, null if the format is unknown or the metadata can't be read
+     */
+    public Metadata readMetadata() {
+        try {
+            switch(fileType) {
+                case Unknown:
+                    return null;
+                case Jpeg:
+                    // only the segments that can contain dates are decoded
+                    return JpegMetadataReader.readMetadata(new ChannelInputStream(0), jpegReaders);
+                case Tiff:
+                case Arw:
+                case Cr2:
+                case Nef:
+                case Orf:
+                    return TiffMetadataReader.readMetadata(new ChannelReader(0, length));
+                default:
+                    return ImageMetadataReader.readMetadata(new ChannelInputStream(0), length, fileType);
+            }
+        } catch(ImageProcessingException | IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read only the exif dates of JPEG files and TIFF based files, which is a lot faster
+     * than reading all their metadata with the library.
+     * @return all exif dates, can be empty, null if the format isn't supported or the file
+     * is unusual, then the metadata has to be read with readMetadata()
+     */
+    public List<Date> readExifDates() {
+        try {
+            switch(fileType) {
+                case Jpeg:
+                    return ExifDateReader.readJpeg(new ChannelReader(0, length));
+                case Tiff:
+                case Arw:
+                case Cr2:
+                case Nef:
+                    return ExifDateReader.readTiff(new ChannelReader(0, length));
+                default:
+                    return null;
+            }
+        } catch(IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read only the dates of ISO base media files, i.e. mp4, mov and 3gp videos, HEIF images
+     * and cr3 files, by going from box header to box header without reading the media data.
+     * @return the creation and modification time of videos and the exif dates of images, null
+     * if the format isn't supported or the file is unusual, then the metadata has to be read
+     * with readMetadata()
+     */
+    public List<Date> readBoxDates() {
+        try {
+            switch(fileType) {
+                case Mp4:
+                case QuickTime:
+                case Heif:
+                case Crx:
+                    BoxDateReader boxReader = new BoxDateReader(this, length, fileType);
+                    boxReader.read();
+                    List<Date> dates = new ArrayList<>(boxReader.getDates());
+                    for(long[] region : boxReader.getExifRegions()) {
+                        dates.addAll(ExifDateReader.readTiff(new ChannelReader(region[0], region[1] - region[0])));
+                    }
+                    return dates;
+                default:
+                    return null;
+            }
+        } catch(IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the metadata with the library's quicktime reader, no matter which format was
+     * detected. Some quicktime files (mov) can't be detected by their magic bytes.
+     * @return metadata object, null if it can't be read
+     */
+    public Metadata readQuickTimeMetadata() {
+        try {
+            return QuickTimeMetadataReader.readMetadata(new ChannelInputStream(0));
+        } catch(RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether the extraction budget was exceeded while reading the file. The
+     * read methods return null in that case, like for any other unreadable file.
+     * @throws ExtractionBudgetException if the budget was exceeded
+     */
+    public void checkBudget() throws ExtractionBudgetException {
+        if(tracker != null) tracker.check();
+    }
+
+    /**
+     * Close the file.
+     * @throws IOException if it can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Detect the file's format by reading the first bytes into the header buffer.
+     * @return file type
+     * @throws IOException if the file can't be read
+     */
+    private FileType detectFileType() throws IOException {
+        ByteBuffer header = headerBuffers.get();
+        header.clear();
+        while(header.hasRemaining() && channel.read(header, header.position()) > 0);
+        header.flip();
+        if(!header.hasRemaining()) return FileType.Unknown;
+        return FileTypeDetector.detectFileType(new ByteArrayInputStream(header.array(), 0, header.limit()));
+    }
+
+    /**
+     * Fill the buffer with data from the file starting at the position, until the buffer is
+     * full or the file ends.
+     * @param buffer buffer
+     * @param position position in the file
+     * @return number of bytes read
+     * @throws IOException if the file can't be read or the extraction budget is exceeded
+     */
+    int readAt(ByteBuffer buffer, long position) throws IOException {
+        if(tracker != null) tracker.charge(buffer.remaining());
+        int start = buffer.position();
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position() - start) <= 0) break;
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * Input stream that reads from the file channel with the thread's buffer. Skipping
+     * bytes only moves the position without reading them.
+     */
+    private class ChannelInputStream extends InputStream {
+        // buffer with the bytes read but not yet returned
+        private final ByteBuffer buffer = readBuffers.get();
+        // position in the file of the buffer's end
+        private long position;
+
+        /**
+         * ChannelInputStream constructor
+         * @param position position in the file to start reading at
+         */
+        ChannelInputStream(long position) {
+            this.position = position;
+            buffer.clear().flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if(!buffer.hasRemaining() && !fill()) return -1;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(len == 0) return 0;
+            if(!buffer.hasRemaining()) {
+                // large reads go directly into the array
+                if(len >= buffer.capacity()) {
+                    int read = readAt(ByteBuffer.wrap(b, off, len), position);
+                    position += read;
+                    return read == 0 ? -1 : read;
+                }
+                if(!fill()) return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipping doesn't read anything, but a parser looping over the file skips a lot
+            if(tracker != null) tracker.check();
+            if(n <= 0) return 0;
+            long buffered = Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + (int) buffered);
+            long skipped = Math.min(n - buffered, Math.max(0, length - position));
+            position += skipped;
+            return buffered + skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, buffer.remaining() + Math.max(0, length - position));
+        }
+
+        /**
+         * Read the next bytes into the buffer.
+         * @return false if the file ended
+         * @throws IOException if the file can't be read
+         */
+        private boolean fill() throws IOException {
+            buffer.clear();
+            int read = readAt(buffer, position);
+            buffer.flip();
+            position += read;
+            return read > 0;
+        }
+    }
+
+    /**
+     * Random access reader for the library's TIFF reader. A window of the file is kept in
+     * the thread's buffer and only moved if a read is outside of it. The reader can be
+     * limited to a part of the file, e.g. an exif structure inside another format.
+     */
+    private class ChannelReader extends RandomAccessReader {
+        // buffer with the window of the file
+        private final ByteBuffer window = readBuffers.get();
+        // position in the file of the reader's first byte
+        private final long start;
+        // number of bytes of the reader
+        private final long size;
+        // position of the window relative to the start
+        private long windowStart = 0;
+        // number of valid bytes in the window
+        private int windowLength = 0;
+
+        /**
+         * ChannelReader constructor
+         * @param start position in the file of the reader's first byte
+         * @param size number of bytes of the reader
+         */
+        ChannelReader(long start, long size) {
+            this.start = start;
+            this.size = size;
+        }
+
+        @Override
+        public int toUnshiftedOffset(int localOffset) {
+            return localOffset;
+        }
+
+        @Override
+        public byte getByte(int index) throws IOException {
+            validateIndex(index, 1);
+            moveWindow(index, 1);
+            return window.get((int) (index - windowStart));
+        }
+
+        @Override
+        public byte[] getBytes(int index, int count) throws IOException {
+            validateIndex(index, count);
+            byte[] bytes = new byte[count];
+            if(count > window.capacity()) {
+                if(readAt(ByteBuffer.wrap(bytes), start + index) != count) throw new BufferBoundsException(index, count, size);
+                return bytes;
+            }
+            moveWindow(index, count);
+            window.get((int) (index - windowStart), bytes, 0, count);
+            return bytes;
+        }
+
+        @Override
+        protected void validateIndex(int index, int bytesRequested) throws IOException {
+            if(!isValidIndex(index, bytesRequested)) throw new BufferBoundsException(index, bytesRequested, size);
+        }
+
+        @Override
+        protected boolean isValidIndex(int index, int bytesRequested) {
+            return bytesRequested >= 0 && index >= 0 && (long) index + bytesRequested <= size;
+        }
+
+        @Override
+        public long getLength() {
+            return size;
+        }
+
+        /**
+         * Make sure the bytes are in the window, otherwise read the window starting at the
+         * index aligned to 4KB.
+         * @param index position relative to the start
+         * @param count number of bytes
+         * @throws IOException if the file can't be read
+         */
+        private void moveWindow(int index, int count) throws IOException {
+            if(index >= windowStart && index + count <= windowStart + windowLength) return;
+            long aligned = index & ~0xFFFL;
+            if(index + count > aligned + window.capacity()) aligned = index;
+            windowStart = Math.max(0, Math.min(aligned, size - window.capacity()));
+            window.clear();
+            windowLength = (int) Math.min(readAt(window, start + windowStart), size - windowStart);
+        }
+    }
+}
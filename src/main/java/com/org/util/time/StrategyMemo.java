@@ -0,0 +1,143 @@
+package com.org.util.time;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers for each directory and file extension where the DateExtractor found the files'
+ * datetimes. Directories are usually homogeneous, e.g. all files in a WhatsApp folder have
+ * their date in the name but no metadata, while all files in a camera folder have exif
+ * metadata. If the metadata of several files in a row had no datetime but their names had
+ * one, the names of the following files are read first and their metadata isn't read at all.
+ * If a name has no datetime, the file is read as usual, and if its metadata has a datetime
+ * the directory's metadata is read first again. Files read by name first are dated by their
+ * name even if their metadata has another datetime, so the memo is only used on request and
+ * with a single thread, where the files are always read in the same order.
+ */
+public class StrategyMemo {
+    // number of files in a row dated by their name before the metadata is skipped
+    public static final int LEARN_THRESHOLD = 4;
+
+    // strategy of each directory and file extension
+    private final Map<String, Strategy> strategies = new ConcurrentHashMap<>();
+    // files read with the metadata first, and how many of them had a datetime in it
+    private final LongAdder metadataFirst = new LongAdder();
+    private final LongAdder metadataHits = new LongAdder();
+    // files read with the name first, and how many of them had a datetime in it
+    private final LongAdder fileNameFirst = new LongAdder();
+    private final LongAdder fileNameHits = new LongAdder();
+
+    /**
+     * Get the strategy for the file's directory and extension.
+     * @param file file object
+     * @param extension the file's extension
+     * @return strategy object
+     */
+    Strategy get(File file, String extension) {
+        String key = file.getAbsoluteFile().getParent() + File.pathSeparator + extension;
+        return strategies.computeIfAbsent(key, k -> new Strategy());
+    }
+
+    /**
+     * Get the number of directory and extension combinations seen.
+     * @return number of strategies
+     */
+    public int size() {
+        return strategies.size();
+    }
+
+    /**
+     * Get the number of files whose name was read first, without reading their metadata.
+     * @return number of files
+     */
+    public long getFileNameFirst() {
+        return fileNameFirst.sum();
+    }
+
+    /**
+     * Get the number of files whose name was read first and had a datetime.
+     * @return number of files
+     */
+    public long getFileNameHits() {
+        return fileNameHits.sum();
+    }
+
+    /**
+     * Get the number of files whose metadata was read first.
+     * @return number of files
+     */
+    public long getMetadataFirst() {
+        return metadataFirst.sum();
+    }
+
+    /**
+     * Get the number of files whose metadata was read first and had a datetime.
+     * @return number of files
+     */
+    public long getMetadataHits() {
+        return metadataHits.sum();
+    }
+
+    /**
+     * Summary of the strategies used and how often they found a datetime.
+     * @return one line report
+     */
+    public String report() {
+        return String.format("date strategies: %d directories, metadata first %d files (%.1f%% hits), name first %d files (%.1f%% hits)",
+                size(), getMetadataFirst(), percentage(getMetadataHits(), getMetadataFirst()),
+                getFileNameFirst(), percentage(getFileNameHits(), getFileNameFirst()));
+    }
+
+    private static double percentage(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+
+    /**
+     * Strategy of a directory and file extension. The DateExtractor asks whether to read the
+     * name first and reports where the datetime was found.
+     */
+    class Strategy {
+        // true if the name is read before the metadata
+        private boolean fileNameFirst = false;
+        // number of files in a row dated by their name after their metadata was read
+        private int fileNameStreak = 0;
+
+        /**
+         * Check whether the file's name should be read before its metadata.
+         * @return true if the metadata should be skipped if the name has a datetime
+         */
+        synchronized boolean isFileNameFirst() {
+            return fileNameFirst;
+        }
+
+        /**
+         * The name was read first.
+         * @param hit true if it had a datetime, otherwise the file is read as usual
+         */
+        void fileNameRead(boolean hit) {
+            StrategyMemo.this.fileNameFirst.increment();
+            if(hit) fileNameHits.increment();
+        }
+
+        /**
+         * The metadata was read first, learn from where the datetime was found.
+         * @param source where the datetime was found
+         */
+        void metadataRead(DateSource source) {
+            metadataFirst.increment();
+            if(source == DateSource.METADATA) metadataHits.increment();
+            synchronized(this) {
+                if(source == DateSource.FILE_NAME) {
+                    fileNameStreak++;
+                    if(fileNameStreak >= LEARN_THRESHOLD) fileNameFirst = true;
+                } else if(source == DateSource.METADATA) {
+                    // the directory has files with metadata, so it's read first again
+                    fileNameStreak = 0;
+                    fileNameFirst = false;
+                }
+            }
+        }
+    }
+}
@@ -8,9 +8,9 @@ import java.util.concurrent.TimeUnit;
 public class ProgressBar implements Observer {
     private StringBuilder bar;
     private double percent, max;
-    private Subject<Integer> s;
+    private Subject<? extends Number> s;
 
-    public ProgressBar(int length, int max) {
+    public ProgressBar(int length, long max) {
         bar = initializeBar(length);
         this.max = max;
     }
@@ -20,13 +20,13 @@ public class ProgressBar implements Observer {
         return str.append('[').append(" ".repeat(length)).append(']');
     }
 
-    private double roundedPercentage(int curr) {
+    private double roundedPercentage(long curr) {
         return 0.0001*(Math.round((curr/max)/0.0001));
     }
 
     @Override
     public void update() {
-        double updated = roundedPercentage(s.getState());
+        double updated = roundedPercentage(s.getState().longValue());
         if(updated != percent) {
             percent = updated;
             updateBar();
@@ -58,7 +58,7 @@ public class ProgressBar implements Observer {
         }
     }
 
-    public void setSubject(Subject<Integer> s) {
+    public void setSubject(Subject<? extends Number> s) {
         if(s == null) return;
         this.s = s;
     }
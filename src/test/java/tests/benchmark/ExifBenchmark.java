@@ -0,0 +1,95 @@
+package tests.benchmark;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.mp4.Mp4Directory;
+import com.org.util.time.MetadataReader;
+import tests.resources.GenerateMetadataFiles;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Compares reading the dates of JPEG, TIFF, HEIF and mp4 files with the library against
+ * reading only the dates with the MetadataReader. Not part of the test suite, run it with the
+ * number of files and optionally a directory with real images as arguments, e.g.
+ * "java tests.benchmark.ExifBenchmark 2000 /path/to/photos".
+ */
+public class ExifBenchmark {
+    // number of times all files are read
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        File[] files;
+        if(args.length > 1) {
+            files = new File(args[1]).listFiles(File::isFile);
+        } else {
+            File dir = new File("test-bin/benchmark");
+            dir.mkdirs();
+            files = new File[count];
+            for(int i = 0; i < count; i++) {
+                String original = String.format("2020:%02d:%02d 10:00:00", i%12+1, i%28+1);
+                String[] extensions = {".jpg", ".tif", ".heic", ".mp4"};
+                files[i] = new File(dir, i + extensions[i%4]);
+                if(i%4 == 0) GenerateMetadataFiles.jpeg(files[i], "2021:05:01 10:00:00", original, original);
+                else if(i%4 == 1) GenerateMetadataFiles.tiff(files[i], i%8 == 1, "2021:05:01 10:00:00", original, original);
+                else if(i%4 == 2) GenerateMetadataFiles.heif(files[i], "2021:05:01 10:00:00", original, original);
+                else GenerateMetadataFiles.mp4(files[i], "isom", LocalDateTime.of(2020, i%12+1, i%28+1, 10, 0), 1024*1024, false);
+            }
+        }
+
+        for(int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            long libraryDates = 0;
+            for(File file : files) libraryDates += libraryDates(file);
+            long library = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long exifDates = 0, fallbacks = 0;
+            for(File file : files) {
+                try(MetadataReader reader = new MetadataReader(file)) {
+                    List<Date> dates = reader.readExifDates();
+                    if(dates == null) dates = reader.readBoxDates();
+                    if(dates == null) fallbacks++;
+                    else exifDates += dates.size();
+                }
+            }
+            long exif = System.nanoTime() - start;
+
+            System.out.printf("round %d: %d files, library %d ms (%d dates), date readers %d ms (%d dates, %d fallbacks), speedup %.1fx%n",
+                    round+1, files.length, library/1000000, libraryDates, exif/1000000, exifDates, fallbacks, (double) library/exif);
+        }
+    }
+
+    /**
+     * Read all metadata of the file with the library and count the exif and video dates.
+     * @param file file object
+     * @return number of dates
+     */
+    private static int libraryDates(File file) {
+        int[] tags = {ExifIFD0Directory.TAG_DATETIME, ExifIFD0Directory.TAG_DATETIME_ORIGINAL, ExifIFD0Directory.TAG_DATETIME_DIGITIZED};
+        int dates = 0;
+        try {
+            Metadata md = ImageMetadataReader.readMetadata(file);
+            for(Directory directory : md.getDirectories()) {
+                if(directory instanceof Mp4Directory) {
+                    if(directory.getDate(Mp4Directory.TAG_CREATION_TIME) != null) dates++;
+                    if(directory.getDate(Mp4Directory.TAG_MODIFICATION_TIME) != null) dates++;
+                    continue;
+                }
+                for(int tag : tags) {
+                    if(directory.getDate(tag, TimeZone.getDefault()) != null) dates++;
+                }
+            }
+        } catch(Exception e) {
+            return 0;
+        }
+        return dates;
+    }
+}
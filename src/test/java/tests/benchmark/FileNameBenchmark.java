@@ -0,0 +1,126 @@
+package tests.benchmark;
+
+import com.org.util.time.FileNameDateScanner;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compares the FileNameDateScanner with the previous implementation of
+ * DateExtractor.getDate(String), which split the name with a regex and parsed the numbers
+ * with a DateTimeFormatter. Not part of the test suite, run it optionally with a directory
+ * whose file names are used as corpus, e.g. "java tests.benchmark.FileNameBenchmark /path/to/photos".
+ * Names for which both return a different datetime are printed.
+ */
+public class FileNameBenchmark {
+    // number of times all names are scanned
+    private static final int ROUNDS = 10;
+    // names from real phones, cameras and messengers
+    private static final String[] CORPUS = {
+            "IMG_20220805_163825.jpg",
+            "IMG_20220805_163825_HDR.jpg",
+            "VID_20211224_181503.mp4",
+            "PXL_20220805_163825123.MP.jpg",
+            "PXL_20230101_000512345.NIGHT.jpg",
+            "Screenshot_2022-02-05-05-42-25-713_com.miui.gallery.jpg",
+            "Screenshot_20220205-054225.png",
+            "Screenshot 2022-08-05 at 16.38.25.png",
+            "Photo 2022-08-05 at 16.38.25.jpeg",
+            "signal-2022-08-05-163825.jpg",
+            "IMG-20220805-WA0001.jpg",
+            "VID-20211224-WA0013.mp4",
+            "PTT-20220101-WA0002.opus",
+            "20220805_163825.jpg",
+            "2022-08-05 16.38.25.jpg",
+            "2022-08-05T16:38:25.jpg",
+            "DSC01234.JPG",
+            "DSC_0042.NEF",
+            "IMG_1234.HEIC",
+            "GOPR0042.MP4",
+            "P1000123.RW2",
+            "_MG_4711.CR2",
+            "DCIM_1234_5678.jpg",
+            "Holiday 2022-08-05.png",
+            "document.pdf",
+            "notes.txt"};
+
+    public static void main(String[] args) {
+        List<String> names = new ArrayList<>(List.of(CORPUS));
+        if(args.length > 0) {
+            for(File f : new File(args[0]).listFiles()) names.add(f.getName());
+        }
+
+        for(String name : names) {
+            LocalDateTime legacy = legacyGetDate(name);
+            LocalDateTime scanned = FileNameDateScanner.DEFAULT.scan(name);
+            if(!Objects.equals(legacy, scanned)) System.out.println("different: " + name + " legacy " + legacy + ", scanner " + scanned);
+        }
+
+        int repetitions = Math.max(1, 1000000 / names.size());
+        for(int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for(int r = 0; r < repetitions; r++) {
+                for(String name : names) if(legacyGetDate(name) != null) found++;
+            }
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int scanned = 0;
+            for(int r = 0; r < repetitions; r++) {
+                for(String name : names) if(FileNameDateScanner.DEFAULT.scan(name) != null) scanned++;
+            }
+            long scanner = System.nanoTime() - start;
+
+            long count = (long) repetitions * names.size();
+            System.out.printf("round %d: %d names, legacy %d ns/name (%d found), scanner %d ns/name (%d found), speedup %.1fx%n",
+                    round+1, count, legacy/count, found, scanner/count, scanned, (double) legacy/scanner);
+        }
+    }
+
+    /**
+     * The previous implementation of DateExtractor.getDate(String).
+     * @param str file name
+     * @return the datetime, null if none was found
+     */
+    private static LocalDateTime legacyGetDate(String str) {
+        String[] nums = str.split("\\D+");
+        List<String> timeUnits = new ArrayList<>();
+        boolean first = true;
+        int i = 0;
+        while(i < nums.length) {
+            if(first) {
+                if(nums[i].length() < 4) {
+                    i++;
+                } else {
+                    timeUnits.add(nums[i].substring(0, 4));
+                    nums[i] = nums[i].substring(4);
+                    first = false;
+                }
+            } else {
+                if(nums[i].length() < 2) {
+                    i++;
+                } else {
+                    timeUnits.add(nums[i].substring(0, 2));
+                    nums[i] = nums[i].substring(2);
+                }
+            }
+        }
+        if(timeUnits.size() < 6) return null;
+        timeUnits = timeUnits.subList(0, 6);
+        String strDate = timeUnits.toString();
+        strDate = strDate.substring(1, strDate.length()-1);
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy, MM, dd, HH, mm, ss");
+        LocalDateTime ldt = null;
+        try {
+            ldt = LocalDateTime.parse(strDate, formatter);
+        } catch(Exception e) {
+        }
+        if(ldt != null && ldt.getYear() > LocalDateTime.now().getYear()) ldt = null;
+        return ldt;
+    }
+}
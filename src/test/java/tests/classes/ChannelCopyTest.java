@@ -0,0 +1,114 @@
+package tests.classes;
+
+import com.org.observer.Observer;
+import com.org.organizer.copy.ChannelCopy;
+import com.org.util.time.AttributeMark;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tests.resources.GenerateExampleFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * This class contains the tests for the ChannelCopy class.
+ */
+public class ChannelCopyTest {
+    // directory the copies are written to
+    private static final String destination = "test-bin/channelCopy";
+    // source file containing four characters
+    private static final Path source = Path.of(GenerateExampleFiles.testFilesPath, "txt", "test4.txt");
+
+    /**
+     * Generate the example files and clear the destination folder.
+     */
+    @BeforeAll
+    public static void prepare() {
+        GenerateExampleFiles.generate();
+        File dir = new File(destination);
+        if(dir.exists()) {
+            for(File f : dir.listFiles()) f.delete();
+        } else {
+            dir.mkdirs();
+        }
+    }
+
+    /**
+     * The copy must have the same content and modified time. With a chunk size of one byte,
+     * the observers are notified once per byte.
+     */
+    @Test
+    public void chunkedCopyTest() throws IOException {
+        ChannelCopy copy = new ChannelCopy(false, 1);
+        int[] updates = new int[1];
+        Observer observer = () -> updates[0]++;
+        copy.register(observer);
+
+        Path target = Path.of(destination, "chunked.txt");
+        copy.execute(source, target);
+
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+        assertEquals(Files.getLastModifiedTime(source), Files.getLastModifiedTime(target));
+        assertEquals(4, updates[0]);
+        assertEquals(4L, copy.getState());
+    }
+
+    /**
+     * Existing files are only overwritten if replacing is enabled, skipped files count as processed.
+     */
+    @Test
+    public void replaceTest() throws IOException {
+        Path target = Path.of(destination, "replace.txt");
+        Files.writeString(target, "old content");
+
+        ChannelCopy skipping = new ChannelCopy();
+        assertThrows(FileAlreadyExistsException.class, () -> skipping.execute(source, target));
+        assertEquals("old content", Files.readString(target));
+        // the skipped bytes are reported, so the progress still reaches the total size
+        assertEquals(Files.size(source), skipping.getState());
+
+        new ChannelCopy(true).execute(source, target);
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+        // the replaced file was moved over the old one, no temporary file is left
+        assertEquals(0, new File(destination).listFiles((dir, name) -> name.endsWith(".copy")).length);
+    }
+
+    /**
+     * A hard link to the source is already the same file, replacing it must not truncate the source.
+     */
+    @Test
+    public void hardLinkTest() throws IOException {
+        Path linkSource = Path.of(destination, "linkSource.txt"), link = Path.of(destination, "link.txt");
+        Files.copy(source, linkSource);
+        Files.createLink(link, linkSource);
+
+        ChannelCopy copy = new ChannelCopy(true);
+        copy.execute(linkSource, link);
+        assertEquals(Files.size(source), Files.size(linkSource));
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(link));
+        assertEquals(Files.size(source), copy.getState());
+    }
+
+    /**
+     * User defined attributes like the datetime mark are copied along with the data.
+     */
+    @Test
+    public void attributeTest() throws IOException {
+        Path attrSource = Path.of(destination, "attrSource.txt"), target = Path.of(destination, "attr.txt");
+        Files.copy(source, attrSource);
+        assumeTrue(AttributeMark.isSupported(attrSource));
+        AttributeMark mark = new AttributeMark();
+        LocalDateTime dateTime = LocalDateTime.of(2021, 3, 4, 5, 6, 7);
+        mark.write(attrSource.toFile(), dateTime);
+
+        new ChannelCopy().execute(attrSource, target);
+        assertEquals(dateTime, mark.read(target.toFile()));
+    }
+}
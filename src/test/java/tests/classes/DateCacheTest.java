@@ -0,0 +1,143 @@
+package tests.classes;
+
+import com.org.util.time.DateCache;
+import com.org.util.time.DateExtractor;
+import com.org.util.time.DateSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains the tests for the DateCache class.
+ */
+public class DateCacheTest {
+    // directory with the cache and the test files
+    private static final String root = "test-bin/dateCache";
+
+    /**
+     * Start every test with an empty directory.
+     */
+    @BeforeEach
+    public void prepare() {
+        File dir = new File(root);
+        if(dir.exists()) {
+            for(File f : dir.listFiles()) f.delete();
+        } else {
+            dir.mkdirs();
+        }
+    }
+
+    /**
+     * Entries must be found again after the cache was closed and opened, also when they aren't in
+     * memory anymore. Modifying the file changes its key.
+     */
+    @Test
+    public void persistTest() throws IOException {
+        File file = new File(root, "a.txt");
+        Files.writeString(file.toPath(), "abc");
+        File failed = new File(root, "b.jpg");
+        Files.writeString(failed.toPath(), "abc");
+        LocalDateTime ldt = LocalDateTime.of(2021, 3, 28, 2, 30, 15, 123456789);
+
+        try(DateCache cache = DateCache.open(root)) {
+            cache.put(DateCache.key(file), ldt, DateSource.METADATA);
+            cache.put(DateCache.key(failed), null, DateSource.FAILED);
+        }
+
+        // only one entry in memory, so the other one has to be read from the file
+        try(DateCache cache = DateCache.open(root, 1)) {
+            assertEquals(2, cache.size());
+            DateCache.Entry entry = cache.get(DateCache.key(file));
+            assertEquals(ldt, entry.dateTime);
+            assertEquals(DateSource.METADATA, entry.source);
+            DateCache.Entry failedEntry = cache.get(DateCache.key(failed));
+            assertNull(failedEntry.dateTime);
+            assertEquals(DateSource.FAILED, failedEntry.source);
+            assertEquals(ldt, cache.get(DateCache.key(file)).dateTime);
+
+            file.setLastModified(file.lastModified() - 5000);
+            assertNull(cache.get(DateCache.key(file)));
+        }
+    }
+
+    /**
+     * Compacting removes superseded records, evicting removes old records, and an incomplete
+     * record at the end of the log is ignored.
+     */
+    @Test
+    public void compactTest() throws IOException {
+        File file = new File(root, "a.txt");
+        Files.writeString(file.toPath(), "abc");
+        DateCache.Key key = DateCache.key(file);
+
+        try(DateCache cache = DateCache.open(root)) {
+            cache.put(key, LocalDateTime.of(2020, 1, 1, 0, 0), DateSource.FILE_NAME);
+            cache.put(key, LocalDateTime.of(2021, 1, 1, 0, 0), DateSource.LAST_MODIFIED);
+            assertEquals(2, cache.recordCount());
+            assertEquals(1, cache.compact());
+            assertEquals(1, cache.recordCount());
+            assertEquals(LocalDateTime.of(2021, 1, 1, 0, 0), cache.get(key).dateTime);
+        }
+
+        // simulate a crash while appending
+        File log = DateCache.getFile(root);
+        try(RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.setLength(raf.length() + 7);
+        }
+        try(DateCache cache = DateCache.open(root)) {
+            assertEquals(1, cache.size());
+            assertEquals(LocalDateTime.of(2021, 1, 1, 0, 0), cache.get(key).dateTime);
+            Thread.sleep(5);
+            assertEquals(1, cache.evict(1));
+            assertEquals(0, cache.size());
+            assertNull(cache.get(key));
+        } catch(InterruptedException ie) {
+            fail(ie);
+        }
+    }
+
+    /**
+     * The DateExtractor must return the cached datetime instead of reading the file.
+     */
+    @Test
+    public void extractorTest() throws IOException {
+        File file = new File(root, "IMG_2022-08-05-16-38-25.txt");
+        Files.writeString(file.toPath(), "abc");
+        LocalDateTime cached = LocalDateTime.of(2010, 5, 5, 5, 5);
+
+        try(DateCache cache = DateCache.open(root)) {
+            DateExtractor.setDateCache(cache);
+            assertEquals(LocalDateTime.of(2022, 8, 5, 16, 38, 25), DateExtractor.getDate(file));
+            assertEquals(DateSource.FILE_NAME, cache.get(DateCache.key(file)).source);
+
+            // a different value in the cache shows that the cache is used
+            cache.put(DateCache.key(file), cached, DateSource.METADATA);
+            assertEquals(cached, DateExtractor.getDate(file));
+
+            // ignoring the marks reads the file again and replaces the entry
+            DateExtractor.setIgnoreMark(true);
+            assertEquals(LocalDateTime.of(2022, 8, 5, 16, 38, 25), DateExtractor.getDate(file));
+            assertEquals(DateSource.FILE_NAME, cache.get(DateCache.key(file)).source);
+            DateExtractor.setIgnoreMark(false);
+
+            // a failed extraction is never taken from the cache
+            cache.put(DateCache.key(file), null, DateSource.FAILED);
+            assertEquals(LocalDateTime.of(2022, 8, 5, 16, 38, 25), DateExtractor.getDate(file));
+
+            // a renamed file keeps its key, the datetime is parsed from the new name
+            File renamed = new File(root, "IMG_2019-01-02-03-04-05.txt");
+            assertTrue(file.renameTo(renamed));
+            assertEquals(LocalDateTime.of(2019, 1, 2, 3, 4, 5), DateExtractor.getDate(renamed));
+        } finally {
+            DateExtractor.setIgnoreMark(false);
+            DateExtractor.setDateCache(null);
+        }
+    }
+}
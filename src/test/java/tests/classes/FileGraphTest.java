@@ -4,15 +4,17 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import com.org.util.graph.FileGraph;
 import com.org.util.graph.FileGraphFactory;
+import com.org.util.graph.FileGraphSnapshot;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * This class contains all tests for the FileGraph class and its functionality.
@@ -75,8 +77,8 @@ public class FileGraphTest {
      * @param paths list with all folder paths
      */
     public void allNodePaths(FileGraph.Node node, List<String> paths) {
-        paths.add(node.path);
-        for(FileGraph.Node next : node.children.values()) allNodePaths(next, paths);
+        paths.add(node.getPath());
+        for(FileGraph.Node next : node.getChildren()) allNodePaths(next, paths);
     }
 
     /**
@@ -94,8 +96,8 @@ public class FileGraphTest {
      * @param node
      */
     public void correctLeaf(FileGraph.Node node) {
-        assertEquals(node.children.isEmpty(), node.leaf);
-        for(FileGraph.Node next : node.children.values()) correctLeaf(next);
+        assertEquals(!node.hasChildren(), node.leaf);
+        for(FileGraph.Node next : node.getChildren()) correctLeaf(next);
     }
 
     /**
@@ -107,20 +109,140 @@ public class FileGraphTest {
         LocalDateTime dateTime0 = LocalDateTime.of(2021, 12, 12, 20, 50);
         FileGraph.Node node_12_11_2021 = fileGraph.getNode(dateTime0);
         // should return the node with the path "2021/2021_dez/2021_dez_12"
-        assertEquals(absoluteExamplePaths[4], node_12_11_2021.path);
+        assertEquals(absoluteExamplePaths[4], node_12_11_2021.getPath());
 
         // 20/02/2021 19:25
         LocalDateTime dateTime1 = LocalDateTime.of(2021, 2, 20, 19, 25);
         FileGraph.Node node_02_2021 = fileGraph.getNode(dateTime1);
         // should return the node with the path "2021/2021_feb" because "2021" is not a leaf node
         // the node for this path doesn't exist but there are sibling nodes "2021/2021_jan" and "2021/2021_dez"
-        assertEquals(absoluteExamplePaths[0] + File.separator + "2021_feb", node_02_2021.path);
+        assertEquals(absoluteExamplePaths[0] + File.separator + "2021_feb", node_02_2021.getPath());
 
         // 05/07/2020 16:34
         LocalDateTime dateTime2 = LocalDateTime.of(2020, 7, 5, 16, 34);
         FileGraph.Node node_2020 = fileGraph.getNode(dateTime2);
         // a folder for the year "2020" doesn't exist, so the graph should return a new node with a path
         // for "2020"
-        assertEquals(Path.of(root).toAbsolutePath() + File.separator + "2020", node_2020.path);
+        assertEquals(Path.of(root).toAbsolutePath() + File.separator + "2020", node_2020.getPath());
+    }
+
+    /**
+     * A graph read from the snapshot must be identical to the graph built from the filesystem. If a folder is
+     * added to the root afterwards, the snapshot is invalid.
+     */
+    @Test
+    public void snapshotTest() {
+        FileGraph built = new FileGraph(root);
+        assertTrue(FileGraphSnapshot.save(built));
+        FileGraph loaded = FileGraphSnapshot.load(root);
+        assertNotNull(loaded);
+
+        List<String> builtPaths = new ArrayList<>(), loadedPaths = new ArrayList<>();
+        allNodePaths(built.getRoot(), builtPaths);
+        allNodePaths(loaded.getRoot(), loadedPaths);
+        builtPaths.sort(null);
+        loadedPaths.sort(null);
+        assertEquals(builtPaths, loadedPaths);
+        correctLeaf(loaded.getRoot());
+        assertEquals(absoluteExamplePaths[4], loaded.getNode(LocalDateTime.of(2021, 12, 12, 20, 50)).getPath());
+        assertEquals(3, loaded.getNode(LocalDateTime.of(2021, 12, 12, 20, 50)).depth);
+
+        // the snapshot doesn't know about the new folder
+        File newFolder = new File(root, "2019");
+        newFolder.mkdir();
+        assertNull(FileGraphSnapshot.load(root));
+
+        // cleanup
+        newFolder.delete();
+        FileGraphSnapshot.invalidate(root);
+    }
+
+    /**
+     * A refresh must find the changes in modified folders, but folders that haven't been modified are not read
+     * again.
+     */
+    @Test
+    public void refreshChangedTest() throws IOException {
+        // make all folders look like they haven't been modified for a while
+        long past = System.currentTimeMillis() - 3600000;
+        for(String path : absoluteExamplePaths) new File(path).setLastModified(past);
+        new File(root).setLastModified(past);
+        FileGraph graph = new FileGraph(root);
+        FileGraph.Node unchanged = findNode(graph.getRoot(), absoluteExamplePaths[1]);
+        assertEquals(past - past%1000, unchanged.modified - unchanged.modified%1000);
+
+        // add a file and a folder to a leaf
+        File newFile = new File(absoluteExamplePaths[4], "newFile.txt");
+        File newFolder = new File(absoluteExamplePaths[4], "2021_dez_12_20h");
+        Files.writeString(newFile.toPath(), "abc");
+        newFolder.mkdir();
+        // an unmodified folder is not read again, so the wrong value stays
+        unchanged.fileCount = 5;
+        graph.refreshChanged();
+
+        FileGraph.Node changed = findNode(graph.getRoot(), absoluteExamplePaths[4]);
+        assertEquals(1, changed.fileCount);
+        assertEquals(3, changed.sizeTotal);
+        assertFalse(changed.leaf);
+        assertEquals(2, changed.entryCount);
+        assertEquals(5, unchanged.fileCount);
+        assertEquals(6, graph.getRoot().fileCountSubTree);
+
+        // cleanup
+        newFile.delete();
+        newFolder.delete();
+    }
+
+    /**
+     * Folder names are built from the time units, folders with other names keep their name. Children are
+     * found by their time unit or their name, and renaming a folder doesn't change its subfolders' names.
+     */
+    @Test
+    public void nodeNameTest() {
+        FileGraph graph = new FileGraph(root);
+        FileGraph.Node dez = graph.getRoot().getChild("2021").getChild("2021_dez");
+        assertSame(dez, dez.getChild("2021_dez_12").getParent());
+        assertSame(dez.getChild("2021_dez_12"), dez.getChild(12));
+        assertEquals(absoluteExamplePaths[4], dez.getChild(12).getPath());
+        // a missing day below an inner node is added to the graph
+        assertSame(dez, graph.getNode(LocalDateTime.of(2021, 12, 1, 0, 0)).getParent());
+
+        // names that aren't the canonical time unit are stored as they are
+        FileGraph.Node invalid = dez.addChild("2021_dez_05");
+        FileGraph.Node other = dez.addChild("notes");
+        assertEquals("2021_dez_05", invalid.getName());
+        assertSame(invalid, dez.getChild("2021_dez_05"));
+        assertSame(other, dez.getChild("notes"));
+        assertNull(dez.getChild(5));
+        assertSame(other, dez.addChild("notes"));
+        assertEquals(4, dez.getChildCount());
+
+        // renaming an inner folder keeps the names of its subfolders
+        FileGraph.Node year = graph.getRoot().getChild("2021");
+        year.rename("2020");
+        assertSame(year, graph.getRoot().getChild(2020));
+        assertNull(graph.getRoot().getChild("2021"));
+        assertEquals("2021_dez", dez.getName());
+        assertSame(dez, year.getChild("2021_dez"));
+        assertEquals("2021_dez_12", dez.getChild("2021_dez_12").getName());
+
+        dez.removeChild(other);
+        assertNull(dez.getChild("notes"));
+        assertEquals(3, dez.getChildCount());
+    }
+
+    /**
+     * Search the subtree for the node with the given path.
+     * @param node current node
+     * @param path absolute path of the folder
+     * @return the node, null if it isn't in the subtree
+     */
+    private FileGraph.Node findNode(FileGraph.Node node, String path) {
+        if(node.getPath().equals(path)) return node;
+        for(FileGraph.Node child : node.getChildren()) {
+            FileGraph.Node found = findNode(child, path);
+            if(found != null) return found;
+        }
+        return null;
     }
 }
@@ -0,0 +1,70 @@
+package tests.classes;
+
+import com.org.util.time.FileNameDateScanner;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains the tests for the FileNameDateScanner class.
+ */
+public class FileNameDateScannerTest {
+
+    /**
+     * The default layouts find the datetimes of common camera, phone and messenger file names.
+     */
+    @Test
+    public void defaultLayoutsTest() {
+        FileNameDateScanner scanner = FileNameDateScanner.DEFAULT;
+        assertEquals(LocalDateTime.of(2022, 8, 5, 16, 38, 25), scanner.scan("IMG_20220805_163825.jpg"));
+        assertEquals(LocalDateTime.of(2022, 8, 5, 16, 38, 25), scanner.scan("PXL_20220805_163825123.MP.jpg"));
+        assertEquals(LocalDateTime.of(2022, 2, 5, 5, 42, 25), scanner.scan("Screenshot_2022-02-05-05-42-25-713_com.miui.gallery.jpg"));
+        assertEquals(LocalDateTime.of(2022, 8, 5, 16, 38, 25), scanner.scan("2022-08-05T16:38:25.jpg"));
+        assertEquals(LocalDateTime.of(2022, 8, 5, 16, 38, 25), scanner.scan("Photo 2022-08-05 at 16.38.25.jpeg"));
+        // the number before the date isn't a year
+        assertEquals(LocalDateTime.of(2022, 8, 5, 16, 38, 25), scanner.scan("DSC01234_20220805_163825.jpg"));
+        // WhatsApp and ISO dates without a time
+        assertEquals(LocalDateTime.of(2022, 8, 5, 0, 0), scanner.scan("IMG-20220805-WA0001.jpg"));
+        assertEquals(LocalDateTime.of(2021, 12, 24, 0, 0), scanner.scan("vid-20211224-wa0013.mp4"));
+        assertEquals(LocalDateTime.of(2022, 8, 5, 0, 0), scanner.scan("Holiday 2022-08-05.png"));
+
+        assertNull(scanner.scan("IMG_1234.jpg"));
+        assertNull(scanner.scan("notes.txt"));
+        assertNull(scanner.scan(""));
+    }
+
+    /**
+     * Invalid values are resolved like DateTimeFormatter does, and dates in the future are ignored.
+     */
+    @Test
+    public void resolveTest() {
+        FileNameDateScanner scanner = FileNameDateScanner.DEFAULT;
+        assertEquals(LocalDateTime.of(2021, 2, 28, 10, 0), scanner.scan("IMG_20210230_100000.jpg"));
+        assertEquals(LocalDateTime.of(2020, 2, 29, 10, 0), scanner.scan("IMG_20200231_100000.jpg"));
+        assertEquals(LocalDateTime.of(2021, 1, 2, 0, 0), scanner.scan("IMG_20210101_240000.jpg"));
+        assertNull(scanner.scan("IMG_20210101_240100.jpg"));
+        assertNull(scanner.scan("IMG_20211301_100000.jpg"));
+        assertNull(scanner.scan("IMG_20210132_100000.jpg"));
+        assertNull(scanner.scan("IMG_20210101_106000.jpg"));
+        assertNull(scanner.scan("IMG_" + (LocalDateTime.now().getYear() + 1) + "0101_100000.jpg"));
+    }
+
+    /**
+     * Custom layouts are tried in their order, invalid layouts are rejected.
+     */
+    @Test
+    public void customLayoutsTest() {
+        FileNameDateScanner scanner = new FileNameDateScanner("dd.MM.yyyy", "'scan_'yyyyMMdd");
+        assertEquals(LocalDateTime.of(2019, 3, 24, 0, 0), scanner.scan("Scan 24.03.2019.pdf"));
+        assertEquals(LocalDateTime.of(2019, 3, 24, 0, 0), scanner.scan("SCAN_20190324.pdf"));
+        assertNull(scanner.scan("IMG_20220805_163825.jpg"));
+
+        assertThrows(IllegalArgumentException.class, () -> new FileNameDateScanner("yyyyMM"));
+        assertThrows(IllegalArgumentException.class, () -> new FileNameDateScanner("yyMMdd"));
+        assertThrows(IllegalArgumentException.class, () -> new FileNameDateScanner("yyyy MM dd "));
+        assertThrows(IllegalArgumentException.class, () -> new FileNameDateScanner("'IMG_yyyyMMdd"));
+        assertThrows(IllegalArgumentException.class, () -> new FileNameDateScanner("yyyyMMddX"));
+    }
+}
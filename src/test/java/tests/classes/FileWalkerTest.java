@@ -0,0 +1,93 @@
+package tests.classes;
+
+import com.org.util.FileTools;
+import com.org.util.FileWalker;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tests.resources.GenerateExampleFiles;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * This class contains the tests for the FileWalker class.
+ */
+public class FileWalkerTest {
+    // directory containing the example files
+    private static final File exampleFiles = new File(GenerateExampleFiles.testFilesPath);
+
+    /**
+     * Generate the example files.
+     */
+    @BeforeAll
+    public static void prepare() {
+        GenerateExampleFiles.generate();
+    }
+
+    /**
+     * All files need to be visited with their correct size.
+     */
+    @Test
+    public void visitAllFilesTest() {
+        List<String> names = new ArrayList<>();
+        long[] size = new long[1];
+        new FileWalker().walk(exampleFiles.toPath(), (file, attrs) -> {
+            names.add(file.getFileName().toString());
+            size[0] += attrs.size();
+        });
+
+        // five txt files and the csv file, the txt file i contains i characters
+        assertEquals(6, names.size());
+        assertTrue(names.contains("testCsv.csv"));
+        assertEquals(0+1+2+3+4, size[0]);
+        assertEquals(size[0], FileTools.size(exampleFiles));
+    }
+
+    /**
+     * Pruned directories must not be entered and filtered files must not be visited.
+     */
+    @Test
+    public void filterTest() {
+        List<String> names = new ArrayList<>();
+        new FileWalker()
+                .setDirectoryFilter((dir, attrs) -> !dir.getFileName().toString().equals("csv"))
+                .setFileFilter((file, attrs) -> !file.getFileName().toString().equals("test0.txt"))
+                .walk(exampleFiles.toPath(), (file, attrs) -> names.add(file.getFileName().toString()));
+
+        assertEquals(4, names.size());
+        assertTrue(names.stream().allMatch(name -> name.endsWith(".txt")));
+    }
+
+    /**
+     * Directories are visited in pre and post order, with a max depth of 1 only the start folder is entered.
+     */
+    @Test
+    public void directoryOrderTest() {
+        List<String> events = new ArrayList<>();
+        new FileWalker().setMaxDepth(1).walk(exampleFiles.toPath(), new FileWalker.Visitor() {
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs) {
+                events.add("file");
+            }
+
+            @Override
+            public void preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                events.add("pre");
+            }
+
+            @Override
+            public void postVisitDirectory(Path dir) {
+                events.add("post");
+            }
+        });
+
+        // the example files are stored in subfolders, so no file is visited
+        assertEquals(List.of("pre", "post"), events);
+    }
+}
@@ -0,0 +1,118 @@
+package tests.classes;
+
+import com.org.organizer.Organizer;
+import com.org.organizer.ThresholdOrganizer;
+import com.org.organizer.copy.Copy;
+import com.org.parser.Configuration;
+import com.org.parser.command.CommandException;
+import com.org.parser.command.DeleteRepository;
+import com.org.util.FileTools;
+import com.org.util.consistency.ModelChecker;
+import com.org.util.consistency.ModelError;
+import com.org.util.graph.FileGraph;
+import com.org.util.graph.FileGraphFactory;
+import com.org.util.graph.LeafManifest;
+import com.org.util.time.DateExtractor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tests.resources.GenerateExampleFiles;
+import tests.resources.InitializeTestRepository;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains the tests for the manifests of the leaf folders.
+ */
+public class LeafManifestTest {
+    // path to the repository root to perform the tests
+    private static final String repoPath = Path.of("test-bin/repoLeafManifest").toAbsolutePath().toString();
+    // maximum folder size threshold
+    private static final int threshold = 1;
+    // configuration object needed for the command objects
+    private Configuration config;
+
+    /**
+     * Start every test with a new repository containing the example files.
+     */
+    @BeforeEach
+    public void prepare() {
+        DateExtractor.setIgnoreMark(false);
+        config = new Configuration();
+        FileGraph graph = FileGraphFactory.get(repoPath);
+        FileTools.delete(new File(repoPath));
+        graph.update(graph.getRoot());
+        InitializeTestRepository.generateRepository(repoPath, config, threshold);
+        Organizer organizer = new ThresholdOrganizer(new Copy(), threshold, repoPath);
+        organizer.allowFileExtension("txt");
+        organizer.copyAndOrganize(GenerateExampleFiles.testFilesPath);
+    }
+
+    /**
+     * The organizer writes a manifest into every leaf, listing the datetimes of its files.
+     */
+    @Test
+    public void organizeTest() {
+        File folder = new File(repoPath, "2010");
+        File file = new File(folder, "test2.txt");
+        assertTrue(LeafManifest.getFile(folder).isFile());
+        assertTrue(LeafManifest.getFile(new File(repoPath, "2023/2023_feb")).isFile());
+        // inner folders don't have a manifest
+        assertFalse(LeafManifest.getFile(new File(repoPath, "2023")).exists());
+
+        LeafManifest manifest = LeafManifest.load(folder);
+        assertEquals(1, manifest.size());
+        LocalDateTime ldt = manifest.getDate("test2.txt", file.length());
+        assertEquals(DateExtractor.getDate(file).truncatedTo(ChronoUnit.SECONDS), ldt.truncatedTo(ChronoUnit.SECONDS));
+        // the entry isn't used if the size changed
+        assertNull(manifest.getDate("test2.txt", file.length()+1));
+    }
+
+    /**
+     * The checker takes the datetimes from the manifest and only reads files whose size changed.
+     */
+    @Test
+    public void checkerTest() throws IOException {
+        File file = new File(repoPath, "2010/test2.txt");
+        LocalDateTime other = LocalDateTime.of(2015, 5, 5, 10, 0);
+        // the file's own datetime changes, but it's still listed with its old one
+        file.setLastModified(FileTools.epochMilli(other));
+        assertEquals(other, DateExtractor.getDate(file));
+
+        ModelChecker checker = new ModelChecker(config);
+        checker.checkAll();
+        FileGraph.Node node = FileGraphFactory.get(repoPath).getRoot().getChild("2010");
+        assertFalse(checker.getErrors().get(ModelError.FOLDER_CONTAINS_INCONSISTENT_DATES).contains(node));
+
+        // after the file's size changed it's read again
+        try(FileWriter out = new FileWriter(file, true)) {
+            out.write("changed");
+        }
+        file.setLastModified(FileTools.epochMilli(other));
+        checker.checkAll();
+        assertTrue(checker.getErrors().get(ModelError.FOLDER_CONTAINS_INCONSISTENT_DATES).contains(node));
+        assertEquals(other, LeafManifest.load(file.getParentFile()).getDate("test2.txt", file.length()));
+    }
+
+    /**
+     * Deleting the repository deletes the manifests of all folders.
+     */
+    @Test
+    public void deleteTest() throws CommandException, IOException {
+        new DeleteRepository().execute(new String[0], config);
+        assertFalse(new File(repoPath, Configuration.PROPERTY_FILE_NAME_STRING).exists());
+        try(Stream<Path> files = Files.walk(Path.of(repoPath))) {
+            assertTrue(files.noneMatch(p -> p.getFileName().toString().startsWith(Configuration.LEAF_MANIFEST_FILE_NAME_STRING)));
+        }
+        assertTrue(new File(repoPath, "2010/test2.txt").isFile());
+    }
+}
@@ -9,17 +9,26 @@ import com.org.util.consistency.ModelChecker;
 import com.org.util.consistency.ModelFixer;
 import com.org.util.graph.FileGraph;
 import com.org.util.graph.FileGraphFactory;
+import com.org.util.time.AttributeMark;
 import com.org.util.time.DateExtractor;
+import com.org.util.time.IMark;
+import com.org.util.time.LastModifiedMark;
 import com.org.util.time.MarkAllFiles;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import tests.resources.GenerateExampleFiles;
 import tests.resources.InitializeTestRepository;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
 
 import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 /**
  * This class tests the functionality of the MarkFiles class for marking files to increase
@@ -83,6 +92,131 @@ public class MarkTest {
         assertTrue(markedDfs(repo));
     }
 
+    /**
+     * Files marked with extended attributes keep their lastModified field, and marks in
+     * the lastModified field are migrated without reading the files again.
+     */
+    @Test
+    public void attributeMarkTest() throws IOException {
+        File dir = new File("test-bin/attributeMark");
+        dir.mkdirs();
+        Assumptions.assumeTrue(AttributeMark.isSupported(dir.toPath()));
+        File file = new File(dir, "IMG_20200102_030405.txt");
+        Files.writeString(file.toPath(), "text");
+        long lastModified = FileTools.epochMilli(LocalDateTime.of(2015, 6, 7, 8, 9, 10));
+        file.setLastModified(lastModified);
+
+        IMark previous = DateExtractor.getMark();
+        try {
+            DateExtractor.setMark(new AttributeMark());
+            DateExtractor.setIgnoreMark(false);
+            assertFalse(DateExtractor.fileIsMarked(file));
+            DateExtractor.markFile(file, LocalDateTime.of(2001, 2, 3, 4, 5, 6));
+            assertTrue(DateExtractor.fileIsMarked(file));
+            assertEquals(lastModified, file.lastModified());
+            assertEquals(LocalDateTime.of(2001, 2, 3, 4, 5, 6), DateExtractor.getDate(file));
+
+            // the old mark is reused, even though the name has another datetime
+            new LastModifiedMark().write(file, LocalDateTime.of(2011, 12, 13, 14, 15, 16));
+            DateExtractor.setIgnoreMark(true);
+            new MarkAllFiles(dir.getPath()).migrateFrom(new LastModifiedMark()).execute();
+            DateExtractor.setIgnoreMark(false);
+            assertEquals(LocalDateTime.of(2011, 12, 13, 14, 15, 16), new AttributeMark().read(file).withNano(0));
+
+            // without migration the file is read again
+            DateExtractor.setIgnoreMark(true);
+            new MarkAllFiles(dir.getPath()).execute();
+            DateExtractor.setIgnoreMark(false);
+            assertEquals(LocalDateTime.of(2020, 1, 2, 3, 4, 5), new AttributeMark().read(file));
+        } finally {
+            DateExtractor.setMark(previous);
+            DateExtractor.setIgnoreMark(false);
+            FileTools.delete(dir);
+        }
+    }
+
+    /**
+     * Marking in parallel marks every file, marking again incrementally only marks the
+     * files added or changed since.
+     */
+    @Test
+    public void incrementalMarkTest() throws IOException {
+        File dir = new File("test-bin/incrementalMark");
+        FileTools.delete(dir);
+        for(int d = 0; d < 4; d++) {
+            File sub = new File(dir, "dir" + d + "/sub");
+            sub.mkdirs();
+            for(int f = 0; f < 5; f++) Files.writeString(new File(sub, "IMG_2020010" + (d+1) + "_03040" + f + ".txt").toPath(), "text");
+        }
+
+        IMark previous = DateExtractor.getMark();
+        try {
+            for(IMark mark : new IMark[] {new LastModifiedMark(), new AttributeMark()}) {
+                if(mark instanceof AttributeMark && !AttributeMark.isSupported(dir.toPath())) continue;
+                DateExtractor.setMark(mark);
+                DateExtractor.setIgnoreMark(true);
+                MarkAllFiles marker = new MarkAllFiles(dir.getPath()).setThreads(4).setIncremental(true);
+                marker.execute();
+                assertEquals(20, marker.getState());
+                assertEquals(20, marker.getMarkedCount());
+                assertTrue(markedDfs(dir));
+
+                marker.execute();
+                assertEquals(20, marker.getState());
+                assertEquals(0, marker.getMarkedCount());
+
+                // a new file and a changed file
+                File added = new File(dir, "dir0/IMG_20210101_000000.txt");
+                Files.writeString(added.toPath(), "text");
+                File changed = new File(dir, "dir1/sub/IMG_20200102_030400.txt");
+                Files.writeString(changed.toPath(), "changed text");
+                marker.execute();
+                assertEquals(21, marker.getState());
+                assertEquals(2, marker.getMarkedCount());
+                DateExtractor.setIgnoreMark(false);
+                // the lastModified mark keeps its hash in the milliseconds
+                assertEquals(LocalDateTime.of(2021, 1, 1, 0, 0), DateExtractor.getDate(added).withNano(0));
+                assertTrue(markedDfs(dir));
+                added.delete();
+            }
+        } finally {
+            DateExtractor.setMark(previous);
+            DateExtractor.setIgnoreMark(false);
+            FileTools.delete(dir);
+        }
+    }
+
+    /**
+     * Linked directories are marked the same way the files are counted, so the progress reaches the
+     * number of counted files.
+     */
+    @Test
+    public void linkedDirectoryTest() throws IOException {
+        File dir = new File("test-bin/linkedMark"), target = new File("test-bin/linkedMarkTarget");
+        FileTools.delete(dir);
+        FileTools.delete(target);
+        new File(dir, "sub").mkdirs();
+        target.mkdirs();
+        Files.writeString(new File(dir, "sub/IMG_20200101_030400.txt").toPath(), "text");
+        Files.writeString(new File(target, "IMG_20200102_030400.txt").toPath(), "text");
+        Files.createSymbolicLink(new File(dir, "link").toPath(), target.getAbsoluteFile().toPath());
+
+        try {
+            DateExtractor.setIgnoreMark(true);
+            for(int threads : new int[] {1, 4}) {
+                MarkAllFiles marker = new MarkAllFiles(dir.getPath()).setThreads(threads);
+                marker.execute();
+                assertEquals(FileTools.countFiles(dir), marker.getState());
+                assertEquals(2, marker.getMarkedCount());
+            }
+            assertTrue(markedDfs(target));
+        } finally {
+            DateExtractor.setIgnoreMark(false);
+            FileTools.delete(dir);
+            FileTools.delete(target);
+        }
+    }
+
     /**
      * Recursive implementation for checking the all the given file and all of its
      * subfolders and subfiles are marked correctly.
@@ -0,0 +1,247 @@
+package tests.classes;
+
+import com.drew.imaging.FileType;
+import com.drew.metadata.Directory;
+import com.drew.metadata.Metadata;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import com.drew.metadata.exif.ExifSubIFDDirectory;
+import com.drew.metadata.mov.QuickTimeDirectory;
+import com.drew.metadata.mp4.Mp4Directory;
+import com.org.util.time.DateExtractor;
+import com.org.util.time.ExtractionBudget;
+import com.org.util.time.ExtractionBudgetException;
+import com.org.util.time.MetadataReader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tests.resources.GenerateMetadataFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains the tests for the MetadataReader class.
+ */
+public class MetadataReaderTest {
+    // directory the generated files are written to
+    private static final String dir = "test-bin/metadataReader";
+
+    /**
+     * Create the directory for the generated files.
+     */
+    @BeforeAll
+    public static void prepare() {
+        new File(dir).mkdirs();
+    }
+
+    /**
+     * The format of JPEG and TIFF files is detected and the exif dates are read from them.
+     */
+    @Test
+    public void exifTest() throws IOException {
+        File jpg = new File(dir, "exif.jpg");
+        GenerateMetadataFiles.jpeg(jpg, "2021:05:01 10:00:00", "2020:01:02 03:04:05", null);
+        File tif = new File(dir, "exif.tif");
+        GenerateMetadataFiles.tiff(tif, false, "2019:07:08 09:10:11", null, null);
+
+        try(MetadataReader reader = new MetadataReader(jpg)) {
+            assertEquals(FileType.Jpeg, reader.getFileType());
+            Metadata md = reader.readMetadata();
+            assertEquals("2021:05:01 10:00:00", md.getFirstDirectoryOfType(ExifIFD0Directory.class).getString(ExifIFD0Directory.TAG_DATETIME));
+            assertEquals("2020:01:02 03:04:05", md.getFirstDirectoryOfType(ExifSubIFDDirectory.class).getString(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL));
+        }
+        try(MetadataReader reader = new MetadataReader(tif)) {
+            // little endian TIFF files are detected as one of the raw formats based on TIFF
+            assertNotEquals(FileType.Unknown, reader.getFileType());
+            Metadata md = reader.readMetadata();
+            assertEquals("2019:07:08 09:10:11", md.getFirstDirectoryOfType(ExifIFD0Directory.class).getString(ExifIFD0Directory.TAG_DATETIME));
+        }
+
+        // the earliest date is used
+        assertEquals(LocalDateTime.of(2020, 1, 2, 3, 4, 5), DateExtractor.getDate(jpg));
+        assertEquals(LocalDateTime.of(2019, 7, 8, 9, 10, 11), DateExtractor.getDate(tif));
+    }
+
+    /**
+     * Reading only the exif dates must find the same dates as the library, for both byte
+     * orders and dates that roll over into the next unit.
+     */
+    @Test
+    public void exifDatesTest() throws IOException {
+        String[][] values = {
+                {"2021:05:01 10:00:00", "2020:01:02 03:04:05", "2020:01:02 03:04:06"},
+                {null, "2019:12:31 23:59:59", null},
+                {"2018:13:01 00:00:00", null, "2018:02:30 25:61:00"},
+                {"", "1970:00:00 00:00:00", "1969:12:31 23:59:60"},
+                {null, null, null}};
+        int n = 0;
+        for(String[] v : values) {
+            File jpg = new File(dir, "dates" + n + ".jpg");
+            GenerateMetadataFiles.jpeg(jpg, v[0], v[1], v[2]);
+            File motorola = new File(dir, "dates" + n + "m.tif");
+            GenerateMetadataFiles.tiff(motorola, true, v[0], v[1], v[2]);
+            File intel = new File(dir, "dates" + n++ + "i.tif");
+            GenerateMetadataFiles.tiff(intel, false, v[0], v[1], v[2]);
+            for(File f : List.of(jpg, motorola, intel)) {
+                try(MetadataReader reader = new MetadataReader(f)) {
+                    List<Date> dates = reader.readExifDates();
+                    assertNotNull(dates, f.getName());
+                    assertEquals(libraryDates(reader.readMetadata()), new TreeSet<>(dates), f.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Files with dates in another format are left to the library.
+     */
+    @Test
+    public void exifFallbackTest() throws IOException {
+        File jpg = new File(dir, "fallback.jpg");
+        GenerateMetadataFiles.jpeg(jpg, "2021:05:01 10:00:00", "2020:01:02 03:04:05.123", null);
+        try(MetadataReader reader = new MetadataReader(jpg)) {
+            assertNull(reader.readExifDates());
+        }
+        assertEquals(LocalDateTime.of(2020, 1, 2, 3, 4, 5, 123000000), DateExtractor.getDate(jpg));
+
+        File mp4 = new File(dir, "small.mp4");
+        GenerateMetadataFiles.mp4(mp4, "isom", LocalDateTime.of(2018, 10, 10, 22, 57, 31), 16, true);
+        try(MetadataReader reader = new MetadataReader(mp4)) {
+            assertNull(reader.readExifDates());
+        }
+    }
+
+    /**
+     * The dates of videos are read from the movie header box, even if it's behind more than
+     * 2GB of media data. The dates of HEIF images are read from the Exif item.
+     */
+    @Test
+    public void boxDatesTest() throws IOException {
+        LocalDateTime creation = LocalDateTime.of(2018, 10, 10, 22, 57, 31);
+        Date date = Date.from(creation.toInstant(ZoneOffset.UTC));
+        for(String brand : List.of("isom", "qt  ")) {
+            File video = new File(dir, "box.mp4");
+            GenerateMetadataFiles.mp4(video, brand, creation, 1024, true);
+            try(MetadataReader reader = new MetadataReader(video)) {
+                assertEquals(List.of(date, date), reader.readBoxDates());
+                TreeSet<Date> library = new TreeSet<>();
+                for(Directory directory : reader.readMetadata().getDirectories()) {
+                    if(directory instanceof Mp4Directory) library.add(directory.getDate(Mp4Directory.TAG_CREATION_TIME));
+                    if(directory instanceof QuickTimeDirectory) library.add(directory.getDate(QuickTimeDirectory.TAG_CREATION_TIME));
+                }
+                assertEquals(new TreeSet<>(List.of(date)), library);
+            }
+        }
+
+        File large = new File(dir, "large.mp4");
+        GenerateMetadataFiles.mp4(large, "isom", creation, 3L*1024*1024*1024, false);
+        try(MetadataReader reader = new MetadataReader(large)) {
+            assertEquals(List.of(date, date), reader.readBoxDates());
+        } finally {
+            large.delete();
+        }
+
+        File heic = new File(dir, "box.heic");
+        GenerateMetadataFiles.heif(heic, "2021:05:01 10:00:00", "2020:01:02 03:04:05", null);
+        try(MetadataReader reader = new MetadataReader(heic)) {
+            assertEquals(FileType.Heif, reader.getFileType());
+            assertEquals(libraryDates(reader.readMetadata()), new TreeSet<>(reader.readBoxDates()));
+        }
+        assertEquals(LocalDateTime.of(2020, 1, 2, 3, 4, 5), DateExtractor.getDate(heic));
+    }
+
+    /**
+     * Collect the dates the DateExtractor uses from the library's metadata.
+     * @param md metadata object
+     * @return all dates of the exif directories
+     */
+    private static TreeSet<Date> libraryDates(Metadata md) {
+        TreeSet<Date> dates = new TreeSet<>();
+        int[] tags = {ExifIFD0Directory.TAG_DATETIME, ExifIFD0Directory.TAG_DATETIME_ORIGINAL, ExifIFD0Directory.TAG_DATETIME_DIGITIZED};
+        for(Directory directory : md.getDirectories()) {
+            for(int tag : tags) {
+                Date date = directory.getDate(tag, TimeZone.getDefault());
+                if(date != null) dates.add(date);
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * The creation time of an mp4 file is read, even if the moov box is behind a large media data box.
+     */
+    @Test
+    public void mp4Test() throws IOException {
+        LocalDateTime creation = LocalDateTime.of(2018, 10, 10, 22, 57, 31);
+        File mp4 = new File(dir, "end.mp4");
+        GenerateMetadataFiles.mp4(mp4, "isom", creation, 64L*1024*1024, false);
+
+        try(MetadataReader reader = new MetadataReader(mp4)) {
+            assertEquals(FileType.Mp4, reader.getFileType());
+            Metadata md = reader.readMetadata();
+            assertNotNull(md.getFirstDirectoryOfType(Mp4Directory.class).getDate(Mp4Directory.TAG_CREATION_TIME, TimeZone.getTimeZone("UTC")));
+        }
+        LocalDateTime local = creation.atOffset(ZoneOffset.UTC).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        assertEquals(local, DateExtractor.getDate(mp4));
+        mp4.delete();
+    }
+
+    /**
+     * Files with an unknown format are not read by a format's reader.
+     */
+    @Test
+    public void unknownTest() throws IOException {
+        File unknown = new File(dir, "unknown.jpg");
+        Files.writeString(unknown.toPath(), "no image");
+        try(MetadataReader reader = new MetadataReader(unknown)) {
+            assertEquals(FileType.Unknown, reader.getFileType());
+            assertNull(reader.readMetadata());
+        }
+    }
+
+    /**
+     * Reading a file fails once it exceeds the bytes or the time of the extraction budget,
+     * and the DateExtractor returns no datetime for it.
+     */
+    @Test
+    public void extractionBudgetTest() throws IOException, InterruptedException {
+        File jpg = new File(dir, "budget.jpg");
+        GenerateMetadataFiles.jpeg(jpg, null, "2020:01:02 03:04:05", null);
+
+        try(MetadataReader reader = new MetadataReader(jpg, new ExtractionBudget(100, 10000))) {
+            assertNull(reader.readExifDates());
+            assertNull(reader.readMetadata());
+            ExtractionBudgetException ebe = assertThrows(ExtractionBudgetException.class, reader::checkBudget);
+            assertTrue(ebe.getMessage().contains("100 bytes"));
+        }
+        try(MetadataReader reader = new MetadataReader(jpg, new ExtractionBudget(1024*1024, 1))) {
+            Thread.sleep(5);
+            assertNull(reader.readExifDates());
+            assertThrows(ExtractionBudgetException.class, reader::checkBudget);
+        }
+        try(MetadataReader reader = new MetadataReader(jpg, new ExtractionBudget(1024*1024, 10000))) {
+            assertNotNull(reader.readExifDates());
+            reader.checkBudget();
+        }
+
+        DateExtractor.setIgnoreMark(true);
+        try {
+            DateExtractor.setExtractionBudget(new ExtractionBudget(100, 10000));
+            assertNull(DateExtractor.getDate(jpg));
+            DateExtractor.setExtractionBudget(new ExtractionBudget(1024*1024, 10000));
+            assertEquals(LocalDateTime.of(2020, 1, 2, 3, 4, 5), DateExtractor.getDate(jpg));
+        } finally {
+            DateExtractor.setExtractionBudget(null);
+            DateExtractor.setIgnoreMark(false);
+        }
+    }
+}
@@ -62,7 +62,7 @@ public class ModelCheckerTest {
         graph = FileGraphFactory.get(repoPath);
         checker = new ModelChecker(config);
         FileGraph.Node root = graph.getRoot();
-        errorNode = root.children.get(root.path + File.separator + Configuration.ERROR_FOLDER_NAME);
+        errorNode = root.getChild(Configuration.ERROR_FOLDER_NAME);
     }
 
     /**
@@ -78,12 +78,13 @@ public class ModelCheckerTest {
             FileGraph.Node node = stack.pop();
 
             if(node.leaf) {
-                File folder = new File(node.path);
+                File folder = new File(node.getPath());
                 for(File file : folder.listFiles()) {
+                    if(Configuration.isRepositoryFile(file.getName())) continue;
                     assertTrue(checker.correctFolder(node, file));
                 }
             } else {
-                for(FileGraph.Node children : node.children.values()) {
+                for(FileGraph.Node children : node.getChildren()) {
                     stack.push(children);
                 }
             }
@@ -132,7 +133,7 @@ public class ModelCheckerTest {
             if(node.leaf) {
                 assertTrue(checker.validNumOfFiles(node));
             } else {
-                for(FileGraph.Node children : node.children.values()) {
+                for(FileGraph.Node children : node.getChildren()) {
                     stack.push(children);
                 }
             }
@@ -148,7 +149,7 @@ public class ModelCheckerTest {
         // get the 2010 node which already contains one file so: folder size == threshold
         FileGraph.Node node = graph.getNode(LocalDateTime.of(2010, 1, 1, 1, 1));
         // create a new file in that folder, now the folder size is two > threshold
-        File folder = new File(node.path);
+        File folder = new File(node.getPath());
         File incorrectFile = new File(folder, "incorrectFile.txt");
 
         try {
@@ -179,11 +180,11 @@ public class ModelCheckerTest {
         while(!stack.isEmpty()) {
             FileGraph.Node node = stack.pop();
             if(node == errorNode) continue;
-            String folderName = FileTools.getNameWithoutPrefix(root.path, node.path);
+            String folderName = FileTools.getNameWithoutPrefix(root.getPath(), node.getPath());
             // should return true on every folder by definition
             assertTrue(checker.validFolderName(folderName));
 
-            for(FileGraph.Node children : node.children.values()) {
+            for(FileGraph.Node children : node.getChildren()) {
                 stack.push(children);
             }
         }
@@ -207,11 +208,11 @@ public class ModelCheckerTest {
      */
     private void testValidFolderStructureRec(FileGraph.Node node, List<String> folders) {
         if(node == errorNode) return;
-        String folderName = FileTools.getNameWithoutPrefix(graph.getRoot().path, node.path);
+        String folderName = FileTools.getNameWithoutPrefix(graph.getRoot().getPath(), node.getPath());
         folders.add(folderName);
         // only call the function on leaf nodes when the path is complete
         if(!node.leaf) {
-            for(FileGraph.Node next : node.children.values()) {
+            for(FileGraph.Node next : node.getChildren()) {
                 testValidFolderStructureRec(next, folders);
             }
         } else {
@@ -275,7 +276,7 @@ public class ModelCheckerTest {
         long lm = 1079387493013l;
         LocalDateTime ldt = FileTools.dateTime(lm);
         FileGraph.Node node = graph.getNode(ldt);
-        File folderAboveThreshold = new File(node.path);
+        File folderAboveThreshold = new File(node.getPath());
         try {
             folderAboveThreshold.mkdirs();
             File f0 = new File(folderAboveThreshold, "above_thresh0.txt");
@@ -314,11 +315,11 @@ public class ModelCheckerTest {
             assertEquals(1, errors.get(me).size());
         }
 
-        assertEquals(errors.get(ModelError.FOLDER_CONTAINS_INCONSISTENT_DATES).get(0).path, fileWrongFolder.getParentFile().getAbsolutePath());
-        assertEquals(errors.get(ModelError.INVALID_FOLDER_NAME).get(0).path, folderInvalidName.getAbsolutePath());
-        assertEquals(errors.get(ModelError.FOLDER_ABOVE_THRESHOLD).get(0).path, folderAboveThreshold.getAbsolutePath());
-        assertEquals(errors.get(ModelError.FILES_IN_NON_LEAF).get(0).path, folderNonLeaf.getAbsolutePath());
-        assertEquals(errors.get(ModelError.INVALID_FOLDER_STRUCTURE).get(0).path, folderInvalidName.getAbsolutePath());
+        assertEquals(errors.get(ModelError.FOLDER_CONTAINS_INCONSISTENT_DATES).get(0).getPath(), fileWrongFolder.getParentFile().getAbsolutePath());
+        assertEquals(errors.get(ModelError.INVALID_FOLDER_NAME).get(0).getPath(), folderInvalidName.getAbsolutePath());
+        assertEquals(errors.get(ModelError.FOLDER_ABOVE_THRESHOLD).get(0).getPath(), folderAboveThreshold.getAbsolutePath());
+        assertEquals(errors.get(ModelError.FILES_IN_NON_LEAF).get(0).getPath(), folderNonLeaf.getAbsolutePath());
+        assertEquals(errors.get(ModelError.INVALID_FOLDER_STRUCTURE).get(0).getPath(), folderInvalidName.getAbsolutePath());
 
         // delete the temporarily created files
         FileTools.delete(fileWrongFolder.getParentFile());
@@ -330,7 +331,7 @@ public class ModelCheckerTest {
         // update the static variables to their initial state
         graph.update(graph.getRoot());
         FileGraph.Node root = graph.getRoot();
-        errorNode = root.children.get(root.path + File.separator + Configuration.ERROR_FOLDER_NAME);
+        errorNode = root.getChild(Configuration.ERROR_FOLDER_NAME);
     }
 
     /**
@@ -21,7 +21,10 @@ import com.org.util.graph.FileGraphFactory;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
@@ -113,7 +116,7 @@ public class ModelFixerTest {
         long lm = 1079387493013l;
         LocalDateTime ldt = FileTools.dateTime(lm);
         FileGraph.Node node = graph.getNode(ldt);
-        File folderAboveThreshold = new File(node.path);
+        File folderAboveThreshold = new File(node.getPath());
         try {
             folderAboveThreshold.mkdirs();
             File f0 = new File(folderAboveThreshold, "above_thresh0.txt");
@@ -190,13 +193,72 @@ public class ModelFixerTest {
         // check that the test files are in the correct folder afterwards
         assertTrue(new File(repoPath+File.separator+"2010", "test2.txt").exists());
         assertTrue(new File(repoPath+File.separator+"2010", "reduce.txt").exists());
-        assertEquals(2, new File(repoPath+File.separator+"2010").listFiles(a->a.isFile()).length);
+        assertEquals(2, new File(repoPath+File.separator+"2010").listFiles(a->a.isFile() && !Configuration.isRepositoryFile(a.getName())).length);
         assertEquals(0, new File(repoPath+File.separator+"2010").listFiles(a->a.isDirectory()).length);
 
         // clean up
         resetRepo();
     }
 
+    /**
+     * A folder whose only child is a leaf is replaced by the child folder with a rename. A chain of such folders
+     * is collapsed level by level, so the deepest folder ends up in place of the top one with its files.
+     */
+    @Test
+    public void collapseTest() throws IOException {
+        File folder2010 = new File(repoPath, "2010");
+        File test2Txt = new File(folder2010, "test2.txt");
+        File deepest = new File(folder2010, "2010_jul" + File.separator + "2010_jul_17");
+        deepest.mkdirs();
+        new Move().execute(test2Txt.toPath(), deepest.toPath().resolve(test2Txt.getName()));
+        Object folderKey = Files.readAttributes(deepest.toPath(), BasicFileAttributes.class).fileKey();
+        graph.update(graph.getRoot());
+
+        fixer.reduceStructure();
+        assertTrue(test2Txt.exists());
+        assertEquals(0, folder2010.listFiles(a -> a.isDirectory()).length);
+        // the folder itself was renamed, the file wasn't moved out of it
+        if(folderKey != null) assertEquals(folderKey, Files.readAttributes(folder2010.toPath(), BasicFileAttributes.class).fileKey());
+        assertTrue(graph.getRoot().getChild("2010").leaf);
+        assertEquals(1, graph.getRoot().getChild("2010").fileCount);
+
+        // clean up
+        resetRepo();
+    }
+
+    /**
+     * Subfolders are only merged if their files don't exceed the merge threshold. The checker doesn't report them
+     * as reducible either. Without the property they are merged as soon as the files fit into the folder.
+     */
+    @Test
+    public void mergeSizeTest() {
+        // 2023 is split into 2023_feb with one file and 2023_märz with two files, after deleting one
+        // file both fit into 2023 again
+        File folder2023 = new File(repoPath, "2023");
+        assertTrue(new File(folder2023, "2023_märz" + File.separator + "test0.txt").delete());
+        String propertyFile = repoPath + File.separator + Configuration.PROPERTY_FILE_NAME_STRING;
+        Properties properties = config.getProperties();
+        properties.put("mergeSize", "1");
+        FileTools.storeProperties(properties, propertyFile);
+        graph.update(graph.getRoot());
+
+        ModelChecker mergeChecker = new ModelChecker(config);
+        mergeChecker.checkAll();
+        assertFalse(mergeChecker.getErrors().get(ModelError.CAN_BE_REDUCED).contains(graph.getRoot().getChild("2023")));
+        new ModelFixer(config).reduceStructure();
+        assertEquals(2, folder2023.listFiles(a -> a.isDirectory()).length);
+
+        // without the merge threshold the folders are merged
+        properties.remove("mergeSize");
+        FileTools.storeProperties(properties, propertyFile);
+        new ModelFixer(config).reduceStructure();
+        assertEquals(0, folder2023.listFiles(a -> a.isDirectory()).length);
+        assertEquals(2, folder2023.listFiles(a -> a.isFile() && !Configuration.isRepositoryFile(a.getName())).length);
+
+        // clean up
+        resetRepo();
+    }
+
     /**
      * Test whether folder names are restored correctly by executing the function fixFolders(). Files should not be
      * moved. The repairing should only be done by renaming folders to their correct name.
@@ -260,7 +322,7 @@ public class ModelFixerTest {
         ldt = LocalDateTime.of(2010, 1, 1, 0, 0);
         errors.get(ModelError.CAN_BE_REDUCED).add(graph.getNode(ldt));
         errors.get(ModelError.FOLDER_CONTAINS_INCONSISTENT_DATES).add(graph.getNode(ldt));
-        errors.get(ModelError.FILES_IN_NON_LEAF).add(graph.getRoot().children.get(graph.getRoot().path+File.separator+"2023"));
+        errors.get(ModelError.FILES_IN_NON_LEAF).add(graph.getRoot().getChild("2023"));
         ldt = LocalDateTime.of(2023, 2, 1, 0, 0);
         errors.get(ModelError.FOLDER_ABOVE_THRESHOLD).add(graph.getNode(ldt));
 
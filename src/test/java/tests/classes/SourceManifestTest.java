@@ -0,0 +1,98 @@
+package tests.classes;
+
+import com.org.util.FileTools;
+import com.org.util.SourceManifest;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import tests.resources.GenerateExampleFiles;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains the tests for the SourceManifest class.
+ */
+public class SourceManifestTest {
+    // directory containing the example files
+    private static final File exampleFiles = new File(GenerateExampleFiles.testFilesPath);
+
+    /**
+     * Generate the example files.
+     */
+    @BeforeAll
+    public static void prepare() {
+        GenerateExampleFiles.generate();
+    }
+
+    /**
+     * The manifest must contain the same number of files and size as counted by the FileTools functions.
+     */
+    @Test
+    public void scanTest() {
+        FilenameFilter txtFilter = (dir, name) -> name.endsWith(".txt");
+        SourceManifest manifest = new SourceManifest();
+        try {
+            manifest.scan(exampleFiles, txtFilter);
+        } catch(IOException ioe) {
+            fail(ioe.getMessage());
+        }
+
+        assertEquals(FileTools.countFiles(exampleFiles, txtFilter), manifest.getFileCount());
+        assertEquals(FileTools.size(exampleFiles, txtFilter), manifest.getSize());
+        for(SourceManifest.Entry entry : manifest) {
+            File file = entry.path.toFile();
+            assertEquals(file.length(), entry.size);
+            assertEquals(file.lastModified(), entry.lastModified);
+        }
+        manifest.close();
+    }
+
+    /**
+     * If the memory limit is exceeded, the entries are stored in a temporary file. The entries must still be
+     * returned in the same order.
+     */
+    @Test
+    public void spillTest() {
+        SourceManifest inMemory = new SourceManifest(), spilled = new SourceManifest(2);
+        try {
+            inMemory.scan(exampleFiles, null);
+            spilled.scan(exampleFiles, null);
+        } catch(IOException ioe) {
+            fail(ioe.getMessage());
+        }
+
+        List<String> inMemoryPaths = new ArrayList<>(), spilledPaths = new ArrayList<>();
+        for(SourceManifest.Entry entry : inMemory) inMemoryPaths.add(entry.path.toString());
+        for(SourceManifest.Entry entry : spilled) spilledPaths.add(entry.path.toString());
+        assertEquals(6, spilledPaths.size());
+        assertEquals(inMemoryPaths, spilledPaths);
+        // the entries can be iterated multiple times
+        assertEquals(spilled.getFileCount(), countEntries(spilled));
+
+        // an iteration that stops early is closed with the manifest
+        Iterator<SourceManifest.Entry> iterator = spilled.iterator();
+        iterator.next();
+
+        inMemory.close();
+        spilled.close();
+        assertThrows(UncheckedIOException.class, iterator::next);
+    }
+
+    /**
+     * Count the entries by iterating through the manifest.
+     * @param manifest source manifest
+     * @return number of entries
+     */
+    private int countEntries(SourceManifest manifest) {
+        int count = 0;
+        for(SourceManifest.Entry entry : manifest) count++;
+        return count;
+    }
+}
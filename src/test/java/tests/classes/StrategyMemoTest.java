@@ -0,0 +1,124 @@
+package tests.classes;
+
+import com.org.util.time.DateCache;
+import com.org.util.time.DateExtractor;
+import com.org.util.time.StrategyMemo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tests.resources.GenerateMetadataFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains the tests for the StrategyMemo class.
+ */
+public class StrategyMemoTest {
+    // directory with the test files
+    private static final String root = "test-bin/strategyMemo";
+    // memo used by the DateExtractor during the test
+    private StrategyMemo memo;
+
+    /**
+     * Start every test with empty directories and a new memo.
+     */
+    @BeforeEach
+    public void prepare() {
+        for(String name : new String[] {"whatsapp", "camera"}) {
+            File dir = new File(root, name);
+            if(dir.exists()) {
+                for(File f : dir.listFiles()) f.delete();
+            } else {
+                dir.mkdirs();
+            }
+        }
+        memo = new StrategyMemo();
+        DateExtractor.setIgnoreMark(true);
+        DateExtractor.setStrategyMemo(memo);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        DateExtractor.setStrategyMemo(null);
+        DateExtractor.setIgnoreMark(false);
+    }
+
+    /**
+     * After some files without metadata dated by their names, the names are read first. A
+     * name without a datetime falls back to reading the file.
+     */
+    @Test
+    public void fileNameFirstTest() throws IOException {
+        int count = StrategyMemo.LEARN_THRESHOLD + 6;
+        for(int i = 1; i <= count; i++) {
+            File f = new File(root, String.format("whatsapp/IMG-202208%02d-WA0001.jpg", i));
+            GenerateMetadataFiles.jpeg(f, null, null, null);
+            assertEquals(LocalDateTime.of(2022, 8, i, 0, 0), DateExtractor.getDate(f));
+        }
+        assertEquals(StrategyMemo.LEARN_THRESHOLD, memo.getMetadataFirst());
+        assertEquals(0, memo.getMetadataHits());
+        assertEquals(6, memo.getFileNameFirst());
+        assertEquals(6, memo.getFileNameHits());
+
+        // a file with metadata but without a date in its name is read as usual
+        File camera = new File(root, "whatsapp/photo.jpg");
+        GenerateMetadataFiles.jpeg(camera, null, "2021:03:04 05:06:07", null);
+        assertEquals(LocalDateTime.of(2021, 3, 4, 5, 6, 7), DateExtractor.getDate(camera));
+        assertEquals(7, memo.getFileNameFirst());
+        assertEquals(6, memo.getFileNameHits());
+        assertEquals(1, memo.getMetadataHits());
+
+        // the metadata is read first again, other extensions have their own strategy
+        File next = new File(root, "whatsapp/IMG-20220830-WA0001.jpg");
+        GenerateMetadataFiles.jpeg(next, null, null, null);
+        assertEquals(LocalDateTime.of(2022, 8, 30, 0, 0), DateExtractor.getDate(next));
+        assertEquals(StrategyMemo.LEARN_THRESHOLD + 2, memo.getMetadataFirst());
+        assertEquals(1, memo.size());
+    }
+
+    /**
+     * After the names are read first, a file with a datetime in its name and in its metadata
+     * is dated by its name. That datetime isn't cached, so without the memo the metadata wins.
+     */
+    @Test
+    public void nameAndMetadataTest() throws IOException {
+        for(int i = 1; i <= StrategyMemo.LEARN_THRESHOLD; i++) {
+            File f = new File(root, String.format("whatsapp/IMG-202208%02d-WA0001.jpg", i));
+            GenerateMetadataFiles.jpeg(f, null, null, null);
+            DateExtractor.getDate(f);
+        }
+        File both = new File(root, "whatsapp/IMG-20220820-WA0009.jpg");
+        GenerateMetadataFiles.jpeg(both, null, "2021:03:04 05:06:07", null);
+
+        try(DateCache cache = DateCache.open(root)) {
+            DateExtractor.setDateCache(cache);
+            assertEquals(LocalDateTime.of(2022, 8, 20, 0, 0), DateExtractor.getDate(both));
+            DateExtractor.setStrategyMemo(null);
+            assertEquals(LocalDateTime.of(2021, 3, 4, 5, 6, 7), DateExtractor.getDate(both));
+        } finally {
+            DateExtractor.setDateCache(null);
+            DateCache.getFile(root).delete();
+        }
+    }
+
+    /**
+     * Files with metadata are always read first, even if their names have a datetime.
+     */
+    @Test
+    public void metadataFirstTest() throws IOException {
+        int count = StrategyMemo.LEARN_THRESHOLD * 2;
+        for(int i = 1; i <= count; i++) {
+            File f = new File(root, String.format("camera/IMG_202208%02d_100000.jpg", i));
+            GenerateMetadataFiles.jpeg(f, null, String.format("2021:03:%02d 05:06:07", i), null);
+            assertEquals(LocalDateTime.of(2021, 3, i, 5, 6, 7), DateExtractor.getDate(f));
+        }
+        assertEquals(count, memo.getMetadataFirst());
+        assertEquals(count, memo.getMetadataHits());
+        assertEquals(0, memo.getFileNameFirst());
+        assertTrue(memo.report().contains("metadata first " + count + " files (100.0% hits)"));
+    }
+}
@@ -0,0 +1,154 @@
+package tests.classes;
+
+import com.org.organizer.Organizer;
+import com.org.organizer.ThresholdOrganizer;
+import com.org.organizer.copy.Copy;
+import com.org.parser.Configuration;
+import com.org.util.FileTools;
+import com.org.util.consistency.ThresholdMigration;
+import com.org.util.graph.FileGraph;
+import com.org.util.graph.FileGraphFactory;
+import com.org.util.graph.LeafManifest;
+import com.org.util.time.DateExtractor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tests.resources.GenerateExampleFiles;
+import tests.resources.InitializeTestRepository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class contains the tests for the migration to another folder size.
+ */
+public class ThresholdMigrationTest {
+    // path to the repository root to perform the tests
+    private static final String repoPath = Path.of("test-bin/repoMigration").toAbsolutePath().toString();
+    // configuration object needed for the command objects
+    private Configuration config;
+    // file graph of the repository
+    private FileGraph graph;
+
+    /**
+     * Start every test with a new repository with a folder size of 1, so 2023 is split into
+     * 2023_feb and 2023_märz, which is split into two days.
+     */
+    @BeforeEach
+    public void prepare() {
+        DateExtractor.setIgnoreMark(false);
+        config = new Configuration();
+        graph = FileGraphFactory.get(repoPath);
+        FileTools.delete(new File(repoPath));
+        graph.update(graph.getRoot());
+        InitializeTestRepository.generateRepository(repoPath, config, 1);
+        Organizer organizer = new ThresholdOrganizer(new Copy(), 1, repoPath);
+        organizer.allowFileExtension("txt");
+        organizer.copyAndOrganize(GenerateExampleFiles.testFilesPath);
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        FileTools.delete(new File(repoPath));
+        graph.update(graph.getRoot());
+    }
+
+    /**
+     * A larger folder size merges the whole subtree of 2023 in one step, a smaller one
+     * splits it again.
+     */
+    @Test
+    public void mergeAndSplitTest() {
+        setFolderSize("100");
+        ThresholdMigration migration = new ThresholdMigration(config);
+        assertFalse(migration.plan());
+        assertEquals(1, migration.getSteps().size());
+        assertEquals(ThresholdMigration.Action.MERGE, migration.getSteps().get(0).action);
+        assertEquals("2023", migration.getSteps().get(0).path);
+        assertTrue(migration.report().contains("files to move: 3"));
+
+        migration.migrate();
+        File folder2023 = new File(repoPath, "2023");
+        assertEquals(0, folder2023.listFiles(a -> a.isDirectory()).length);
+        assertEquals(3, folder2023.listFiles(a -> !Configuration.isRepositoryFile(a.getName())).length);
+        assertEquals(3, LeafManifest.load(folder2023).size());
+        assertTrue(graph.getRoot().getChild("2023").leaf);
+        assertEquals(3, graph.getRoot().getChild("2023").fileCount);
+        assertFalse(ThresholdMigration.getFile(repoPath).exists());
+        // nothing left to do
+        migration.plan();
+        assertTrue(migration.getSteps().isEmpty());
+
+        setFolderSize("1");
+        migration = new ThresholdMigration(config);
+        migration.plan();
+        assertEquals(1, migration.getSteps().size());
+        assertEquals(ThresholdMigration.Action.SPLIT, migration.getSteps().get(0).action);
+        // 2023_feb, 2023_märz and its two days
+        assertTrue(migration.report().contains("folders to create: at least 4"));
+        migration.migrate();
+        assertTrue(new File(repoPath, "2023/2023_feb/test1.txt").isFile());
+        assertTrue(new File(repoPath, "2023/2023_märz/2023_märz_17/test3.txt").isFile());
+        assertTrue(new File(repoPath, "2023/2023_märz/2023_märz_21/test0.txt").isFile());
+        assertFalse(graph.getRoot().getChild("2023").leaf);
+    }
+
+    /**
+     * A chain of folders with a single leaf is merged by renaming the leaf. If the migration
+     * stops between the renames, it's finished from the journal.
+     */
+    @Test
+    public void renameAndResumeTest() throws IOException {
+        // only 2023/2023_märz/2023_märz_17 is left in 2023
+        assertTrue(new File(repoPath, "2023/2023_feb/test1.txt").delete());
+        assertTrue(new File(repoPath, "2023/2023_märz/2023_märz_21/test0.txt").delete());
+        FileTools.delete(new File(repoPath, "2023/2023_feb"));
+        FileTools.delete(new File(repoPath, "2023/2023_märz/2023_märz_21"));
+        graph.update(graph.getRoot());
+
+        File leaf = new File(repoPath, "2023/2023_märz/2023_märz_17");
+        Object key = Files.readAttributes(leaf.toPath(), BasicFileAttributes.class).fileKey();
+        ThresholdMigration migration = new ThresholdMigration(config);
+        migration.plan();
+        assertEquals(1, migration.getSteps().size());
+        assertTrue(migration.report().contains("files to move: 0"));
+        assertTrue(migration.report().contains("folders to rename: 1"));
+        migration.migrate();
+        File folder2023 = new File(repoPath, "2023");
+        assertTrue(new File(folder2023, "test3.txt").isFile());
+        assertEquals(key, Files.readAttributes(folder2023.toPath(), BasicFileAttributes.class).fileKey());
+
+        // the leaf was moved out of the way, but the empty folders weren't deleted yet
+        assertTrue(folder2023.renameTo(new File(repoPath, ".2023.collapse")));
+        assertTrue(new File(repoPath, "2023/2023_märz").mkdirs());
+        Files.write(ThresholdMigration.getFile(repoPath).toPath(), List.of("1\t1", "MERGE\t2023"), StandardCharsets.UTF_8);
+        graph.update(graph.getRoot());
+
+        migration = new ThresholdMigration(config);
+        assertTrue(migration.plan());
+        migration.migrate();
+        assertTrue(new File(folder2023, "test3.txt").isFile());
+        assertFalse(new File(repoPath, ".2023.collapse").exists());
+        assertFalse(new File(folder2023, "2023_märz").exists());
+        assertFalse(ThresholdMigration.getFile(repoPath).exists());
+        assertEquals(1, graph.getRoot().getChild("2023").fileCount);
+    }
+
+    /**
+     * Store a new folder size in the repository's properties.
+     * @param folderSize new folder size
+     */
+    private void setFolderSize(String folderSize) {
+        Properties properties = config.getProperties();
+        properties.put("folderSize", folderSize);
+        FileTools.storeProperties(properties, repoPath + File.separator + Configuration.PROPERTY_FILE_NAME_STRING);
+    }
+}
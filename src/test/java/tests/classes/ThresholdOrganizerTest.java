@@ -4,7 +4,11 @@ import com.org.organizer.Organizer;
 import com.org.organizer.copy.*;
 import com.org.util.graph.FileGraph;
 import com.org.util.graph.FileGraphFactory;
+import com.org.util.graph.FileGraphOperation;
+import com.org.util.graph.LeafManifest;
 import com.org.util.time.DateExtractor;
+import com.org.util.time.ExtractionBudget;
+import com.org.util.time.IMark;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import com.org.organizer.ThresholdOrganizer;
@@ -14,8 +18,17 @@ import tests.resources.InitializeTestRepository;
 import com.org.util.FileTools;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -68,8 +81,9 @@ public class ThresholdOrganizerTest {
             assertTrue(file.exists());
         }
 
-        // make sure that the number of file is correct, length+1 because the hidden configuration file is included
-        assertEquals(files.length+1, FileTools.countFiles(new File(repoPath)));
+        // make sure that the number of file is correct, the hidden configuration file, the file graph
+        // snapshot and the leaf manifests aren't counted
+        assertEquals(files.length, FileTools.countFiles(new File(repoPath), (d, n) -> !Configuration.isRepositoryFile(n)));
     }
 
     /**
@@ -138,7 +152,7 @@ public class ThresholdOrganizerTest {
         orgMove.copyAndOrganize(duplicate.getAbsolutePath());
 
         // test that only one file is in the destination directory
-        assertEquals(1, FileTools.countFiles(folder2010));
+        assertEquals(1, FileTools.countFiles(folder2010, (d, n) -> !Configuration.isRepositoryFile(n)));
         // test that the source file is gone, because it was moved and replaced in the last operation
         assertFalse(duplicate.exists());
 
@@ -191,6 +205,338 @@ public class ThresholdOrganizerTest {
         fileGraph.update(fileGraph.getRoot());
     }
 
+    /**
+     * Organizing with multiple extractor threads must result in exactly the same repository as the sequential
+     * organizer. Both repositories are filled with all example files and their structures are compared.
+     */
+    @Test
+    public void parallelOrganizeTest() {
+        String sequentialPath = Path.of("test-bin/repoSequential").toAbsolutePath().toString();
+        String parallelPath = Path.of("test-bin/repoParallel").toAbsolutePath().toString();
+        FileTools.delete(new File(sequentialPath));
+        FileTools.delete(new File(parallelPath));
+        InitializeTestRepository.generateRepository(sequentialPath, new Configuration(), 1);
+        InitializeTestRepository.generateRepository(parallelPath, new Configuration(), 1);
+
+        // organize the same files once sequentially and once with multiple threads
+        ThresholdOrganizer sequential = new ThresholdOrganizer(new Copy(), 1, sequentialPath);
+        sequential.copyAndOrganize(GenerateExampleFiles.testFilesPath);
+        ThresholdOrganizer parallel = new ThresholdOrganizer(new Copy(), 1, parallelPath);
+        parallel.setExtractorThreads(3);
+        parallel.copyAndOrganize(GenerateExampleFiles.testFilesPath);
+
+        // both repositories must contain the same files in the same folders
+        assertEquals(sequential.getCount(), parallel.getCount());
+        List<String> sequentialFiles = new ArrayList<>(), parallelFiles = new ArrayList<>();
+        relativeFilePaths(new File(sequentialPath), sequentialPath, sequentialFiles);
+        relativeFilePaths(new File(parallelPath), parallelPath, parallelFiles);
+        sequentialFiles.sort(null);
+        parallelFiles.sort(null);
+        assertEquals(sequentialFiles, parallelFiles);
+
+        // cleanup
+        FileTools.delete(new File(sequentialPath));
+        FileTools.delete(new File(parallelPath));
+    }
+
+    /**
+     * With multiple extractor threads, a file that is read longer than the extraction budget's time limit goes
+     * into the error folder, even if the reading never checks the budget itself.
+     */
+    @Test
+    public void parallelTimeLimitTest() {
+        String limitPath = Path.of("test-bin/repoTimeLimit").toAbsolutePath().toString();
+        FileTools.delete(new File(limitPath));
+        InitializeTestRepository.generateRepository(limitPath, new Configuration(), 100);
+        IMark mark = DateExtractor.getMark();
+        // reading the mark of test2.txt hangs
+        DateExtractor.setMark(new IMark() {
+            @Override
+            public LocalDateTime read(File file) {
+                if(!file.getName().equals("test2.txt")) return mark.read(file);
+                try {
+                    Thread.sleep(60000);
+                } catch(InterruptedException ie) {
+                }
+                return null;
+            }
+
+            @Override
+            public boolean isMarked(File file, BasicFileAttributes attrs) {
+                return mark.isMarked(file, attrs);
+            }
+
+            @Override
+            public void write(File file, LocalDateTime ldt) throws IOException {
+                mark.write(file, ldt);
+            }
+        });
+        DateExtractor.setExtractionBudget(new ExtractionBudget(1024*1024, 200));
+        try {
+            ThresholdOrganizer limited = new ThresholdOrganizer(new Copy(), 100, limitPath);
+            limited.setExtractorThreads(2);
+            limited.copyAndOrganize(GenerateExampleFiles.testFilesPath + File.separator + "txt");
+        } finally {
+            DateExtractor.setMark(mark);
+            DateExtractor.setExtractionBudget(null);
+        }
+        assertTrue(new File(limitPath, Configuration.ERROR_FOLDER_NAME + File.separator + "test2.txt").isFile());
+        assertTrue(new File(limitPath, "2021" + File.separator + "test4.txt").isFile());
+        assertEquals(3, FileTools.countDirectFiles(new File(limitPath, "2023"), (d, n) -> !Configuration.isRepositoryFile(n)));
+
+        // cleanup
+        FileTools.delete(new File(limitPath));
+    }
+
+    /**
+     * The bulk load places every file directly into its final folder. The result must be the same as organizing
+     * the files one by one. The bulk load is also executed on a repository that already contains files, so that
+     * existing leaves have to be split.
+     */
+    @Test
+    public void bulkOrganizeTest() {
+        String sequentialPath = Path.of("test-bin/repoSequentialBulk").toAbsolutePath().toString();
+        String bulkPath = Path.of("test-bin/repoBulk").toAbsolutePath().toString();
+        FileTools.delete(new File(sequentialPath));
+        FileTools.delete(new File(bulkPath));
+        InitializeTestRepository.generateRepository(sequentialPath, new Configuration(), 1);
+        InitializeTestRepository.generateRepository(bulkPath, new Configuration(), 1);
+        String txtPath = GenerateExampleFiles.testFilesPath + File.separator + "txt";
+
+        // organize a single file first, so that the bulk load needs to split an existing leaf
+        ThresholdOrganizer sequential = new ThresholdOrganizer(new Copy(), 1, sequentialPath);
+        sequential.copyAndOrganize(txtPath + File.separator + "test0.txt");
+        sequential.copyAndOrganize(txtPath);
+        ThresholdOrganizer bulk = new ThresholdOrganizer(new Copy(), 1, bulkPath);
+        bulk.copyAndOrganize(txtPath + File.separator + "test0.txt");
+        bulk.setBulkLoad(true);
+        bulk.copyAndOrganize(txtPath);
+
+        List<String> sequentialFiles = new ArrayList<>(), bulkFiles = new ArrayList<>();
+        relativeFilePaths(new File(sequentialPath), sequentialPath, sequentialFiles);
+        relativeFilePaths(new File(bulkPath), bulkPath, bulkFiles);
+        sequentialFiles.sort(null);
+        bulkFiles.sort(null);
+        assertEquals(sequentialFiles, bulkFiles);
+
+        // the file graph must know about the new structure
+        FileGraph bulkGraph = FileGraphFactory.get(bulkPath);
+        FileGraph.Node node = bulkGraph.getNode(FileTools.dateTime(GenerateExampleFiles.exampleFileTimes[0]));
+        assertEquals(Path.of(bulkPath, "2023", "2023_märz", "2023_märz_21").toString(), node.getPath());
+        assertEquals(1, node.fileCount);
+
+        // cleanup
+        FileTools.delete(new File(sequentialPath));
+        FileTools.delete(new File(bulkPath));
+    }
+
+    /**
+     * A folder holding far more files than the threshold is split over several levels at once. Every file has to
+     * end up in the same folder as if the files were organized one by one, and the folders in between must be empty.
+     */
+    @Test
+    public void reorganizeTest() {
+        String reorganizePath = Path.of("test-bin/repoReorganize").toAbsolutePath().toString();
+        FileTools.delete(new File(reorganizePath));
+        InitializeTestRepository.generateRepository(reorganizePath, new Configuration(), 1);
+        // all files are stored in the year folders first, 2023 has three files of two months and days
+        ThresholdOrganizer organizer = new ThresholdOrganizer(new Copy(), 100, reorganizePath);
+        organizer.copyAndOrganize(GenerateExampleFiles.testFilesPath + File.separator + "txt");
+        assertEquals(3, FileTools.countDirectFiles(new File(reorganizePath, "2023"), (d, n) -> !Configuration.isRepositoryFile(n)));
+
+        FileGraphOperation operation = new FileGraphOperation(FileGraphFactory.get(reorganizePath));
+        FileGraph.Node node = operation.getFileGraph().getRoot().getChild("2023");
+        operation.reorganize(node, 1);
+        operation.saveManifests();
+
+        assertEquals(organizedTxtFiles(), organizedFiles(reorganizePath));
+        assertFalse(node.leaf);
+        assertEquals(0, node.fileCount);
+        assertFalse(node.getChild("2023_märz").leaf);
+        assertEquals(1, operation.getFileGraph().getNode(FileTools.dateTime(GenerateExampleFiles.exampleFileTimes[0])).fileCount);
+
+        // cleanup
+        FileTools.delete(new File(reorganizePath));
+    }
+
+    /**
+     * With deferred splits, the folders above the threshold are split once at the end. The result must be the same
+     * as splitting them right away, also if a folder exceeds the ceiling in between.
+     */
+    @Test
+    public void deferredSplitTest() {
+        String deferredPath = Path.of("test-bin/repoDeferred").toAbsolutePath().toString();
+        String txtPath = GenerateExampleFiles.testFilesPath + File.separator + "txt";
+        for(int ceiling : new int[] {100, 2}) {
+            FileTools.delete(new File(deferredPath));
+            InitializeTestRepository.generateRepository(deferredPath, new Configuration(), 1);
+            ThresholdOrganizer deferred = new ThresholdOrganizer(new Copy(), 1, deferredPath);
+            deferred.setDeferredSplit(ceiling);
+            deferred.copyAndOrganize(txtPath);
+            assertEquals(organizedTxtFiles(), organizedFiles(deferredPath));
+
+            FileGraph graph = FileGraphFactory.get(deferredPath);
+            assertEquals(1, graph.getNode(FileTools.dateTime(GenerateExampleFiles.exampleFileTimes[0])).fileCount);
+            assertFalse(graph.getRoot().getChild("2023").leaf);
+        }
+
+        // cleanup
+        FileTools.delete(new File(deferredPath));
+    }
+
+    /**
+     * Moving organizes the files of a source directory together. A directory whose files all
+     * go into one new leaf is renamed into the repository and stays behind empty. The source
+     * itself and linked directories are never renamed.
+     */
+    @Test
+    public void moveDirectoryTest() throws IOException {
+        String movePath = Path.of("test-bin/repoMoveDirectory").toAbsolutePath().toString();
+        File source = new File("test-bin/moveDirectory");
+        File txt = new File(GenerateExampleFiles.testFilesPath, "txt");
+        for(int threshold : new int[] {1, 100}) {
+            FileTools.delete(new File(movePath));
+            FileTools.delete(source);
+            FileGraphFactory.get(movePath).update(FileGraphFactory.get(movePath).getRoot());
+            InitializeTestRepository.generateRepository(movePath, new Configuration(), 1);
+            source.mkdirs();
+            for(File f : txt.listFiles()) {
+                Files.copy(f.toPath(), new File(source, f.getName()).toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            new ThresholdOrganizer(new Move(), threshold, movePath).copyAndOrganize(source.getPath());
+            assertEquals(0, source.list().length);
+            if(threshold == 1) assertEquals(organizedTxtFiles(), organizedFiles(movePath));
+        }
+        assertEquals(List.of(p("/2010/test2.txt"), p("/2021/test4.txt"), p("/2023/test0.txt"), p("/2023/test1.txt"),
+                p("/2023/test3.txt")), organizedFiles(movePath));
+        assertEquals(3, FileGraphFactory.get(movePath).getRoot().getChild("2023").fileCount);
+
+        // a directory with only files of 2023 becomes the leaf folder, but not the source itself
+        File year = new File(movePath, "2023");
+        File[] files = year.listFiles((d, n) -> !Configuration.isRepositoryFile(n));
+        File day = new File(source, "day");
+        for(File dir : new File[] {source, day}) {
+            FileTools.delete(new File(movePath));
+            FileGraphFactory.get(movePath).update(FileGraphFactory.get(movePath).getRoot());
+            InitializeTestRepository.generateRepository(movePath, new Configuration(), 1);
+            FileTools.delete(source);
+            dir.mkdirs();
+            for(File f : files) Files.copy(new File(txt, f.getName()).toPath(), new File(dir, f.getName()).toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+            Object key = Files.readAttributes(dir.toPath(), BasicFileAttributes.class).fileKey();
+            new ThresholdOrganizer(new Move(), 100, movePath).copyAndOrganize(source.getPath());
+            assertEquals(0, dir.list().length);
+            assertEquals(dir == day, key.equals(Files.readAttributes(year.toPath(), BasicFileAttributes.class).fileKey()));
+            assertEquals(3, LeafManifest.load(year).size());
+            assertEquals(3, FileGraphFactory.get(movePath).getRoot().getChild("2023").fileCount);
+        }
+
+        // the files of a linked directory are moved, the link and its target stay where they are
+        File target = new File("test-bin/moveDirectoryTarget");
+        FileTools.delete(new File(movePath));
+        FileGraphFactory.get(movePath).update(FileGraphFactory.get(movePath).getRoot());
+        InitializeTestRepository.generateRepository(movePath, new Configuration(), 1);
+        FileTools.delete(source);
+        FileTools.delete(target);
+        source.mkdirs();
+        target.mkdirs();
+        for(File f : files) Files.copy(new File(txt, f.getName()).toPath(), new File(target, f.getName()).toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+        Files.createSymbolicLink(day.toPath(), target.getAbsoluteFile().toPath());
+        new ThresholdOrganizer(new Move(), 100, movePath).copyAndOrganize(source.getPath());
+        assertTrue(Files.isSymbolicLink(day.toPath()));
+        assertFalse(Files.isSymbolicLink(year.toPath()));
+        assertEquals(0, target.list().length);
+        assertEquals(3, year.listFiles((d, n) -> !Configuration.isRepositoryFile(n)).length);
+        assertEquals(3, LeafManifest.load(year).size());
+        Files.delete(day.toPath());
+        FileTools.delete(target);
+
+        // cleanup
+        FileTools.delete(new File(movePath));
+        FileTools.delete(source);
+    }
+
+    private static String p(String path) {
+        return path.replace("/", File.separator);
+    }
+
+    /**
+     * Helper function returning the sorted paths of the organized files in a repository, relative to its root.
+     * @param root absolute path of the repository
+     * @return the relative paths without the repository files
+     */
+    private List<String> organizedFiles(String root) {
+        List<String> files = new ArrayList<>();
+        relativeFilePaths(new File(root), root, files);
+        files.removeIf(f -> Configuration.isRepositoryFile(f.substring(f.lastIndexOf(File.separator)+1)));
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Helper function returning the paths of the example txt files organized with the threshold 1.
+     * @return the sorted relative paths
+     */
+    private List<String> organizedTxtFiles() {
+        List<String> expected = new ArrayList<>();
+        for(String f : new String[] {"/2010/test2.txt", "/2021/test4.txt", "/2023/2023_feb/test1.txt",
+                "/2023/2023_märz/2023_märz_17/test3.txt", "/2023/2023_märz/2023_märz_21/test0.txt"}) {
+            expected.add(f.replace("/", File.separator));
+        }
+        return expected;
+    }
+
+    /**
+     * Linking the files must result in the same repository as copying them. The files in the repository must be
+     * hard links to the source files and the source files' lastModified field mustn't be changed by the mark.
+     */
+    @Test
+    public void linkOrganizeTest() throws IOException {
+        String copyPath = Path.of("test-bin/repoCopy").toAbsolutePath().toString();
+        String linkPath = Path.of("test-bin/repoLink").toAbsolutePath().toString();
+        FileTools.delete(new File(copyPath));
+        FileTools.delete(new File(linkPath));
+        InitializeTestRepository.generateRepository(copyPath, new Configuration(), 1);
+        InitializeTestRepository.generateRepository(linkPath, new Configuration(), 1);
+        File txtDir = new File(GenerateExampleFiles.testFilesPath, "txt");
+        Map<String, Long> lastModified = new HashMap<>();
+        for(File f : txtDir.listFiles()) lastModified.put(f.getName(), f.lastModified());
+
+        ThresholdOrganizer copy = new ThresholdOrganizer(new Copy(), 1, copyPath);
+        copy.copyAndOrganize(txtDir.getPath());
+        ThresholdOrganizer link = new ThresholdOrganizer(new Link(), 1, linkPath);
+        link.copyAndOrganize(txtDir.getPath());
+        // linking the same files again doesn't add anything
+        link.copyAndOrganize(txtDir.getPath());
+
+        List<String> copyFiles = new ArrayList<>(), linkFiles = new ArrayList<>();
+        relativeFilePaths(new File(copyPath), copyPath, copyFiles);
+        relativeFilePaths(new File(linkPath), linkPath, linkFiles);
+        copyFiles.sort(null);
+        linkFiles.sort(null);
+        assertEquals(copyFiles, linkFiles);
+
+        for(File f : txtDir.listFiles()) {
+            File linked = new File(search(new File(linkPath), f.getName()));
+            assertTrue(Files.isSameFile(f.toPath(), linked.toPath()));
+            assertEquals(lastModified.get(f.getName()), f.lastModified());
+        }
+
+        // cleanup
+        FileTools.delete(new File(copyPath));
+        FileTools.delete(new File(linkPath));
+    }
+
+    /**
+     * Helper function collecting the paths of all files in the subtree relative to the root.
+     * @param file current file
+     * @param root absolute path of the root as string
+     * @param paths list storing the relative paths
+     */
+    private void relativeFilePaths(File file, String root, List<String> paths) {
+        if(file.isFile()) paths.add(file.getAbsolutePath().substring(root.length()));
+        else for(File f : file.listFiles()) relativeFilePaths(f, root, paths);
+    }
+
     /**
      * This is a helper function for finding files by their name starting from an initial starting point.
      * @param file file from which the search should start
@@ -0,0 +1,295 @@
+package tests.resources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * This class writes small image and video files with date metadata for testing the metadata readers. The
+ * files only contain the structures needed for the dates, the image and video data is missing.
+ */
+public class GenerateMetadataFiles {
+    // seconds between 01.01.1904, the epoch of iso media files, and 01.01.1970
+    private static final long ISO_EPOCH_OFFSET = 2082844800L;
+
+    /**
+     * Write a TIFF file with the DateTime tag in IFD0 and DateTimeOriginal and DateTimeDigitized in the Exif SubIFD.
+     * @param file destination file
+     * @param motorola true for big endian byte order, false for little endian
+     * @param dateTime value of DateTime, format "yyyy:MM:dd HH:mm:ss", null to leave it out
+     * @param original value of DateTimeOriginal, null to leave it out
+     * @param digitized value of DateTimeDigitized, null to leave it out
+     * @throws IOException if the file can't be written
+     */
+    public static void tiff(File file, boolean motorola, String dateTime, String original, String digitized) throws IOException {
+        Files.write(file.toPath(), tiffBytes(motorola, dateTime, original, digitized));
+    }
+
+    /**
+     * Write a JPEG file with the TIFF structure from tiff() in the Exif APP1 segment.
+     * @param file destination file
+     * @param dateTime value of DateTime, null to leave it out
+     * @param original value of DateTimeOriginal, null to leave it out
+     * @param digitized value of DateTimeDigitized, null to leave it out
+     * @throws IOException if the file can't be written
+     */
+    public static void jpeg(File file, String dateTime, String original, String digitized) throws IOException {
+        byte[] tiff = tiffBytes(true, dateTime, original, digitized);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        // start of image
+        out.writeShort(0xFFD8);
+        // APP1 with the exif preamble
+        out.writeShort(0xFFE1);
+        out.writeShort(2 + 6 + tiff.length);
+        out.write("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        out.write(tiff);
+        // end of image
+        out.writeShort(0xFFD9);
+        Files.write(file.toPath(), bytes.toByteArray());
+    }
+
+    /**
+     * Write an mp4 file with an mvhd box holding the creation time. The media data box only has a header,
+     * the file is extended to its full size without writing the data.
+     * @param file destination file
+     * @param brand major brand of the ftyp box, e.g. "isom" or "qt  "
+     * @param creation creation time in UTC
+     * @param mdatSize size of the media data
+     * @param moovFirst true if the moov box comes before the media data
+     * @throws IOException if the file can't be written
+     */
+    public static void mp4(File file, String brand, LocalDateTime creation, long mdatSize, boolean moovFirst) throws IOException {
+        byte[] moov = moovBytes(creation.toEpochSecond(ZoneOffset.UTC) + ISO_EPOCH_OFFSET);
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            // ftyp box with the major brand, version and one compatible brand
+            raf.writeInt(20);
+            raf.write("ftyp".getBytes(StandardCharsets.US_ASCII));
+            raf.write(brand.getBytes(StandardCharsets.US_ASCII));
+            raf.writeInt(0);
+            raf.write(brand.getBytes(StandardCharsets.US_ASCII));
+            if(moovFirst) raf.write(moov);
+            // mdat box with a 64 bit size
+            raf.writeInt(1);
+            raf.write("mdat".getBytes(StandardCharsets.US_ASCII));
+            raf.writeLong(16 + mdatSize);
+            raf.seek(raf.getFilePointer() + mdatSize);
+            if(!moovFirst) raf.write(moov);
+            raf.setLength(raf.getFilePointer());
+        }
+    }
+
+    /**
+     * Write a HEIF image with an Exif item holding the TIFF structure from tiff(). The image
+     * itself is missing, the meta box only has the boxes needed to find the Exif item.
+     * @param file destination file
+     * @param dateTime value of DateTime, null to leave it out
+     * @param original value of DateTimeOriginal, null to leave it out
+     * @param digitized value of DateTimeDigitized, null to leave it out
+     * @throws IOException if the file can't be written
+     */
+    public static void heif(File file, String dateTime, String original, String digitized) throws IOException {
+        byte[] tiff = tiffBytes(true, dateTime, original, digitized);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        // ftyp box with the major brand, version and one compatible brand
+        out.writeInt(20);
+        out.write("ftypheic".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(0);
+        out.write("mif1".getBytes(StandardCharsets.US_ASCII));
+
+        int hdlrSize = 8 + 4 + 4 + 4 + 12 + 1;
+        int iinfSize = 8 + 4 + 2 + (8 + 4 + 2 + 2 + 4 + 1);
+        int ilocSize = 8 + 4 + 2 + 2 + (2 + 2 + 2 + 4 + 4);
+        int metaSize = 8 + 4 + hdlrSize + iinfSize + ilocSize;
+        // the exif item is in the mdat box after the meta box
+        int exifOffset = 20 + metaSize + 8;
+        int exifLength = 4 + 6 + tiff.length;
+
+        out.writeInt(metaSize);
+        out.write("meta".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(0);
+        // handler of pictures
+        out.writeInt(hdlrSize);
+        out.write("hdlr".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(0);
+        out.writeInt(0);
+        out.write("pict".getBytes(StandardCharsets.US_ASCII));
+        out.write(new byte[13]);
+        // item info with the exif item, id 1
+        out.writeInt(iinfSize);
+        out.write("iinf".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(0);
+        out.writeShort(1);
+        out.writeInt(8 + 4 + 2 + 2 + 4 + 1);
+        out.write("infe".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(0x02000000);
+        out.writeShort(1);
+        out.writeShort(0);
+        out.write("Exif".getBytes(StandardCharsets.US_ASCII));
+        out.write(0);
+        // item location, 4 byte offsets and lengths
+        out.writeInt(ilocSize);
+        out.write("iloc".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(0);
+        out.writeShort(0x4400);
+        out.writeShort(1);
+        out.writeShort(1);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeInt(exifOffset);
+        out.writeInt(exifLength);
+
+        // media data with the exif item, it starts with the offset of the TIFF header
+        out.writeInt(8 + exifLength);
+        out.write("mdat".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(6);
+        out.write("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        out.write(tiff);
+        Files.write(file.toPath(), bytes.toByteArray());
+    }
+
+    /**
+     * Build the moov box with a version 0 mvhd box.
+     * @param creation creation time in seconds since 1904
+     * @return box as bytes
+     * @throws IOException never
+     */
+    private static byte[] moovBytes(long creation) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(8 + 108);
+        out.write("moov".getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(108);
+        out.write("mvhd".getBytes(StandardCharsets.US_ASCII));
+        // version and flags
+        out.writeInt(0);
+        // creation and modification time
+        out.writeInt((int) creation);
+        out.writeInt((int) creation);
+        // time scale and duration
+        out.writeInt(1000);
+        out.writeInt(0);
+        // rate 1.0, volume 1.0 and reserved bytes
+        out.writeInt(0x00010000);
+        out.writeShort(0x0100);
+        out.write(new byte[10]);
+        // unity matrix
+        int[] matrix = {0x00010000, 0, 0, 0, 0x00010000, 0, 0, 0, 0x40000000};
+        for(int m : matrix) out.writeInt(m);
+        // pre defined and next track id
+        out.write(new byte[24]);
+        out.writeInt(1);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Build the TIFF structure with IFD0 and the Exif SubIFD.
+     * @param motorola big endian if true, little endian otherwise
+     * @param dateTime value of DateTime, null to leave it out
+     * @param original value of DateTimeOriginal, null to leave it out
+     * @param digitized value of DateTimeDigitized, null to leave it out
+     * @return TIFF bytes
+     */
+    private static byte[] tiffBytes(boolean motorola, String dateTime, String original, String digitized) {
+        // IFD0 at offset 8 with up to 2 entries, the Exif SubIFD follows with up to 2 entries
+        int ifd0Count = (dateTime != null ? 1 : 0) + 1;
+        int subCount = (original != null ? 1 : 0) + (digitized != null ? 1 : 0);
+        int ifd0Size = 2 + ifd0Count*12 + 4;
+        int subOffset = 8 + ifd0Size;
+        int dataOffset = subOffset + 2 + subCount*12 + 4;
+        TiffWriter w = new TiffWriter(motorola, dataOffset + 3*20);
+
+        w.bytes(motorola ? new byte[] {'M', 'M'} : new byte[] {'I', 'I'});
+        w.short16(42);
+        w.int32(8);
+
+        // IFD0, the entries are sorted by tag
+        w.short16(ifd0Count);
+        if(dateTime != null) dataOffset = w.asciiEntry(0x0132, dateTime, dataOffset);
+        w.short16(0x8769);
+        w.short16(4);
+        w.int32(1);
+        w.int32(subOffset);
+        w.int32(0);
+
+        // Exif SubIFD
+        w.short16(subCount);
+        if(original != null) dataOffset = w.asciiEntry(0x9003, original, dataOffset);
+        if(digitized != null) dataOffset = w.asciiEntry(0x9004, digitized, dataOffset);
+        w.int32(0);
+        return w.toByteArray(dataOffset);
+    }
+
+    /**
+     * Writes the values of a TIFF structure in its byte order.
+     */
+    private static class TiffWriter {
+        // byte order
+        private final boolean motorola;
+        // the TIFF bytes
+        private final byte[] data;
+        // current position of the directories
+        private int position = 0;
+
+        TiffWriter(boolean motorola, int size) {
+            this.motorola = motorola;
+            this.data = new byte[size];
+        }
+
+        void bytes(byte[] b) {
+            System.arraycopy(b, 0, data, position, b.length);
+            position += b.length;
+        }
+
+        void short16(int value) {
+            put(position, value, 2);
+            position += 2;
+        }
+
+        void int32(int value) {
+            put(position, value, 4);
+            position += 4;
+        }
+
+        /**
+         * Write an ascii entry whose value is stored at the data offset, or in the entry if it
+         * has at most 4 bytes.
+         * @return the data offset after the value
+         */
+        int asciiEntry(int tag, String value, int dataOffset) {
+            byte[] ascii = (value + "\0").getBytes(StandardCharsets.US_ASCII);
+            short16(tag);
+            short16(2);
+            int32(ascii.length);
+            if(ascii.length <= 4) {
+                bytes(ascii);
+                position += 4 - ascii.length;
+                return dataOffset;
+            }
+            int32(dataOffset);
+            System.arraycopy(ascii, 0, data, dataOffset, ascii.length);
+            return dataOffset + ascii.length;
+        }
+
+        byte[] toByteArray(int length) {
+            byte[] result = new byte[length];
+            System.arraycopy(data, 0, result, 0, length);
+            return result;
+        }
+
+        private void put(int offset, int value, int size) {
+            for(int i = 0; i < size; i++) {
+                int shift = motorola ? (size-1-i)*8 : i*8;
+                data[offset+i] = (byte) (value >>> shift);
+            }
+        }
+    }
+}